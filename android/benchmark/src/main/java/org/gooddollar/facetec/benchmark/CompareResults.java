@@ -0,0 +1,147 @@
+package org.gooddollar.facetec.benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/*
+ * Before / after table for two JMH JSON results files (-rf json)
+ *
+ * Rows are matched by benchmark, mode and params, so the results of the different
+ * implementations of the same benchmark method could be compared. Allocation column
+ * is filled if both runs were made with -prof gc
+ *
+ * Usage: CompareResults <baseline.json> <current.json>
+ */
+public final class CompareResults {
+  private CompareResults() {}
+
+  private static final String allocationMetric = "\u00b7gc.alloc.rate.norm";
+
+  private static final class Result {
+    final double score;
+    final double error;
+    final String unit;
+    final double allocation; // bytes per operation, -1 if not profiled
+
+    Result(double score, double error, String unit, double allocation) {
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+      this.allocation = allocation;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: CompareResults <baseline.json> <current.json>");
+      System.exit(2);
+    }
+
+    Map<String, Result> baseline = read(args[0]);
+    Map<String, Result> current = read(args[1]);
+
+    System.out.println(String.format(Locale.US, "%-64s %14s %14s %9s %-8s %12s %12s",
+      "Benchmark", "Baseline", "Current", "Change", "Unit", "Alloc before", "Alloc after"));
+
+    for (Map.Entry<String, Result> entry : current.entrySet()) {
+      Result before = baseline.get(entry.getKey());
+      Result after = entry.getValue();
+
+      System.out.println(String.format(Locale.US, "%-64s %14s %14s %9s %-8s %12s %12s",
+        entry.getKey(),
+        before == null ? "-" : formatScore(before),
+        formatScore(after),
+        before == null ? "-" : formatChange(before.score, after.score),
+        after.unit,
+        before == null ? "-" : formatBytes(before.allocation),
+        formatBytes(after.allocation)));
+    }
+  }
+
+  // { "<benchmark> <mode> [param=value ...]": result }
+  private static Map<String, Result> read(String path) throws IOException {
+    Map<String, Result> results = new LinkedHashMap<>();
+
+    try (Reader reader = new InputStreamReader(new FileInputStream(path), Charset.forName("UTF-8"))) {
+      JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+
+      for (JsonElement element : runs) {
+        JsonObject run = element.getAsJsonObject();
+        JsonObject primaryMetric = run.getAsJsonObject("primaryMetric");
+        JsonObject secondaryMetrics = run.getAsJsonObject("secondaryMetrics");
+        StringBuilder key = new StringBuilder();
+        double allocation = -1;
+
+        key.append(shortName(run.get("benchmark").getAsString())).append(' ').append(run.get("mode").getAsString());
+
+        if (run.has("params")) {
+          for (Map.Entry<String, JsonElement> param : run.getAsJsonObject("params").entrySet()) {
+            key.append(' ').append(param.getKey()).append('=').append(param.getValue().getAsString());
+          }
+        }
+
+        if ((secondaryMetrics != null) && secondaryMetrics.has(allocationMetric)) {
+          allocation = secondaryMetrics.getAsJsonObject(allocationMetric).get("score").getAsDouble();
+        }
+
+        results.put(key.toString(), new Result(
+          primaryMetric.get("score").getAsDouble(),
+          scoreError(primaryMetric),
+          primaryMetric.get("scoreUnit").getAsString(),
+          allocation
+        ));
+      }
+    }
+
+    return results;
+  }
+
+  // single iteration runs have "NaN" error
+  private static double scoreError(JsonObject metric) {
+    try {
+      return metric.get("scoreError").getAsDouble();
+    } catch (NumberFormatException exception) {
+      return Double.NaN;
+    }
+  }
+
+  // org.gooddollar.facetec.benchmark.RequestBodyBenchmark.multipart => RequestBodyBenchmark.multipart
+  private static String shortName(String benchmark) {
+    int methodDot = benchmark.lastIndexOf('.');
+    int classDot = benchmark.lastIndexOf('.', methodDot - 1);
+
+    return benchmark.substring(classDot + 1);
+  }
+
+  private static String formatScore(Result result) {
+    String score = String.format(Locale.US, "%.3f", result.score);
+
+    return Double.isNaN(result.error) ? score
+      : String.format(Locale.US, "%s\u00b1%.0f%%", score, 100 * result.error / result.score);
+  }
+
+  // throughput (ops/time) is better when higher, time per op is better when lower - sign is kept as is
+  private static String formatChange(double before, double after) {
+    return String.format(Locale.US, "%+.1f%%", 100 * (after - before) / before);
+  }
+
+  private static String formatBytes(double bytes) {
+    if (bytes < 0) {
+      return "-";
+    }
+
+    return bytes < 1024 * 1024 ? String.format(Locale.US, "%.1f KB", bytes / 1024)
+      : String.format(Locale.US, "%.2f MB", bytes / (1024 * 1024));
+  }
+}
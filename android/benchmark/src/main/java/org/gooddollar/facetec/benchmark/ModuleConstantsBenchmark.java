@@ -0,0 +1,99 @@
+package org.gooddollar.facetec.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.gooddollar.facetec.util.ExtendedSessionStatus;
+
+/*
+ * FaceTecModule.getConstants() - called for each module instance (e.g. after JS reload)
+ *
+ * - rebuildPerCall: the way constants were returned before - status maps built on each call
+ * - cached: maps built once and returned from the static field
+ *
+ * FaceTec SDK enums aren't available outside of the Android build, so the statuses are
+ * the same names exported by FaceTecModule with their position as the ordinal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModuleConstantsBenchmark {
+  private static final String[] sdkStatuses = {
+    "NeverInitialized", "Initialized", "NetworkIssues", "InvalidDeviceKeyIdentifier", "VersionDeprecated",
+    "DeviceNotSupported", "DeviceInLandscapeMode", "DeviceInReversePortraitMode", "DeviceLockedOut",
+    "KeyExpiredOrInvalid", "EncryptionKeyInvalid"
+  };
+
+  private static final String[] sessionStatuses = {
+    "UserCancelled", "SessionCompletedSuccessfully", "Timeout", "UnknownInternalError", "ContextSwitch",
+    "LockedOut", "LandscapeModeNotAllowed", "MissingGuidanceImages", "UserCancelledViaClickableReadyScreenSubtext",
+    "NonProductionModeDeviceKeyIdentifierInvalid", "CameraNotEnabled", "CameraPermissionDenied",
+    "NonProductionModeNetworkRequired", "UserCancelledViaHardwareButton", "SessionUnsuccessful",
+    "EncryptionKeyInvalid", "ReversePortraitNotAllowed"
+  };
+
+  private static final String[][] uxEvents = {
+    { "UI_READY", "onUIReady" }, { "CAPTURE_DONE", "onCaptureDone" }, { "FV_RETRY", "onRetry" },
+    { "UPLOAD_PROGRESS", "onUploadProgress" }, { "DEFERRED_ENROLLMENT", "onDeferredEnrollment" },
+    { "ACCESS_TOKEN_REQUIRED", "onAccessTokenRequired" }, { "METRICS", "onMetrics" }
+  };
+
+  private static Map<String, Object> cachedConstants = null;
+
+  @Benchmark
+  public Map<String, Object> rebuildPerCall() {
+    return createConstants();
+  }
+
+  @Benchmark
+  public Map<String, Object> cached() {
+    synchronized (ModuleConstantsBenchmark.class) {
+      if (cachedConstants == null) {
+        cachedConstants = createConstants();
+      }
+
+      return cachedConstants;
+    }
+  }
+
+  // the same maps FaceTecModule.createConstants() builds
+  private static Map<String, Object> createConstants() {
+    Map<String, Object> constants = new HashMap<>();
+    Map<String, Integer> faceTecSDKStatus = new HashMap<>();
+    Map<String, Integer> faceTecSessionStatus = new HashMap<>();
+    Map<String, String> uxEvent = new HashMap<>();
+
+    for (int ordinal = 0; ordinal < sdkStatuses.length; ordinal++) {
+      faceTecSDKStatus.put(sdkStatuses[ordinal], ordinal);
+    }
+
+    for (int ordinal = 0; ordinal < sessionStatuses.length; ordinal++) {
+      faceTecSessionStatus.put(sessionStatuses[ordinal], ordinal);
+    }
+
+    faceTecSessionStatus.putAll(ExtendedSessionStatus.toMap());
+
+    for (String[] event : uxEvents) {
+      uxEvent.put(event[0], event[1]);
+    }
+
+    constants.put("FaceTecUxEvent", uxEvent);
+    constants.put("FaceTecSDKStatus", faceTecSDKStatus);
+    constants.put("FaceTecSessionStatus", faceTecSessionStatus);
+    return constants;
+  }
+}
@@ -0,0 +1,33 @@
+package org.gooddollar.facetec.benchmark;
+
+import java.util.Random;
+
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+
+// realistic enrollment payload values and helpers shared by the benchmarks
+final class Payloads {
+  private Payloads() {}
+
+  // FaceTec audit trail / low quality audit trail jpegs are about that size (base64)
+  static final int auditTrailSize = 256 * 1024;
+  static final int lowQualityAuditTrailSize = 64 * 1024;
+
+  static final String sessionId = "8c5e3a5c-4b3e-4c5b-9d38-0d8d0f6a3d27";
+  static final String fvSigner = "0x5b1F3b2a6bE0a0d9a4c9B1c6f0C1c5B4a2e8D9f1";
+  static final String chainId = "122";
+
+  // random base64 string of the given length (in characters). seeded, so runs are comparable
+  static String randomBase64(int length) {
+    byte[] bytes = new byte[length / 4 * 3];
+
+    new Random(length).nextBytes(bytes);
+    return ByteString.of(bytes).base64();
+  }
+
+  // sink discarding everything, so the benchmark measures the body serialization only
+  static BufferedSink discardingSink() {
+    return Okio.buffer(Okio.blackhole());
+  }
+}
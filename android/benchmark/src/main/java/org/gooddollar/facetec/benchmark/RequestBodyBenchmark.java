@@ -0,0 +1,130 @@
+package org.gooddollar.facetec.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.gooddollar.facetec.api.Base64PartBody;
+import org.gooddollar.facetec.api.JSONRequestBody;
+import org.gooddollar.facetec.api.ProgressRequestBody;
+
+/*
+ * Enrollment payload: built from the session result values and written to the request sink
+ *
+ * - jsonObject: the way payload was sent before - JSONObject + FaceVerification.jsonStringify()
+ * - jsonRequestBody: streaming JSON body the payload is sent with now
+ * - progressRequestBody: the same, wrapped with the upload progress tracking
+ * - multipart: binary multipart payload, base64 values are decoded while being written
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBodyBenchmark {
+  private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+  private static final MediaType binary = MediaType.parse("application/octet-stream");
+  private static final MediaType jpeg = MediaType.parse("image/jpeg");
+
+  // face scan base64 length
+  @Param({ "1048576", "5242880" })
+  public int faceScanSize;
+
+  private String faceScan;
+  private String auditTrailImage;
+  private String lowQualityAuditTrailImage;
+
+  private final ProgressRequestBody.Listener progressListener = new ProgressRequestBody.Listener() {
+    @Override
+    public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
+    }
+  };
+
+  @Setup
+  public void setUp() {
+    faceScan = Payloads.randomBase64(faceScanSize);
+    auditTrailImage = Payloads.randomBase64(Payloads.auditTrailSize);
+    lowQualityAuditTrailImage = Payloads.randomBase64(Payloads.lowQualityAuditTrailSize);
+  }
+
+  @Benchmark
+  public long jsonObject() throws IOException, JSONException {
+    JSONObject payload = new JSONObject();
+
+    payload.put("faceScan", faceScan);
+    payload.put("auditTrailImage", auditTrailImage);
+    payload.put("lowQualityAuditTrailImage", lowQualityAuditTrailImage);
+    payload.put("sessionId", Payloads.sessionId);
+    payload.put("fvSigner", Payloads.fvSigner);
+    payload.put("chainId", Payloads.chainId);
+
+    // FaceVerification.jsonStringify()
+    return write(RequestBody.create(JSON, payload.toString()));
+  }
+
+  @Benchmark
+  public long jsonRequestBody() throws IOException {
+    return write(createJSONPayload());
+  }
+
+  @Benchmark
+  public long progressRequestBody() throws IOException {
+    return write(new ProgressRequestBody(createJSONPayload(), progressListener));
+  }
+
+  @Benchmark
+  public long multipart() throws IOException {
+    JSONRequestBody metadata = new JSONRequestBody()
+      .put("sessionId", Payloads.sessionId)
+      .put("fvSigner", Payloads.fvSigner)
+      .put("chainId", Payloads.chainId);
+
+    RequestBody payload = new MultipartBody.Builder()
+      .setType(MultipartBody.FORM)
+      .addFormDataPart("metadata", null, metadata)
+      .addFormDataPart("faceScan", "faceScan.bin", new Base64PartBody(binary, faceScan))
+      .addFormDataPart("auditTrailImage", "auditTrailImage.jpg", new Base64PartBody(jpeg, auditTrailImage))
+      .addFormDataPart("lowQualityAuditTrailImage", "lowQualityAuditTrailImage.jpg", new Base64PartBody(jpeg, lowQualityAuditTrailImage))
+      .build();
+
+    return write(payload);
+  }
+
+  private JSONRequestBody createJSONPayload() {
+    return new JSONRequestBody()
+      .put("faceScan", faceScan)
+      .put("auditTrailImage", auditTrailImage)
+      .put("lowQualityAuditTrailImage", lowQualityAuditTrailImage)
+      .put("sessionId", Payloads.sessionId)
+      .put("fvSigner", Payloads.fvSigner)
+      .put("chainId", Payloads.chainId);
+  }
+
+  // okhttp asks for the content length first (progress total, Content-Length header), then writes the body
+  private static long write(RequestBody body) throws IOException {
+    BufferedSink sink = Payloads.discardingSink();
+    long contentLength = body.contentLength();
+
+    body.writeTo(sink);
+    sink.flush();
+    return contentLength;
+  }
+}
@@ -0,0 +1,104 @@
+package org.gooddollar.facetec.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.stream.JsonReader;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.gooddollar.facetec.api.EnrollmentResponse;
+import org.gooddollar.facetec.api.SessionTokenResponse;
+
+/*
+ * GoodServer responses parsing from the response body bytes
+ *
+ * - *JSONObject: the way responses were read before - body.string() + JSONObject + opt*() calls
+ * - *TypeAdapter: typed Gson adapters reading the body stream in a single pass
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // enrollment result blob length
+  @Param({ "2048", "131072" })
+  public int resultBlobSize;
+
+  private byte[] enrollmentResponse;
+  private byte[] sessionTokenResponse;
+
+  @Setup
+  public void setUp() {
+    enrollmentResponse = (
+      "{\"success\":true,\"enrollmentResult\":{\"isDuplicate\":false,\"isNotMatch\":false,"
+        + "\"isEnrolled\":true,\"isLive\":true,\"resultBlob\":\"" + Payloads.randomBase64(resultBlobSize) + "\"}}"
+    ).getBytes(UTF_8);
+
+    sessionTokenResponse = (
+      "{\"success\":true,\"sessionToken\":\"" + Payloads.randomBase64(1024) + "\",\"expiresIn\":60,"
+        + "\"capabilities\":{\"requestEncodings\":[\"gzip\"],\"chunkedUpload\":{\"chunkSize\":262144},"
+        + "\"multipartUpload\":true,\"auditTrailOptional\":true,\"enrollmentStatus\":true}}"
+    ).getBytes(UTF_8);
+  }
+
+  @Benchmark
+  public void enrollmentJSONObject(Blackhole blackhole) throws JSONException {
+    JSONObject response = new JSONObject(new String(enrollmentResponse, UTF_8));
+    JSONObject enrollmentResult = response.optJSONObject("enrollmentResult");
+
+    blackhole.consume(response.optBoolean("success"));
+    blackhole.consume(enrollmentResult.optBoolean("isDuplicate"));
+    blackhole.consume(enrollmentResult.optBoolean("isNotMatch"));
+    blackhole.consume(enrollmentResult.optBoolean("isEnrolled"));
+    blackhole.consume(enrollmentResult.optBoolean("isLive", true));
+    blackhole.consume(enrollmentResult.optString("resultBlob"));
+  }
+
+  @Benchmark
+  public EnrollmentResponse enrollmentTypeAdapter() throws IOException {
+    return EnrollmentResponse.ADAPTER.read(reader(enrollmentResponse));
+  }
+
+  @Benchmark
+  public void sessionTokenJSONObject(Blackhole blackhole) throws JSONException {
+    JSONObject response = new JSONObject(new String(sessionTokenResponse, UTF_8));
+    JSONObject capabilities = response.optJSONObject("capabilities");
+
+    blackhole.consume(response.optBoolean("success"));
+    blackhole.consume(response.optString("sessionToken"));
+    blackhole.consume(response.optLong("expiresIn", -1));
+    blackhole.consume(capabilities.optJSONArray("requestEncodings"));
+    blackhole.consume(capabilities.optJSONObject("chunkedUpload").optLong("chunkSize"));
+    blackhole.consume(capabilities.optBoolean("multipartUpload"));
+  }
+
+  @Benchmark
+  public SessionTokenResponse sessionTokenTypeAdapter() throws IOException {
+    return SessionTokenResponse.ADAPTER.read(reader(sessionTokenResponse));
+  }
+
+  // the same as response.body().charStream() the client reads from
+  private static JsonReader reader(byte[] body) {
+    return new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), UTF_8));
+  }
+}
@@ -2,6 +2,7 @@ package org.gooddollar.facetec;
 
 import android.app.Activity;
 import android.content.Intent;
+import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ActivityEventListener;
@@ -9,25 +10,45 @@ import com.facebook.react.bridge.BaseActivityEventListener;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.Arguments;
 
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
+import org.gooddollar.facetec.api.CallTimings;
+import org.gooddollar.facetec.api.ConnectionStats;
+import org.gooddollar.facetec.api.AccessTokenRefresh;
+import org.gooddollar.facetec.api.Deadline;
+import org.gooddollar.facetec.api.DeferredEnrollments;
 import org.gooddollar.facetec.api.FaceVerification;
+import org.gooddollar.facetec.api.NetworkQuality;
+import org.gooddollar.facetec.api.PayloadSpool;
+import org.gooddollar.facetec.api.FaceVerificationClient;
 import org.gooddollar.facetec.processors.EnrollmentProcessor;
 import org.gooddollar.facetec.processors.ProcessingSubscriber;
 
 import org.gooddollar.facetec.util.EventEmitter;
 import org.gooddollar.facetec.util.Customization;
+import org.gooddollar.facetec.util.ExtendedSessionStatus;
 import org.gooddollar.facetec.util.RCTPromise;
+import org.gooddollar.facetec.util.SessionMetrics;
+import org.gooddollar.facetec.util.Theme;
 
 import com.facetec.sdk.FaceTecSDK;
 import com.facetec.sdk.FaceTecSessionStatus;
 import com.facetec.sdk.FaceTecSDKStatus;
 
 public class FaceTecModule extends ReactContextBaseJavaModule {
+    public static final String NAME = "FaceTecModule";
+
+    private static Map<String, Object> cachedConstants = null;
+
     private final ReactApplicationContext reactContext;
     private EnrollmentProcessor lastProcessor = null;
 
@@ -35,15 +56,49 @@ public class FaceTecModule extends ReactContextBaseJavaModule {
     private final ActivityEventListener activityListener = new BaseActivityEventListener() {
         @Override
         public void onActivityResult(Activity activity, int requestCode, int resultCode, Intent intent) {
+            EnrollmentProcessor processor;
+
+            // take and clear FV session
+            synchronized (FaceTecModule.this) {
+                processor = lastProcessor;
+                lastProcessor = null;
+            }
+
             // if have no FV session active - no nothing
-            if (lastProcessor == null) {
+            if (processor == null) {
                 return;
             }
 
             // if some FV processor is running - call "done" method
-            lastProcessor.onFaceTecSDKCompletelyDone();
-            // and clear FV session
-            lastProcessor = null;
+            processor.onFaceTecSDKCompletelyDone();
+        }
+    };
+
+    // dispatches deferred enrollment outcome to JS
+    private final DeferredEnrollments.Listener onDeferredEnrollmentComplete = new DeferredEnrollments.Listener() {
+        @Override
+        public void onDeferredEnrollmentComplete(String enrollmentIdentifier, @Nullable FaceVerification.APIException exception) {
+            WritableMap eventData = Arguments.createMap();
+
+            eventData.putString("enrollmentIdentifier", enrollmentIdentifier);
+            eventData.putBoolean("success", exception == null);
+
+            if (exception != null) {
+                eventData.putString("reason", exception.getMessage());
+            }
+
+            EventEmitter.dispatch(EventEmitter.UXEvent.DEFERRED_ENROLLMENT, eventData);
+        }
+    };
+
+    // asks JS for a fresh JWT, it should call updateAccessToken() in response
+    private final AccessTokenRefresh.Listener onAccessTokenRefreshRequested = new AccessTokenRefresh.Listener() {
+        @Override
+        public void onAccessTokenRefreshRequested(long expiresAt) {
+            WritableMap eventData = Arguments.createMap();
+
+            eventData.putDouble("expiresAt", expiresAt);
+            EventEmitter.dispatch(EventEmitter.UXEvent.ACCESS_TOKEN_REQUIRED, eventData);
         }
     };
 
@@ -63,20 +118,41 @@ public class FaceTecModule extends ReactContextBaseJavaModule {
         // Setting react context reference to the event emiiter helper 
         // (so it will be available to send events throught the react bridge)
         EventEmitter.register(reactContext);
-
-        // customize UI/UX
-        FaceTecSDK.setCustomization(Customization.UICustomization);
-        FaceTecSDK.setLowLightCustomization(Customization.LowLightModeCustomization);
-        FaceTecSDK.setDynamicDimmingCustomization(Customization.DynamicModeCustomization);
+        // connect enrollment payloads spool to the app storage
+        PayloadSpool.register(reactContext);
+        // notify JS once enrollment queued while device was offline is uploaded
+        DeferredEnrollments.setListener(onDeferredEnrollmentComplete);
+        // ask JS for a fresh JWT once the current one is about to expire during the session
+        AccessTokenRefresh.setListener(onAccessTokenRefreshRequested);
+
+        // customize UI/UX (compiled off the main thread, setTheme() could override it later)
+        Customization.apply(Theme.DEFAULT, null);
     }
 
     @Override
     public String getName() {
-        return "FaceTecModule";
+        return NAME;
     }
 
+    // constants are the same for all module instances (e.g. after JS reload), so built once
     @Override
     public Map<String, Object> getConstants() {
+        synchronized (FaceTecModule.class) {
+            if (cachedConstants == null) {
+                cachedConstants = createConstants();
+            }
+
+            return cachedConstants;
+        }
+    }
+
+    // returns current FaceTec SDK status code (see FaceTecSDKStatus constants) synchronously
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public int getSDKStatus() {
+        return FaceTecSDK.getStatus(reactContext).ordinal();
+    }
+
+    private static Map<String, Object> createConstants() {
         final Map<String, Object> constants = new HashMap<>();
         final Map<String, Integer> faceTecSDKStatus = new HashMap<>();
         final Map<String, Integer> faceTecSessionStatus = new HashMap<>();
@@ -136,6 +212,9 @@ public class FaceTecModule extends ReactContextBaseJavaModule {
             faceTecSessionStatus.put(key, value.ordinal());
         }
 
+        // module-specific statuses are exported along with the FaceTec ones
+        faceTecSessionStatus.putAll(ExtendedSessionStatus.toMap());
+
         // aggregating all constants in a single object literal exported to JS
         constants.put("FaceTecUxEvent", EventEmitter.UXEvent.toMap());
         constants.put("FaceTecSDKStatus", faceTecSDKStatus);
@@ -143,6 +222,13 @@ public class FaceTecModule extends ReactContextBaseJavaModule {
         return constants;
     }
 
+    // required by NativeEventEmitter (RN 0.65+), events are sent regardless of listeners count
+    @ReactMethod
+    public void addListener(String eventName) {}
+
+    @ReactMethod
+    public void removeListeners(Integer count) {}
+
     // maps to async initialize(serverUrl, jsonWebToken, licenseKey, encryptionKey = null, licenseText = null) in JS
     @ReactMethod
     public void initializeSDK(String serverURL, String jwtAccessToken,
@@ -156,9 +242,15 @@ public class FaceTecModule extends ReactContextBaseJavaModule {
             case INITIALIZED:
             case DEVICE_IN_LANDSCAPE_MODE:
             case DEVICE_IN_REVERSE_PORTRAIT_MODE:
+                // establish connection to GoodServer ahead of the first API call
+                FaceVerification.preconnect();
+                // upload enrollments queued while device was offline (if any)
+                DeferredEnrollments.flush();
                 // status is already initialized - customize labels and resolve promise with true
                 FaceTecSDK.setDynamicStrings(Customization.UITextStrings);
                 promise.resolve(true);
+                // warm up session token for the upcoming verification
+                prefetchSessionToken();
                 break;
             case NEVER_INITIALIZED:
             case NETWORK_ISSUES: 
@@ -166,6 +258,10 @@ public class FaceTecModule extends ReactContextBaseJavaModule {
                 
                 // configure API client with GoodServer URL and JWT
                 FaceVerification.register(serverURL, jwtAccessToken);
+                // establish connection to GoodServer while SDK is initializing
+                FaceVerification.preconnect();
+                // upload enrollments queued while device was offline (if any)
+                DeferredEnrollments.flush();
 
                 // based on licenseText value, init in prod|dev mode
                 if (licenseText != null && !licenseText.isEmpty()) {
@@ -186,29 +282,181 @@ public class FaceTecModule extends ReactContextBaseJavaModule {
         final String enrollmentIdentifier,
         final String v1Identifier,
         final String chainId, final int maxRetries, 
-        final int timeout, Promise promise
+        final int timeout, final int deadlineTimeout, Promise promise
     ) {
         String chain = null;
+        Deadline deadline = null;
         Activity activity = getCurrentActivity();
+        // session phases timing, filled by the processor & subscriber
+        final SessionMetrics metrics = new SessionMetrics();
         // instantiate subscriber & processir
-        final ProcessingSubscriber subscriber = new ProcessingSubscriber(promise);
-        final EnrollmentProcessor processor = new EnrollmentProcessor(activity, subscriber);
+        final ProcessingSubscriber subscriber = new ProcessingSubscriber(promise, metrics, enrollmentIdentifier);
+        // session is bound to the client registered at the moment it starts
+        final FaceVerificationClient client = FaceVerification.getClient();
+
+        // SDK wasn't initialized - there's no server to get session token from
+        if (client == null) {
+            subscriber.onSessionTokenError(null);
+            return;
+        }
 
-        // if FV session in progress - cancel existing, throw context switch error
-        if (lastProcessor != null) {
-            ProcessingSubscriber lastSubscriber = lastProcessor.getSubscriber();
+        final EnrollmentProcessor processor = new EnrollmentProcessor(activity, subscriber, client);
+        EnrollmentProcessor preemptedProcessor;
+
+        // session timing starts right now
+        metrics.mark(SessionMetrics.Mark.STARTED);
+
+        // clear FV session once it's settled (e.g. failed before the UI has been shown),
+        // so the next session won't cancel and reject it once again
+        subscriber.setOnSessionFinished(new Runnable() {
+            @Override
+            public void run() {
+                releaseProcessor(processor);
+            }
+        });
 
-            lastSubscriber.onSessionContextSwitch();
+        // set FV session in progress
+        synchronized (this) {
+            preemptedProcessor = lastProcessor;
+            lastProcessor = processor;
+        }
+
+        // if FV session in progress - cancel existing, throw context switch error
+        if (preemptedProcessor != null) {
+            // abort its uploads right away to free the connection for the new session
+            preemptedProcessor.cancel();
+            preemptedProcessor.getSubscriber().onSessionContextSwitch();
         }
 
         if (chainId != "") {
             chain = chainId;
         }
 
-        // set FV session in progress
-        lastProcessor = processor;
-        // start session
-        processor.enroll(enrollmentIdentifier, v1Identifier, chain, maxRetries, timeout);
+        // session budget starts right now, all the API calls will share it
+        if (deadlineTimeout > 0) {
+            deadline = Deadline.after(deadlineTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        // start session. timeout limits the enrollment upload only (as on iOS)
+        processor.enroll(enrollmentIdentifier, v1Identifier, chain, maxRetries, timeout, deadline);
+    }
+
+    // clears finished FV session, unless the next one has been already started
+    private synchronized void releaseProcessor(EnrollmentProcessor processor) {
+        if (lastProcessor == processor) {
+            lastProcessor = null;
+        }
+    }
+
+    // replaces JWT GoodServer calls are authorized with (e.g. in response to onAccessTokenRequired)
+    @ReactMethod
+    public void updateAccessToken(String jwtAccessToken) {
+        FaceVerification.updateAccessToken(jwtAccessToken);
+    }
+
+    // compiles theme passed from JS & sets it to the SDK, resolves with false if theme is the same as current
+    @ReactMethod
+    public void setTheme(@Nullable ReadableMap theme, final Promise promise) {
+        Customization.apply(Theme.fromMap(theme), new Customization.ApplyCallback() {
+            @Override
+            public void onThemeApplied(boolean isChanged) {
+                promise.resolve(isChanged);
+            }
+        });
+    }
+
+    // hint that verification is coming soon (e.g. FV screen is shown), fetches session token ahead
+    @ReactMethod
+    public void prefetchSessionToken() {
+        FaceVerificationClient client = FaceVerification.getClient();
+
+        // no-op if SDK wasn't initialized yet
+        if (client != null) {
+            client.getSessionTokenPool().prefetch();
+        }
+    }
+
+    // returns connection reuse stats to check preconnect / keep-warm are working
+    @ReactMethod
+    public void getConnectionStats(Promise promise) {
+        ConnectionStats.Snapshot stats = ConnectionStats.snapshot();
+        WritableMap result = Arguments.createMap();
+
+        result.putDouble("calls", stats.calls);
+        result.putDouble("newConnections", stats.newConnections);
+        result.putDouble("reusedConnections", stats.reusedConnections);
+        result.putDouble("failedCalls", stats.failedCalls);
+        result.putInt("pooledConnections", stats.pooledConnections);
+        result.putInt("idleConnections", stats.idleConnections);
+        promise.resolve(result);
+    }
+
+    // returns native => JS events channel counters
+    @ReactMethod
+    public void getEventStats(Promise promise) {
+        EventEmitter.Stats stats = EventEmitter.getStats();
+        WritableMap result = Arguments.createMap();
+
+        result.putDouble("dispatched", stats.dispatched);
+        result.putDouble("batches", stats.batches);
+        result.putDouble("coalesced", stats.coalesced);
+        result.putDouble("dropped", stats.dropped);
+        promise.resolve(result);
+    }
+
+    // returns timing breakdown of the last API calls (the oldest first)
+    @ReactMethod
+    public void getCallTimings(Promise promise) {
+        WritableArray result = Arguments.createArray();
+
+        for (CallTimings.Timing timing : CallTimings.snapshot()) {
+            WritableMap item = Arguments.createMap();
+
+            item.putString("method", timing.method);
+            item.putString("endpoint", timing.endpoint);
+            item.putDouble("dns", timing.dns);
+            item.putDouble("connect", timing.connect);
+            item.putDouble("tls", timing.tls);
+            item.putDouble("requestBody", timing.requestBody);
+            item.putDouble("timeToFirstByte", timing.timeToFirstByte);
+            item.putDouble("responseBody", timing.responseBody);
+            item.putDouble("total", timing.total);
+            item.putBoolean("connectionReused", timing.connectionReused);
+            item.putString("protocol", timing.protocol);
+            item.putDouble("bytesSent", timing.bytesSent);
+            item.putDouble("bytesReceived", timing.bytesReceived);
+            item.putInt("statusCode", timing.statusCode);
+            item.putBoolean("failed", timing.failed);
+            result.pushMap(item);
+        }
+
+        promise.resolve(result);
+    }
+
+    // returns network quality estimate, so app could warn user before capture on the slow link
+    // if probe is set - pings the server first to get fresh round trip time
+    @ReactMethod
+    public void getNetworkQuality(boolean probe, final Promise promise) {
+        if (!probe) {
+            promise.resolve(networkQualityToMap(NetworkQuality.estimate()));
+            return;
+        }
+
+        FaceVerification.probe(new Runnable() {
+            @Override
+            public void run() {
+                promise.resolve(networkQualityToMap(NetworkQuality.estimate()));
+            }
+        });
+    }
+
+    private WritableMap networkQualityToMap(NetworkQuality.Estimate estimate) {
+        WritableMap result = Arguments.createMap();
+
+        result.putString("quality", estimate.quality.qualityName());
+        result.putDouble("bytesPerSecond", estimate.bytesPerSecond);
+        result.putDouble("roundTripTime", estimate.roundTripTime);
+        return result;
     }
 
     // initialization attempt callback factory
@@ -224,6 +472,8 @@ public class FaceTecModule extends ReactContextBaseJavaModule {
                     // status is already initialized - resolve promise with true
                     FaceTecSDK.setDynamicStrings(Customization.UITextStrings);
                     promise.resolve(true);
+                    // warm up session token for the upcoming verification
+                    prefetchSessionToken();
                     return;
                 }
 
@@ -1,19 +1,49 @@
 package org.gooddollar.facetec;
 
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.TurboReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 import com.facebook.react.uimanager.ViewManager;
-import com.facebook.react.bridge.JavaScriptModule;
 
-public class FaceTecPackage implements ReactPackage {
+// exports single native module (FaceTecModule)
+// module is created lazily, once JS accesses it for the first time
+public class FaceTecPackage extends TurboReactPackage {
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        return Arrays.<NativeModule>asList(new FaceTecModule(reactContext)); // exports single native module (FaceTecModule)
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (FaceTecModule.NAME.equals(name)) {
+            return new FaceTecModule(reactContext);
+        }
+
+        return null;
+    }
+
+    @Override
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return new ReactModuleInfoProvider() {
+            @Override
+            public Map<String, ReactModuleInfo> getReactModuleInfos() {
+                final Map<String, ReactModuleInfo> moduleInfos = new HashMap<>();
+
+                moduleInfos.put(FaceTecModule.NAME, new ReactModuleInfo(
+                    FaceTecModule.NAME,
+                    FaceTecModule.class.getName(),
+                    false, // canOverrideExistingModule
+                    false, // needsEagerInit
+                    true, // hasConstants
+                    false, // isCxxModule
+                    false // isTurboModule
+                ));
+
+                return moduleInfos;
+            }
+        };
     }
 
     @Override
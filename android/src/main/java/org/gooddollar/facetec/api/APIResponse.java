@@ -0,0 +1,92 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/*
+ * Base GoodServer API response { success, error }
+ *
+ * Responses are parsed by the hand-written Gson TypeAdapters directly from the
+ * response stream in a single pass: no intermediate String, no untyped JSON tree.
+ * Unknown properties are skipped, so server could add new ones safely
+ */
+public class APIResponse {
+  // null if 'success' isn't in the response
+  @Nullable Boolean success = null;
+  @Nullable String error = null;
+
+  public static final TypeAdapter<APIResponse> ADAPTER = new Adapter<APIResponse>() {
+    @Override
+    protected APIResponse create() {
+      return new APIResponse();
+    }
+  };
+
+  public boolean hasSuccess() {
+    return success != null;
+  }
+
+  public boolean isSuccess() {
+    return Boolean.TRUE.equals(success);
+  }
+
+  @Nullable
+  public String getError() {
+    return error;
+  }
+
+  // base adapter reading JSON object property by property
+  // subclasses are creating response instance and reading its specific properties
+  abstract static class Adapter<T extends APIResponse> extends TypeAdapter<T> {
+    protected abstract T create();
+
+    // reads specific property value, returns false if property is unknown and should be skipped
+    protected boolean readProperty(T response, String name, JsonReader reader) throws IOException {
+      return false;
+    }
+
+    @Override
+    public T read(JsonReader reader) throws IOException {
+      T response = create();
+
+      reader.beginObject();
+
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+
+        // null values are treated as missing ones
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+          continue;
+        }
+
+        switch (name) {
+          case "success":
+            response.success = reader.nextBoolean();
+            break;
+          case "error":
+            response.error = reader.nextString();
+            break;
+          default:
+            if (!readProperty(response, name, reader)) {
+              reader.skipValue();
+            }
+        }
+      }
+
+      reader.endObject();
+      return response;
+    }
+
+    // responses are read-only
+    @Override
+    public void write(JsonWriter writer, T value) {
+      throw new UnsupportedOperationException("API responses couldn't be serialized");
+    }
+  }
+}
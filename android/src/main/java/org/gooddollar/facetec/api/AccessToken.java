@@ -0,0 +1,48 @@
+package org.gooddollar.facetec.api;
+
+import android.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/*
+ * Reads expiry of the JWT GoodServer calls are authorized with
+ *
+ * Signature isn't verified (it's server's job), we only need "exp" claim to know
+ * if the token will outlive the session instead of finding that out from 401 response
+ * to the several megabytes upload
+ */
+final class AccessToken {
+  private AccessToken() {}
+
+  // server clock could be ahead of the device's one
+  private static final long clockSkew = TimeUnit.SECONDS.toMillis(30);
+
+  // returns expiry time (wall clock millis) or -1 if token has no "exp" claim or couldn't be parsed
+  static long expiresAt(String jwt) {
+    String[] parts = jwt.split("\\.");
+
+    if (parts.length < 2) {
+      return -1;
+    }
+
+    try {
+      byte[] payload = Base64.decode(parts[1], Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+      long exp = new JSONObject(new String(payload, "UTF-8")).optLong("exp", -1);
+
+      return exp > 0 ? TimeUnit.SECONDS.toMillis(exp) : -1;
+    } catch (Exception exception) {
+      return -1;
+    }
+  }
+
+  // checks if token expiring at the time given will be still valid after duration (in millis)
+  // tokens with unknown expiry are considered valid
+  static boolean isValidFor(long expiresAt, long duration) {
+    if (expiresAt < 0) {
+      return true;
+    }
+
+    return System.currentTimeMillis() + duration + clockSkew < expiresAt;
+  }
+}
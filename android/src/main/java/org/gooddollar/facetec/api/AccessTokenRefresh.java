@@ -0,0 +1,85 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Handshake asking the app for a fresh JWT when the current one is about to expire
+ *
+ * Native code couldn't refresh token itself, so the listener (module) sends event to JS
+ * and waits for FaceVerification.updateAccessToken() to be called. Concurrent requests
+ * are merged into a single event. If app hasn't responded in time, callbacks are called
+ * with null, so the caller could fail fast instead of sending the request to be rejected
+ */
+public final class AccessTokenRefresh {
+  private AccessTokenRefresh() {}
+
+  private static final long responseTimeout = 15; // seconds
+
+  private static Listener listener = null;
+  private static final List<Callback> waiters = new ArrayList<>();
+  @Nullable
+  private static ScheduledFuture<?> timeout = null;
+
+  public interface Listener {
+    // expiresAt is the current token expiry (wall clock millis) or -1 if unknown
+    void onAccessTokenRefreshRequested(long expiresAt);
+  }
+
+  public interface Callback {
+    // client is null if app hasn't provided a new token in time
+    void onAccessTokenRefreshed(@Nullable FaceVerificationClient client);
+  }
+
+  public static synchronized void setListener(@Nullable Listener refreshListener) {
+    listener = refreshListener;
+  }
+
+  // asks app for a new token, callback is called once it's received or request timed out
+  public static void request(FaceVerificationClient client, Callback callback) {
+    Listener notify;
+
+    synchronized (AccessTokenRefresh.class) {
+      waiters.add(callback);
+
+      // already asked - just wait for the same response
+      if (timeout != null) {
+        return;
+      }
+
+      notify = listener;
+      timeout = NetworkingHelpers.getScheduler().schedule(new Runnable() {
+        @Override
+        public void run() {
+          complete(null);
+        }
+      }, notify != null ? responseTimeout : 0, TimeUnit.SECONDS);
+    }
+
+    if (notify != null) {
+      notify.onAccessTokenRefreshRequested(client.getAccessTokenExpiresAt());
+    }
+  }
+
+  // called once the new token has been registered (or request timed out)
+  static void complete(@Nullable FaceVerificationClient client) {
+    List<Callback> completed;
+
+    synchronized (AccessTokenRefresh.class) {
+      if (timeout != null) {
+        timeout.cancel(false);
+        timeout = null;
+      }
+
+      completed = new ArrayList<>(waiters);
+      waiters.clear();
+    }
+
+    for (Callback callback : completed) {
+      callback.onAccessTokenRefreshed(client);
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/*
+ * Request body (or multipart part) writing the raw bytes of the base64 string
+ *
+ * Bytes are decoded while being written to the sink, via small pooled scratch buffer,
+ * so the decoded copy of the (multi-megabyte) value is never kept in memory.
+ * Line breaks / whitespaces the base64 string could be wrapped with are skipped
+ */
+public class Base64PartBody extends RequestBody {
+  private static final int scratchSize = BufferPool.bufferSize;
+  private static final byte[] decodeTable = new byte[128];
+
+  static {
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    for (int index = 0; index < decodeTable.length; index++) {
+      decodeTable[index] = -1;
+    }
+
+    for (int index = 0; index < alphabet.length(); index++) {
+      decodeTable[alphabet.charAt(index)] = (byte) index;
+    }
+
+    // url-safe alphabet is also accepted
+    decodeTable['-'] = 62;
+    decodeTable['_'] = 63;
+  }
+
+  private final MediaType contentType;
+  private final String base64;
+  private long contentLength = -1;
+
+  public Base64PartBody(MediaType contentType, String base64) {
+    this.contentType = contentType;
+    this.base64 = base64;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return contentType;
+  }
+
+  @Override
+  public long contentLength() {
+    if (contentLength < 0) {
+      long symbols = 0;
+
+      for (int index = 0; index < base64.length(); index++) {
+        if (decode(base64.charAt(index)) >= 0) {
+          symbols += 1;
+        }
+      }
+
+      // each 4 symbols are 3 bytes, incomplete group of 2 or 3 symbols gives 1 or 2 bytes
+      contentLength = (symbols / 4) * 3 + Math.max(0, (symbols % 4) - 1);
+    }
+
+    return contentLength;
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    byte[] scratch = BufferPool.acquire();
+
+    try {
+      writeTo(sink, scratch);
+    } finally {
+      BufferPool.release(scratch);
+    }
+  }
+
+  private void writeTo(BufferedSink sink, byte[] scratch) throws IOException {
+    int scratchLength = 0;
+    int bits = 0;
+    int symbols = 0;
+
+    for (int index = 0; index < base64.length(); index++) {
+      char character = base64.charAt(index);
+      int value = decode(character);
+
+      if (value < 0) {
+        if (character == '=') { // padding - the data is over
+          break;
+        }
+
+        if (Character.isWhitespace(character)) {
+          continue;
+        }
+
+        throw new IOException("Invalid base64 character: " + character);
+      }
+
+      bits = (bits << 6) | value;
+      symbols += 1;
+
+      if (symbols == 4) {
+        scratch[scratchLength++] = (byte) (bits >> 16);
+        scratch[scratchLength++] = (byte) (bits >> 8);
+        scratch[scratchLength++] = (byte) bits;
+        bits = 0;
+        symbols = 0;
+
+        if (scratchLength > scratchSize - 3) {
+          sink.write(scratch, 0, scratchLength);
+          scratchLength = 0;
+        }
+      }
+    }
+
+    // trailing incomplete group
+    if (symbols == 3) {
+      scratch[scratchLength++] = (byte) (bits >> 10);
+      scratch[scratchLength++] = (byte) (bits >> 2);
+    } else if (symbols == 2) {
+      scratch[scratchLength++] = (byte) (bits >> 4);
+    }
+
+    sink.write(scratch, 0, scratchLength);
+  }
+
+  private static int decode(char character) {
+    return character < decodeTable.length ? decodeTable[character] : -1;
+  }
+}
@@ -0,0 +1,40 @@
+package org.gooddollar.facetec.api;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/*
+ * Scratch byte buffers shared by the request bodies serializing payload
+ *
+ * Payload is written several times per session (spool, upload, retries) part by part,
+ * so the same few buffers are reused instead of allocating the new one on each write
+ */
+final class BufferPool {
+  private BufferPool() {}
+
+  static final int bufferSize = 8192;
+  // payload is built on the single thread, uploads could run in parallel (chunks)
+  private static final int maxPooled = 4;
+
+  private static final Deque<byte[]> buffers = new ArrayDeque<>();
+
+  static byte[] acquire() {
+    synchronized (buffers) {
+      byte[] buffer = buffers.pollFirst();
+
+      if (buffer != null) {
+        return buffer;
+      }
+    }
+
+    return new byte[bufferSize];
+  }
+
+  static void release(byte[] buffer) {
+    synchronized (buffers) {
+      if (buffers.size() < maxPooled) {
+        buffers.addFirst(buffer);
+      }
+    }
+  }
+}
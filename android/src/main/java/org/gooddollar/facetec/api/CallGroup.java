@@ -0,0 +1,59 @@
+package org.gooddollar.facetec.api;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import okhttp3.Call;
+
+/*
+ * Handle tracking in-flight API calls of a single verification session
+ *
+ * Requests are tagged with the session's group (Request.tag(CallGroup.class)), calls are
+ * added on enqueue and removed once completed. So cancel() aborts exactly the session's
+ * calls without scanning the dispatcher queues. Calls (e.g. retries) made after the group
+ * has been cancelled are rejected right away, so the connection is freed for the next session
+ */
+public final class CallGroup {
+  private final Set<Call> calls = new HashSet<>();
+  private boolean isCancelled = false;
+
+  // returns false if group has been cancelled and call shouldn't be executed
+  synchronized boolean add(Call call) {
+    if (isCancelled) {
+      return false;
+    }
+
+    calls.add(call);
+    return true;
+  }
+
+  synchronized void remove(Call call) {
+    calls.remove(call);
+  }
+
+  public synchronized boolean isCancelled() {
+    return isCancelled;
+  }
+
+  // cancels all in-flight calls of the group and the ones will be made later
+  public void cancel() {
+    List<Call> inFlight;
+
+    synchronized (this) {
+      if (isCancelled) {
+        return;
+      }
+
+      isCancelled = true;
+      inFlight = new ArrayList<>(calls);
+      calls.clear();
+    }
+
+    // Call.cancel() may close sockets, so it's done outside the lock
+    for (Call call : inFlight) {
+      call.cancel();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+
+/*
+ * Bounded in-memory store of the API calls timing breakdown
+ *
+ * Filled by the ConnectionStats call listener, keeps the last <capacity> calls.
+ * Calls are tagged by the endpoint with the ids replaced by placeholder, e.g.
+ * /verify/face/session or /verify/face/:id, so timings could be grouped
+ */
+public final class CallTimings {
+  private CallTimings() {}
+
+  private static final int capacity = 64;
+  // path segments kept as is in the endpoint tag, all others are treated as ids
+  private static final Set<String> endpointSegments = new HashSet<>(
+    Arrays.asList("verify", "face", "session", "status", "upload", "finalize", "license", "native")
+  );
+
+  private static final Deque<Timing> timings = new ArrayDeque<>();
+
+  // single call timing. durations are in millis, -1 if phase didn't happen (e.g. no DNS lookup on reused connection)
+  public static final class Timing {
+    public final String method;
+    public final String endpoint;
+    public final double dns;
+    public final double connect;
+    public final double tls;
+    public final double requestBody;
+    public final double timeToFirstByte;
+    public final double responseBody;
+    public final double total;
+    public final boolean connectionReused;
+    @Nullable public final String protocol;
+    public final long bytesSent;
+    public final long bytesReceived;
+    public final int statusCode;
+    public final boolean failed;
+
+    Timing(
+      String method, String endpoint, double dns, double connect, double tls, double requestBody,
+      double timeToFirstByte, double responseBody, double total, boolean connectionReused,
+      @Nullable String protocol, long bytesSent, long bytesReceived, int statusCode, boolean failed
+    ) {
+      this.method = method;
+      this.endpoint = endpoint;
+      this.dns = dns;
+      this.connect = connect;
+      this.tls = tls;
+      this.requestBody = requestBody;
+      this.timeToFirstByte = timeToFirstByte;
+      this.responseBody = responseBody;
+      this.total = total;
+      this.connectionReused = connectionReused;
+      this.protocol = protocol;
+      this.bytesSent = bytesSent;
+      this.bytesReceived = bytesReceived;
+      this.statusCode = statusCode;
+      this.failed = failed;
+    }
+  }
+
+  static void record(Timing timing) {
+    synchronized (timings) {
+      if (timings.size() >= capacity) {
+        timings.pollFirst();
+      }
+
+      timings.addLast(timing);
+    }
+  }
+
+  // returns recorded timings, the oldest first
+  public static List<Timing> snapshot() {
+    synchronized (timings) {
+      return new ArrayList<>(timings);
+    }
+  }
+
+  public static void clear() {
+    synchronized (timings) {
+      timings.clear();
+    }
+  }
+
+  // /verify/face/0x123/upload/abc/2 => /verify/face/:id/upload/:id/:id
+  static String endpointOf(HttpUrl url) {
+    StringBuilder endpoint = new StringBuilder();
+
+    for (String segment : url.pathSegments()) {
+      if (segment.isEmpty()) {
+        continue;
+      }
+
+      endpoint.append('/').append(endpointSegments.contains(segment) ? segment : ":id");
+    }
+
+    return endpoint.length() > 0 ? endpoint.toString() : "/";
+  }
+}
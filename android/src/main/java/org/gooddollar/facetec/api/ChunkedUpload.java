@@ -0,0 +1,358 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+
+import org.json.JSONObject;
+
+import org.gooddollar.facetec.api.FaceVerification.APICallback;
+import org.gooddollar.facetec.api.FaceVerification.APIException;
+
+/*
+ * Resumable upload of the serialized enrollment payload split onto chunks
+ *
+ * POST /verify/face/:id/upload { size, chunkSize, chunks, contentType } => { uploadId }
+ * PUT /verify/face/:id/upload/:uploadId/:index <chunk bytes> => { success }
+ * GET /verify/face/:id/upload/:uploadId => { received: [chunk indexes acknowledged] }
+ * POST /verify/face/:id/upload/:uploadId/finalize => the same response as PUT /verify/face/:id returns
+ *
+ * Chunks are sent in parallel over several pooled connections. If some chunk couldn't
+ * be sent (even after transport retries) the upload is resumed: the server is asked
+ * which chunks it has got and only the missing ones are re-sent
+ *
+ * Payload is serialized once into an immutable snapshot, each chunk request writes
+ * its own range of it, so the concurrent (and re-sent) chunks share nothing mutable
+ */
+final class ChunkedUpload {
+  private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+  private static final int parallelism = 3;
+  private static final int maxResumes = 2;
+
+  private final FaceVerificationClient client;
+  private final String uploadURL;
+  private final ByteString payload;
+  private final MediaType contentType;
+  private final int totalBytes;
+  private final int chunkSize;
+  private final int chunksCount;
+  @Nullable private final Deadline deadline;
+  @Nullable private final CallGroup calls;
+  private final ProgressRequestBody.Listener progressListener;
+  private final APICallback<EnrollmentResponse> callback;
+
+  private String uploadId = null;
+  private final boolean[] acknowledged;
+  private final long[] chunkProgress;
+  private final Deque<Integer> pending = new ArrayDeque<>();
+  private int inFlight = 0;
+  private int resumes = 0;
+  private boolean isDone = false;
+  private APIException lastException = null;
+
+  ChunkedUpload(
+    FaceVerificationClient client, String enrollmentIdentifier, ByteString payload, MediaType contentType, int chunkSize,
+    @Nullable Deadline deadline, @Nullable CallGroup calls, ProgressRequestBody.Listener progressListener,
+    APICallback<EnrollmentResponse> callback
+  ) {
+    this.client = client;
+    this.uploadURL = "/verify/face/" + enrollmentIdentifier + "/upload";
+    this.payload = payload;
+    this.contentType = contentType;
+    this.totalBytes = payload.size();
+    this.chunkSize = chunkSize;
+    this.chunksCount = (totalBytes + chunkSize - 1) / chunkSize;
+    this.deadline = deadline;
+    this.calls = calls;
+    this.progressListener = progressListener;
+    this.callback = callback;
+
+    acknowledged = new boolean[chunksCount];
+    chunkProgress = new long[chunksCount];
+  }
+
+  // opens upload session on the server and starts sending chunks
+  void start() {
+    JSONObject body = new JSONObject();
+
+    try {
+      body.put("size", totalBytes);
+      body.put("chunkSize", chunkSize);
+      body.put("chunks", chunksCount);
+      // payload format (JSON or multipart with its boundary) to parse it once assembled
+      body.put("contentType", contentType.toString());
+    } catch (Exception exception) {
+      fail(new APIException(exception, null));
+      return;
+    }
+
+    Request request = createRequest(uploadURL, "post", body);
+
+    client.sendRequest(request, deadline, UploadResponse.ADAPTER, new APICallback<UploadResponse>() {
+      @Override
+      public void onSuccess(UploadResponse response) {
+        String id = response.getUploadId();
+
+        if (id == null) {
+          fail(new APIException(FaceVerification.unexpectedMessage, response));
+          return;
+        }
+
+        synchronized (ChunkedUpload.this) {
+          uploadId = id;
+          enqueueMissing(response.getReceived());
+        }
+
+        dispatch();
+      }
+
+      @Override
+      public void onFailure(APIException exception) {
+        fail(exception);
+      }
+    });
+  }
+
+  // sends pending chunks keeping up to <parallelism> requests in flight
+  private void dispatch() {
+    while (true) {
+      int index;
+
+      synchronized (this) {
+        if (isDone || (lastException != null) || pending.isEmpty() || (inFlight >= parallelism)) {
+          break;
+        }
+
+        index = pending.pollFirst();
+        inFlight += 1;
+      }
+
+      sendChunk(index);
+    }
+
+    finalizeIfCompleted();
+  }
+
+  private void sendChunk(final int index) {
+    final int offset = index * chunkSize;
+    final int length = Math.min(chunkSize, totalBytes - offset);
+
+    RequestBody chunk = new ProgressRequestBody(new ChunkBody(offset, length), new ProgressRequestBody.Listener() {
+      @Override
+      public void onUploadProgressChanged(long bytesWritten, long totalChunkBytes) {
+        onChunkProgress(index, bytesWritten);
+      }
+    });
+
+    Request request = createRequest(uploadURL + "/" + uploadId + "/" + index, "put", chunk)
+      .newBuilder()
+      .header("Content-Type", OCTET_STREAM.toString())
+      .header("Content-Range", "bytes " + offset + "-" + (offset + length - 1) + "/" + totalBytes)
+      .build();
+
+    client.sendRequest(request, deadline, APIResponse.ADAPTER, new APICallback<APIResponse>() {
+      @Override
+      public void onSuccess(APIResponse response) {
+        onChunkSent(index, null);
+      }
+
+      @Override
+      public void onFailure(APIException exception) {
+        onChunkSent(index, exception);
+      }
+    });
+  }
+
+  private void onChunkSent(int index, @Nullable APIException exception) {
+    boolean shouldResume;
+
+    synchronized (this) {
+      inFlight -= 1;
+
+      if (exception == null) {
+        acknowledged[index] = true;
+      } else {
+        lastException = exception;
+      }
+
+      // if some chunk has failed, wait for the others in flight before resume
+      shouldResume = (lastException != null) && (inFlight == 0);
+    }
+
+    if (shouldResume) {
+      resume();
+      return;
+    }
+
+    dispatch();
+  }
+
+  // asks server which chunks it has received and re-sends the missing ones
+  private void resume() {
+    APIException exception = null;
+
+    synchronized (this) {
+      // give up if the session deadline has been reached, session cancelled or resumes limit exceeded
+      if ((resumes >= maxResumes) || (lastException instanceof FaceVerification.DeadlineExceededException)
+        || (lastException instanceof FaceVerification.CancelledException)) {
+        exception = lastException;
+      } else {
+        resumes += 1;
+      }
+    }
+
+    if (exception != null) {
+      fail(exception);
+      return;
+    }
+
+    Request request = createRequest(uploadURL + "/" + uploadId, "get", (RequestBody) null);
+
+    client.sendRequest(request, deadline, UploadResponse.ADAPTER, new APICallback<UploadResponse>() {
+      @Override
+      public void onSuccess(UploadResponse response) {
+        synchronized (ChunkedUpload.this) {
+          lastException = null;
+          pending.clear();
+
+          for (int index = 0; index < chunksCount; index++) {
+            acknowledged[index] = false;
+          }
+
+          enqueueMissing(response.getReceived());
+        }
+
+        dispatch();
+      }
+
+      @Override
+      public void onFailure(APIException exception) {
+        fail(exception);
+      }
+    });
+  }
+
+  private void finalizeIfCompleted() {
+    synchronized (this) {
+      if (isDone || (lastException != null) || (inFlight > 0) || !pending.isEmpty()) {
+        return;
+      }
+
+      for (boolean isAcknowledged : acknowledged) {
+        if (!isAcknowledged) {
+          return;
+        }
+      }
+
+      isDone = true;
+    }
+
+    // all chunks received - ask server to process enrollment. response is the same as for the regular upload
+    Request request = createRequest(uploadURL + "/" + uploadId + "/finalize", "post", new JSONObject());
+
+    client.sendRequest(request, deadline, EnrollmentResponse.ADAPTER, callback);
+  }
+
+  // request factory helpers tagging the upload requests with the session's calls group
+  private Request createRequest(String url, String method, @Nullable RequestBody body) {
+    return tag(client.createRequest(url, method, body));
+  }
+
+  private Request createRequest(String url, String method, JSONObject body) {
+    return tag(client.createRequest(url, method, body));
+  }
+
+  private Request tag(Request request) {
+    return request.newBuilder().tag(CallGroup.class, calls).build();
+  }
+
+  // marks chunks listed as received by the server as acknowledged, enqueues others
+  private void enqueueMissing(List<Integer> received) {
+    for (int index : received) {
+      if ((index >= 0) && (index < chunksCount)) {
+        acknowledged[index] = true;
+      }
+    }
+
+    for (int index = 0; index < chunksCount; index++) {
+      int chunkLength = Math.min(chunkSize, totalBytes - index * chunkSize);
+
+      chunkProgress[index] = acknowledged[index] ? chunkLength : 0;
+
+      if (!acknowledged[index]) {
+        pending.addLast(index);
+      }
+    }
+  }
+
+  // aggregates chunks progress into the whole payload progress
+  private void onChunkProgress(int index, long bytesWritten) {
+    long bytesSent = 0;
+
+    synchronized (this) {
+      chunkProgress[index] = bytesWritten;
+
+      for (long chunkBytes : chunkProgress) {
+        bytesSent += chunkBytes;
+      }
+    }
+
+    progressListener.onUploadProgressChanged(bytesSent, totalBytes);
+  }
+
+  private void fail(APIException exception) {
+    synchronized (this) {
+      if (isDone) {
+        return;
+      }
+
+      isDone = true;
+    }
+
+    callback.onFailure(exception);
+  }
+
+  // serializes payload once into the immutable snapshot the chunks are sliced from
+  static ByteString snapshot(RequestBody payload) throws IOException {
+    Buffer buffer = new Buffer();
+
+    payload.writeTo(buffer);
+    return buffer.readByteString();
+  }
+
+  // writes chunk's range of the payload snapshot
+  private final class ChunkBody extends RequestBody {
+    private final int offset;
+    private final int length;
+
+    ChunkBody(int offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return OCTET_STREAM;
+    }
+
+    @Override
+    public long contentLength() {
+      return length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+      sink.write(payload.substring(offset, offset + length));
+    }
+  }
+}
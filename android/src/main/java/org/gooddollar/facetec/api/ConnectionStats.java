@@ -0,0 +1,225 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/*
+ * Counts API calls and how many of them have been sent over the pooled (already
+ * established) connections vs the new ones. Allows to check preconnect & keep-warm
+ * are working: ideally, the enrollment upload always reuses a connection
+ *
+ * Also feeds NetworkQuality with the ping round trip time samples (upload throughput
+ * is measured by NetworkQuality.INTERCEPTOR) and records per-call timing breakdown
+ * to CallTimings. Listener only stores System.nanoTime() values into its fields,
+ * timing record is built once the call ended
+ */
+public final class ConnectionStats {
+  private ConnectionStats() {}
+
+  private static final AtomicLong calls = new AtomicLong();
+  private static final AtomicLong newConnections = new AtomicLong();
+  private static final AtomicLong reusedConnections = new AtomicLong();
+  private static final AtomicLong failedCalls = new AtomicLong();
+
+  // OkHttp creates listener per call, so it could track whether call has connected by itself
+  public static final EventListener.Factory FACTORY = new EventListener.Factory() {
+    @Override
+    public EventListener create(Call call) {
+      return new CallListener();
+    }
+  };
+
+  private static final class CallListener extends EventListener {
+    private boolean hasConnected = false;
+    private boolean connectionReused = false;
+    @Nullable private Protocol protocol = null;
+    private long callStartedAt = 0;
+    private long dnsStartedAt = 0;
+    private long dnsEndedAt = 0;
+    private long connectStartedAt = 0;
+    private long connectEndedAt = 0;
+    private long secureConnectStartedAt = 0;
+    private long secureConnectEndedAt = 0;
+    private long requestHeadersStartedAt = 0;
+    private long requestEndedAt = 0;
+    private long requestBodyStartedAt = 0;
+    private long requestBodyEndedAt = 0;
+    private long responseHeadersStartedAt = 0;
+    private long responseBodyStartedAt = 0;
+    private long responseBodyEndedAt = 0;
+    private long bytesSent = 0;
+    private long bytesReceived = 0;
+    private int statusCode = -1;
+
+    @Override
+    public void callStart(Call call) {
+      calls.incrementAndGet();
+      callStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+      dnsStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+      dnsEndedAt = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+      hasConnected = true;
+      connectStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+      secureConnectStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+      secureConnectEndedAt = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+      connectEndedAt = System.nanoTime();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+      // connection acquired without connecting means it was taken from the pool
+      if (hasConnected) {
+        newConnections.incrementAndGet();
+      } else {
+        reusedConnections.incrementAndGet();
+      }
+
+      connectionReused = !hasConnected;
+      protocol = connection.protocol();
+      // retries / follow-ups on the same call could acquire another connection
+      hasConnected = false;
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+      requestHeadersStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+      requestEndedAt = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyStart(Call call) {
+      requestBodyStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+      requestBodyEndedAt = System.nanoTime();
+      requestEndedAt = requestBodyEndedAt;
+      bytesSent = byteCount;
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+      responseHeadersStartedAt = System.nanoTime();
+
+      // HEAD pings are answered right away, so time to the response is a round trip time
+      if ("HEAD".equals(call.request().method())) {
+        NetworkQuality.recordRoundTrip(responseHeadersStartedAt - requestHeadersStartedAt);
+      }
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+      statusCode = response.code();
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+      responseBodyStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+      responseBodyEndedAt = System.nanoTime();
+      bytesReceived = byteCount;
+    }
+
+    @Override
+    public void callEnd(Call call) {
+      recordTiming(call, false);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+      failedCalls.incrementAndGet();
+      recordTiming(call, true);
+    }
+
+    private void recordTiming(Call call, boolean failed) {
+      CallTimings.record(new CallTimings.Timing(
+        call.request().method(), CallTimings.endpointOf(call.request().url()),
+        millisBetween(dnsStartedAt, dnsEndedAt),
+        millisBetween(connectStartedAt, connectEndedAt),
+        millisBetween(secureConnectStartedAt, secureConnectEndedAt),
+        millisBetween(requestBodyStartedAt, requestBodyEndedAt),
+        millisBetween(requestEndedAt, responseHeadersStartedAt),
+        millisBetween(responseBodyStartedAt, responseBodyEndedAt),
+        millisBetween(callStartedAt, System.nanoTime()),
+        connectionReused, protocol != null ? protocol.toString() : null,
+        bytesSent, bytesReceived, statusCode, failed
+      ));
+    }
+
+    private static double millisBetween(long start, long end) {
+      if ((start == 0) || (end < start)) {
+        return -1;
+      }
+
+      return (end - start) / 1e6;
+    }
+  }
+
+  // snapshot of the counters & connection pool state
+  public static final class Snapshot {
+    public final long calls;
+    public final long newConnections;
+    public final long reusedConnections;
+    public final long failedCalls;
+    public final int pooledConnections;
+    public final int idleConnections;
+
+    Snapshot(OkHttpClient client) {
+      this.calls = ConnectionStats.calls.get();
+      this.newConnections = ConnectionStats.newConnections.get();
+      this.reusedConnections = ConnectionStats.reusedConnections.get();
+      this.failedCalls = ConnectionStats.failedCalls.get();
+      this.pooledConnections = client.connectionPool().connectionCount();
+      this.idleConnections = client.connectionPool().idleConnectionCount();
+    }
+  }
+
+  public static Snapshot snapshot() {
+    return new Snapshot(NetworkingHelpers.getApiClient());
+  }
+}
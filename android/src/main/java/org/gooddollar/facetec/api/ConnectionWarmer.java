@@ -0,0 +1,46 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Keeps connection to GoodServer warm while user is capturing the face
+ *
+ * Capturing takes 10-20 seconds, which is enough for carrier NATs to drop idle
+ * connection from the pool, so the upload would start with DNS / TCP / TLS setup.
+ * To avoid this we're sending lightweight pings periodically until upload starts
+ */
+public final class ConnectionWarmer {
+  private ConnectionWarmer() {}
+
+  private static final long pingInterval = 10; // seconds
+
+  @Nullable
+  private static ScheduledFuture<?> pings = null;
+
+  // starts sending pings to the client's server. no-op if already started
+  public static synchronized void start(final FaceVerificationClient client) {
+    if (pings != null) {
+      return;
+    }
+
+    Runnable ping = new Runnable() {
+      @Override
+      public void run() {
+        client.preconnect();
+      }
+    };
+
+    pings = NetworkingHelpers.getScheduler().scheduleWithFixedDelay(ping, pingInterval, pingInterval, TimeUnit.SECONDS);
+  }
+
+  public static synchronized void stop() {
+    if (pings == null) {
+      return;
+    }
+
+    pings.cancel(false);
+    pings = null;
+  }
+}
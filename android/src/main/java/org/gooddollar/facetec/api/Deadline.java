@@ -0,0 +1,44 @@
+package org.gooddollar.facetec.api;
+
+import java.util.concurrent.TimeUnit;
+import androidx.annotation.Nullable;
+
+/*
+ * Point in time the whole verification session should be done before
+ *
+ * Created once per session, every API call made during the session (session token,
+ * enrollment upload, retries) gets the remaining budget as its call timeout.
+ * Uses monotonic clock, so isn't affected by the wall clock changes
+ */
+public final class Deadline {
+  private final long deadlineNanos;
+
+  private Deadline(long deadlineNanos) {
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  public static Deadline after(long duration, TimeUnit unit) {
+    return new Deadline(System.nanoTime() + unit.toNanos(duration));
+  }
+
+  // the sooner of two deadlines, null means no limit
+  @Nullable
+  public static Deadline earliest(@Nullable Deadline first, @Nullable Deadline second) {
+    if ((first == null) || (second == null)) {
+      return first != null ? first : second;
+    }
+
+    return first.deadlineNanos - second.deadlineNanos <= 0 ? first : second;
+  }
+
+  // remaining budget, zero if already expired
+  public long remaining(TimeUnit unit) {
+    long remainingNanos = deadlineNanos - System.nanoTime();
+
+    return remainingNanos > 0 ? unit.convert(remainingNanos, TimeUnit.NANOSECONDS) : 0;
+  }
+
+  public boolean isExpired() {
+    return deadlineNanos - System.nanoTime() <= 0;
+  }
+}
@@ -0,0 +1,213 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.RequestBody;
+
+import org.gooddollar.facetec.api.FaceVerification.APICallback;
+import org.gooddollar.facetec.api.FaceVerification.APIException;
+import org.gooddollar.facetec.api.FaceVerification.DeadlineExceededException;
+
+/*
+ * Queue of the enrollments which couldn't be uploaded during the session (device offline)
+ *
+ * Queue is the spool itself, so enrollments survive app restart until they expire.
+ * Each entry keeps the server URL and JWT of the session, so it's uploaded on behalf of
+ * the same user even if the app has switched server or user meanwhile. Entry expires with
+ * the JWT, but not later than <maxDeferral> after capture, as the scan is bound to the
+ * FaceTec session which isn't accepted by the server for long.
+ *
+ * Uploads are made one by one on the networking scheduler, if network is still unavailable
+ * the next attempt is scheduled with exponential backoff. Enrollment is removed from the
+ * queue once server has responded (either succeeded or rejected it), it has expired or failed
+ * with non-network error, listener is notified
+ */
+public final class DeferredEnrollments {
+  private DeferredEnrollments() {}
+
+  private static final long minDelay = TimeUnit.SECONDS.toMillis(30);
+  private static final long maxDelay = TimeUnit.MINUTES.toMillis(15);
+  private static final long maxDeferral = TimeUnit.HOURS.toMillis(1);
+
+  private static Listener listener = null;
+  private static boolean isScheduled = false;
+  private static boolean isUploading = false;
+  // enrollment has been deferred while upload pass was running
+  private static boolean hasPending = false;
+  private static int attempt = 0;
+
+  public interface Listener {
+    // exception is null if enrollment succeeded
+    void onDeferredEnrollmentComplete(String enrollmentIdentifier, @Nullable APIException exception);
+  }
+
+  public static synchronized void setListener(@Nullable Listener enrollmentListener) {
+    listener = enrollmentListener;
+  }
+
+  // spools payload to be uploaded later via the server & JWT of the client given, schedules upload attempt
+  // returns false if it couldn't be deferred (spooling unavailable or failed, JWT is about to expire)
+  // blocks while payload is being encrypted to the storage, so shouldn't be called on the main thread
+  public static boolean defer(FaceVerificationClient client, String enrollmentIdentifier, RequestBody payload) {
+    long now = System.currentTimeMillis();
+    long expiresAt = now + maxDeferral;
+    long accessTokenExpiresAt = client.getAccessTokenExpiresAt();
+
+    if (accessTokenExpiresAt > 0) {
+      expiresAt = Math.min(expiresAt, accessTokenExpiresAt);
+    }
+
+    // will expire before the first upload attempt
+    if (expiresAt - now <= minDelay) {
+      return false;
+    }
+
+    PayloadSpool.Entry entry = PayloadSpool.spool(
+      enrollmentIdentifier, client.getServerURL(), client.getAccessToken(), expiresAt, payload
+    );
+
+    if (entry == null) {
+      return false;
+    }
+
+    schedule(minDelay);
+    return true;
+  }
+
+  // uploads enrollments left from the previous app runs (if any)
+  public static void flush() {
+    schedule(0);
+  }
+
+  private static void schedule(long delay) {
+    synchronized (DeferredEnrollments.class) {
+      if (isUploading) {
+        hasPending = true;
+        return;
+      }
+
+      if (isScheduled) {
+        return;
+      }
+
+      isScheduled = true;
+    }
+
+    NetworkingHelpers.getScheduler().schedule(new Runnable() {
+      @Override
+      public void run() {
+        List<PayloadSpool.Entry> entries = PayloadSpool.list();
+
+        synchronized (DeferredEnrollments.class) {
+          isScheduled = false;
+          isUploading = !entries.isEmpty();
+        }
+
+        uploadNext(entries.iterator());
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private static void uploadNext(final Iterator<PayloadSpool.Entry> entries) {
+    if (!entries.hasNext()) {
+      onUploaded(false);
+      return;
+    }
+
+    final PayloadSpool.Entry entry = entries.next();
+    long remainingTime = entry.getExpiresAt() - System.currentTimeMillis();
+
+    // has been evicted or removed meanwhile
+    if (!entry.acquire()) {
+      uploadNext(entries);
+      return;
+    }
+
+    if (remainingTime <= 0) {
+      entry.delete();
+      notifyListener(entry, new DeadlineExceededException());
+      uploadNext(entries);
+      return;
+    }
+
+    APICallback<EnrollmentResponse> callback = new APICallback<EnrollmentResponse>() {
+      @Override
+      public void onSuccess(EnrollmentResponse response) {
+        entry.delete();
+        notifyListener(entry, null);
+        uploadNext(entries);
+      }
+
+      @Override
+      public void onFailure(APIException exception) {
+        // still offline - keep it in the spool and retry later
+        if (isNetworkError(exception)) {
+          entry.release();
+          onUploaded(true);
+          return;
+        }
+
+        // server has rejected enrollment, it has expired during the upload etc - do not re-send it
+        entry.delete();
+        notifyListener(entry, exception);
+        uploadNext(entries);
+      }
+    };
+
+    // uploaded on behalf of the user session was made by, not the one currently registered
+    FaceVerificationClient client = new FaceVerificationClient(entry.getServerURL(), entry.getAccessToken());
+
+    client.enroll(
+      entry.getEnrollmentIdentifier(), entry.body(),
+      Deadline.after(remainingTime, TimeUnit.MILLISECONDS), null, callback
+    );
+  }
+
+  // server hasn't been reached. any response, deadline or local (e.g. spool read) error is permanent
+  private static boolean isNetworkError(APIException exception) {
+    Throwable cause = exception.getCause();
+
+    return (exception.getResponse() == null) && !(exception instanceof DeadlineExceededException)
+      && (cause instanceof IOException) && RetryPolicy.isTransient((IOException) cause);
+  }
+
+  private static void onUploaded(boolean hasFailed) {
+    long delay;
+
+    synchronized (DeferredEnrollments.class) {
+      boolean isPending = hasPending;
+
+      isUploading = false;
+      hasPending = false;
+
+      if (hasFailed) {
+        delay = Math.min(maxDelay, minDelay << Math.min(attempt, 10));
+        attempt += 1;
+      } else if (isPending) {
+        delay = minDelay;
+        attempt = 0;
+      } else {
+        attempt = 0;
+        return;
+      }
+    }
+
+    schedule(delay);
+  }
+
+  private static void notifyListener(PayloadSpool.Entry entry, @Nullable APIException exception) {
+    Listener enrollmentListener;
+
+    synchronized (DeferredEnrollments.class) {
+      enrollmentListener = listener;
+    }
+
+    if (enrollmentListener != null) {
+      enrollmentListener.onDeferredEnrollmentComplete(entry.getEnrollmentIdentifier(), exception);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+
+/*
+ * Request body compressing the wrapped one while it's being written to the connection
+ *
+ * Nothing is compressed ahead of time, so the encoded length isn't known
+ * and the request is sent chunked. Keeps the reference to the source body
+ * to be able to re-send the request without encoding if server refuses it
+ */
+public class EncodedRequestBody extends RequestBody {
+  private final RequestBody source;
+  private final RequestCodec codec;
+
+  public EncodedRequestBody(RequestBody source, RequestCodec codec) {
+    this.source = source;
+    this.codec = codec;
+  }
+
+  public RequestBody getSource() {
+    return source;
+  }
+
+  public String encoding() {
+    return codec.encoding();
+  }
+
+  @Override
+  public MediaType contentType() {
+    return source.contentType();
+  }
+
+  @Override
+  public long contentLength() {
+    return -1; // unknown until compressed
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    BufferedSink encodedSink = Okio.buffer(codec.encode(sink));
+
+    source.writeTo(encodedSink);
+    // flushes encoder state (e.g. gzip trailer) to the request sink
+    encodedSink.close();
+  }
+}
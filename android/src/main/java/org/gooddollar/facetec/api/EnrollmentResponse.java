@@ -0,0 +1,113 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+// PUT /verify/face/:id response { success, error?, enrollmentResult: { ... } }
+public class EnrollmentResponse extends APIResponse {
+  // empty result (with the default flags) if server hasn't sent it
+  EnrollmentResult enrollmentResult = new EnrollmentResult();
+
+  // response.data.enrollmentResult
+  public static class EnrollmentResult {
+    boolean isDuplicate = false;
+    boolean isNotMatch = false;
+    boolean isEnrolled = false;
+    // in JS code we're checking for false === isLive strictly. so if no isLive flag in the response,
+    // we assume that liveness check was successfull. That's why true is default value
+    boolean isLive = true;
+    // enrollmentResult.optString("resultBlob") was used before, so it's empty string if missing
+    String resultBlob = "";
+
+    public boolean isDuplicate() {
+      return isDuplicate;
+    }
+
+    public boolean isNotMatch() {
+      return isNotMatch;
+    }
+
+    public boolean isEnrolled() {
+      return isEnrolled;
+    }
+
+    public boolean isLive() {
+      return isLive;
+    }
+
+    public String getResultBlob() {
+      return resultBlob;
+    }
+  }
+
+  private static final TypeAdapter<EnrollmentResult> resultAdapter = new TypeAdapter<EnrollmentResult>() {
+    @Override
+    public EnrollmentResult read(JsonReader reader) throws IOException {
+      EnrollmentResult result = new EnrollmentResult();
+
+      reader.beginObject();
+
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+          continue;
+        }
+
+        switch (name) {
+          case "isDuplicate":
+            result.isDuplicate = reader.nextBoolean();
+            break;
+          case "isNotMatch":
+            result.isNotMatch = reader.nextBoolean();
+            break;
+          case "isEnrolled":
+            result.isEnrolled = reader.nextBoolean();
+            break;
+          case "isLive":
+            result.isLive = reader.nextBoolean();
+            break;
+          case "resultBlob":
+            result.resultBlob = reader.nextString();
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+
+      reader.endObject();
+      return result;
+    }
+
+    @Override
+    public void write(JsonWriter writer, EnrollmentResult value) {
+      throw new UnsupportedOperationException("API responses couldn't be serialized");
+    }
+  };
+
+  public static final TypeAdapter<EnrollmentResponse> ADAPTER = new Adapter<EnrollmentResponse>() {
+    @Override
+    protected EnrollmentResponse create() {
+      return new EnrollmentResponse();
+    }
+
+    @Override
+    protected boolean readProperty(EnrollmentResponse response, String name, JsonReader reader) throws IOException {
+      if ("enrollmentResult".equals(name)) {
+        response.enrollmentResult = resultAdapter.read(reader);
+        return true;
+      }
+
+      return false;
+    }
+  };
+
+  public EnrollmentResult getEnrollmentResult() {
+    return enrollmentResult;
+  }
+}
@@ -0,0 +1,103 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+
+import org.gooddollar.facetec.api.FaceVerification.APICallback;
+import org.gooddollar.facetec.api.FaceVerification.APIException;
+
+/*
+ * Pre-capture enrollment status check running in parallel with the session token fetch
+ *
+ * GET /verify/face/:id/status is sent right away, without waiting for the server capabilities:
+ * they're known only once the first session token has been received. Servers without this
+ * endpoint are answering 404 / 405 - as any other failure, it means "status unknown" and
+ * the session goes on as usual. Token received while the check is in flight is held until
+ * the status is known. If identifier is already enrolled or known as duplicate the session's
+ * calls are cancelled (including the token fetch), so capture won't be started
+ */
+public final class EnrollmentStatusCheck {
+  public interface Listener {
+    // status is clear (or unknown) and session token is received - session could be launched
+    void onProceed(String sessionToken);
+
+    void onAlreadyEnrolled();
+
+    void onDuplicateEnrollment();
+  }
+
+  private final FaceVerificationClient client;
+  private final CallGroup calls;
+  private final Listener listener;
+
+  private boolean isPending = true;
+  @Nullable private String pendingSessionToken = null;
+
+  public EnrollmentStatusCheck(FaceVerificationClient client, CallGroup calls, Listener listener) {
+    this.client = client;
+    this.calls = calls;
+    this.listener = listener;
+  }
+
+  public void start(String enrollmentIdentifier, @Nullable Deadline deadline) {
+    client.getEnrollmentStatus(enrollmentIdentifier, deadline, calls, new APICallback<EnrollmentStatusResponse>() {
+      @Override
+      public void onSuccess(EnrollmentStatusResponse response) {
+        if (calls.isCancelled()) {
+          return;
+        }
+
+        if (!response.isEnrolled() && !response.isDuplicate()) {
+          onStatusChecked();
+          return;
+        }
+
+        // abort token fetch (if still in flight), session won't be launched
+        calls.cancel();
+
+        if (response.isEnrolled()) {
+          listener.onAlreadyEnrolled();
+          return;
+        }
+
+        listener.onDuplicateEnrollment();
+      }
+
+      @Override
+      public void onFailure(APIException exception) {
+        // session has been cancelled (preempted) meanwhile
+        if (calls.isCancelled()) {
+          return;
+        }
+
+        onStatusChecked();
+      }
+    });
+  }
+
+  // passes token to the listener right away if status is known, otherwise keeps it until it is
+  public void onSessionTokenReceived(String sessionToken) {
+    synchronized (this) {
+      if (isPending) {
+        pendingSessionToken = sessionToken;
+        return;
+      }
+    }
+
+    listener.onProceed(sessionToken);
+  }
+
+  // proceeds if token has been received while status check was in flight
+  private void onStatusChecked() {
+    String sessionToken;
+
+    synchronized (this) {
+      isPending = false;
+      sessionToken = pendingSessionToken;
+      pendingSessionToken = null;
+    }
+
+    if (sessionToken != null) {
+      listener.onProceed(sessionToken);
+    }
+  }
+}
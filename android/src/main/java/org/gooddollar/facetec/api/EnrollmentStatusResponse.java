@@ -0,0 +1,42 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+// GET /verify/face/:id/status response { success, isEnrolled, isDuplicate }
+// both flags default to false, so the session is started if server doesn't know the identifier
+public class EnrollmentStatusResponse extends APIResponse {
+  boolean isEnrolled = false;
+  boolean isDuplicate = false;
+
+  public static final TypeAdapter<EnrollmentStatusResponse> ADAPTER = new Adapter<EnrollmentStatusResponse>() {
+    @Override
+    protected EnrollmentStatusResponse create() {
+      return new EnrollmentStatusResponse();
+    }
+
+    @Override
+    protected boolean readProperty(EnrollmentStatusResponse response, String name, JsonReader reader) throws IOException {
+      switch (name) {
+        case "isEnrolled":
+          response.isEnrolled = reader.nextBoolean();
+          return true;
+        case "isDuplicate":
+          response.isDuplicate = reader.nextBoolean();
+          return true;
+      }
+
+      return false;
+    }
+  };
+
+  public boolean isEnrolled() {
+    return isEnrolled;
+  }
+
+  public boolean isDuplicate() {
+    return isDuplicate;
+  }
+}
@@ -1,66 +1,78 @@
 package org.gooddollar.facetec.api;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
 import androidx.annotation.Nullable;
 
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.MediaType;
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.Response;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import org.gooddollar.facetec.api.NetworkingHelpers;
-
-// API client
+// API types & the default client registered by the module
+// static methods are delegating to the client instance (see FaceVerificationClient)
 public final class FaceVerification {
   public static final String unexpectedMessage = "An unexpected issue during the face verification API call";
 
   private FaceVerification() {}
-  // get & store global http client instance
-  private final static OkHttpClient http = NetworkingHelpers.getApiClient();
-  private static String _jwtAccessToken;
-  private static String _serverURL;
-
-  private static String succeedProperty = "success";
-  private static String errorMessageProperty = "error";
-  private static String sessionTokenProperty = "sessionToken";
+  // the client configured with the current GoodServer url and JWT, replaced (not mutated) on register()
+  private static volatile FaceVerificationClient _client = null;
 
-  // API exception class encapsulating JSON response object
+  // API exception class encapsulating typed response object
   public static class APIException extends IOException {
-    JSONObject response = null;
+    APIResponse response = null;
 
-    public APIException(String message, @Nullable JSONObject response) {
+    public APIException(String message, @Nullable APIResponse response) {
       super(message);
 
       this.response = response;
     }
 
-    APIException(Throwable cause, @Nullable JSONObject response) {
+    APIException(Throwable cause, @Nullable APIResponse response) {
       super(cause);
 
       this.response = response;
     }
 
-    public JSONObject getResponse() {
+    @Nullable
+    public APIResponse getResponse() {
       return response;
     }
   }
 
+  // thrown if session deadline has been reached before or during the API call
+  public static class DeadlineExceededException extends APIException {
+    public DeadlineExceededException() {
+      super("Verification session deadline exceeded", null);
+    }
+
+    DeadlineExceededException(Throwable cause) {
+      super(cause, null);
+    }
+  }
+
+  // thrown if session has been cancelled (or preempted by the new one) before or during the API call
+  public static class CancelledException extends APIException {
+    public CancelledException() {
+      super("Verification session has been cancelled", null);
+    }
+  }
+
+  // thrown if JWT has expired (or will expire before the call completes) and app hasn't provided the fresh one
+  public static class AccessTokenExpiredException extends APIException {
+    public AccessTokenExpiredException() {
+      super("Access token has expired", null);
+    }
+  }
+
   interface CallbackBase {
     void onFailure(APIException exception);
   }
 
   // Basic API callback object having 
-  //   - onSuccess() (receiving json response)
+  //   - onSuccess() (receiving typed response)
   //   - onFailure() (receiving APIException wrapping exception and error response)
-  public interface APICallback extends CallbackBase {
-    void onSuccess(JSONObject response);
+  public interface APICallback<T extends APIResponse> extends CallbackBase {
+    void onSuccess(T response);
   }
 
   // Session token callback object
@@ -70,158 +82,131 @@ public final class FaceVerification {
     void onSessionTokenReceived(String sessionToken);
   }
 
-  // configures client with GoodServer url and JWT
-  public static void register(String serverURL, String jwtAccessToken) {
-    _serverURL = serverURL;
-    _jwtAccessToken = jwtAccessToken;
+  // Session token callback used by the token pool
+  //   - receives also token lifetime (in millis) if server has returned it or -1 otherwise
+  interface SessionTokenTTLCallback extends CallbackBase {
+    void onSessionTokenReceived(String sessionToken, long ttl);
   }
 
-  // JSON.stringify-like helper to send requests with body
-  public static RequestBody jsonStringify(JSONObject body) {
-    return RequestBody.create(MediaType.parse("application/json; charset=utf-8"), body.toString());
+  // configures default client with GoodServer url and JWT
+  // calls in flight (if any) are finishing with the previous client
+  public static synchronized void register(String serverURL, String jwtAccessToken) {
+    FaceVerificationClient client = _client;
+
+    // capabilities are per server, will be re-negotiated on the next session token call
+    if ((client == null) || !serverURL.equals(client.getServerURL())) {
+      _client = new FaceVerificationClient(serverURL, jwtAccessToken);
+      return;
+    }
+
+    _client = client.withAccessToken(jwtAccessToken);
   }
 
-  // opens FV session and returns sessionToken
-  public static void getSessionToken(final SessionTokenCallback callback) {
-    // build request POST <goodserver>/verify/face/session with empty body 
-    Request tokenRequest = createRequest("/verify/face/session", "post", new JSONObject());
-
-    // send it
-    sendRequest(tokenRequest, new APICallback() {
-      @Override
-      public void onSuccess(JSONObject response) {
-        try {
-          if (response.has(sessionTokenProperty) == false) {
-            // throw if no token prop in response
-            throw new APIException("FaceTec API response is empty", response);
-          }
-
-          // otherwise read token and call onSessionTokenReceived callback
-          callback.onSessionTokenReceived(response.getString(sessionTokenProperty));
-        } catch (APIException exception) { // if got APIException - just call onFailure
-          callback.onFailure(exception);
-        } catch (Exception exception) { // otherwise wrap any Java exception with APIException and response (if any)
-          callback.onFailure(new APIException(exception, response));
-        }
-      }
+  // replaces JWT of the default client (e.g. once app has refreshed it on AccessTokenRefresh request)
+  // sessions in progress are switching to the new client before the next API call
+  public static void updateAccessToken(String jwtAccessToken) {
+    FaceVerificationClient client;
 
-      @Override
-      public void onFailure(APIException exception) {
-        callback.onFailure(exception);
+    synchronized (FaceVerification.class) {
+      client = _client;
+
+      // not registered yet - token will be passed on initialize
+      if (client == null) {
+        return;
       }
-    });
+
+      client = client.withAccessToken(jwtAccessToken);
+      _client = client;
+    }
+
+    AccessTokenRefresh.complete(client);
   }
 
-  // different enroll() overloads to support send plain object or RequestBody instance and covering optional params
-  public static void enroll(String enrollmentIdentifier, JSONObject payload, final APICallback callback) {
-    enroll(enrollmentIdentifier, jsonStringify(payload), null, callback);
+  // returns default client, null if register() hasn't been called yet
+  @Nullable
+  public static FaceVerificationClient getClient() {
+    return _client;
   }
 
-  public static void enroll(String enrollmentIdentifier, RequestBody customRequest, final APICallback callback) {
-    enroll(enrollmentIdentifier, customRequest, null, callback);
+  // adds (or replaces) request body codec. it's used only if server supports its encoding
+  public static void registerCodec(RequestCodec codec) {
+    FaceVerificationClient.registerCodec(codec);
   }
 
-  public static void enroll(String enrollmentIdentifier, JSONObject payload, @Nullable Integer timeout, final APICallback callback) {
-    enroll(enrollmentIdentifier, jsonStringify(payload), timeout, callback);
+  public static ServerCapabilities getCapabilities() {
+    FaceVerificationClient client = _client;
+
+    return client != null ? client.getCapabilities() : ServerCapabilities.NONE;
   }
 
-  // full enroll() implementation
-  public static void enroll(String enrollmentIdentifier, RequestBody customRequest, @Nullable Integer timeout, final APICallback callback) {
-    // build request PUT <goodserver>/verify/face/<enrollment id> { faceScan, auditTrailImage, lowQualityAuditTrailImage, sessionId, fvSigner }
-    Request enrollmentRequest = createRequest("/verify/face/" + enrollmentIdentifier, "put", customRequest);
+  // establishes connection to the server (DNS, TCP, TLS) ahead of time. no-op if not registered
+  public static void preconnect() {
+    FaceVerificationClient client = _client;
 
-    // send it, pass callback object with onSuccess/onFailure
-    sendRequest(enrollmentRequest, timeout, callback);
+    if (client != null) {
+      client.preconnect();
+    }
   }
 
-  // request factory helper
-  private static Request createRequest(String url, @Nullable String method, @Nullable RequestBody body) {
-    Request.Builder request = new Request.Builder()
-      .url(_serverURL + url) // combine url, set headers
-      .header("Content-Type", "application/json")
-      .header("Authorization", "Bearer " + _jwtAccessToken);
+  // pings the server, onComplete (if set) is called once ping completed or failed
+  public static void probe(@Nullable Runnable onComplete) {
+    FaceVerificationClient client = _client;
 
-    // set method
-    switch (method) {
-      case "post":
-        request.post(body);
-        break;
-      case "put":
-        request.put(body);
-        break;
+    if (client != null) {
+      client.probe(onComplete);
+      return;
     }
 
-    // build & return
-    return request.build();
+    if (onComplete != null) {
+      onComplete.run();
+    }
   }
 
-  // send request overloads for different methods & body types
-  private static Request createRequest(String url, String method, JSONObject body) {
-    RequestBody requestBody = jsonStringify(body);
+  // JSON.stringify-like helper to send requests with body
+  public static RequestBody jsonStringify(JSONObject body) {
+    return RequestBody.create(MediaType.parse("application/json; charset=utf-8"), body.toString());
+  }
 
-    return createRequest(url, method, requestBody);
+  // opens FV session and returns sessionToken
+  public static void getSessionToken(final SessionTokenCallback callback) {
+    requireClient().getSessionToken(callback);
   }
 
-  private static void sendRequest(Request request, final APICallback requestCallback) {
-    sendRequest(request, null, requestCallback);
+  public static void getSessionToken(@Nullable Deadline deadline, final SessionTokenCallback callback) {
+    requireClient().getSessionToken(deadline, callback);
   }
 
-  // full send request implenetations
-  private static void sendRequest(Request request, @Nullable Integer timeout, final APICallback requestCallback) {
-    // use global http client instance by default
-    OkHttpClient httpClient = http;
+  // different enroll() overloads to support send plain object or RequestBody instance and covering optional params
+  public static void enroll(String enrollmentIdentifier, JSONObject payload, final APICallback<EnrollmentResponse> callback) {
+    requireClient().enroll(enrollmentIdentifier, payload, callback);
+  }
 
-    if (timeout != null) { // if timeout been set - create new client instance configured with timeout
-      httpClient = NetworkingHelpers.setTimeouts(http.newBuilder(), timeout, TimeUnit.MILLISECONDS).build();
-    }
+  public static void enroll(String enrollmentIdentifier, RequestBody customRequest, final APICallback<EnrollmentResponse> callback) {
+    requireClient().enroll(enrollmentIdentifier, customRequest, callback);
+  }
 
-    // send request
-    httpClient.newCall(request).enqueue(new Callback() {
-      // response/error handling the same as in the web (as we interact with the same GoodServer)
-      // the same props are read & checked, the same cases processed
-      @Override
-      public void onResponse(Call call, Response response) throws IOException {
-        try {
-          String responseString = response.body().string();
-          response.body().close();
-
-          JSONObject responseJSON = new JSONObject(responseString);
-
-          // if (!('success' in response.data))
-          if (responseJSON.has(succeedProperty) == false) {
-            throw new APIException(unexpectedMessage, responseJSON);
-          }
-
-          String errorMessage = null;
-          boolean didSucceed = responseJSON.getBoolean(succeedProperty);
-
-          // if (response.data.success)
-          if (didSucceed == true) {
-            requestCallback.onSuccess(responseJSON);
-            return;
-          }
-
-          // if (response.data.error)
-          if (responseJSON.has(errorMessageProperty) == true) {
-            errorMessage = responseJSON.getString(errorMessageProperty);
-          }
-
-          if (errorMessage == null) {
-            errorMessage = unexpectedMessage;
-          }
-
-          throw new APIException(errorMessage, responseJSON);
-        } catch (APIException exception) {
-          requestCallback.onFailure(exception); // do not re-wrap if APIException thrown
-        } catch (Exception exception) {
-          requestCallback.onFailure(new APIException(exception, null));
-        }
-      }
+  public static void enroll(String enrollmentIdentifier, JSONObject payload, @Nullable Deadline deadline, final APICallback<EnrollmentResponse> callback) {
+    requireClient().enroll(enrollmentIdentifier, payload, deadline, callback);
+  }
 
-      @Override
-      public void onFailure(Call call, IOException e) {
-        requestCallback.onFailure(new APIException(e, null));
-      }
-    });
+  public static void enroll(String enrollmentIdentifier, RequestBody customRequest, @Nullable Deadline deadline, final APICallback<EnrollmentResponse> callback) {
+    requireClient().enroll(enrollmentIdentifier, customRequest, deadline, callback);
+  }
+
+  public static void enroll(
+    String enrollmentIdentifier, RequestBody customRequest, @Nullable Deadline deadline,
+    @Nullable CallGroup calls, final APICallback<EnrollmentResponse> callback
+  ) {
+    requireClient().enroll(enrollmentIdentifier, customRequest, deadline, calls, callback);
+  }
+
+  private static FaceVerificationClient requireClient() {
+    FaceVerificationClient client = _client;
+
+    if (client == null) {
+      throw new IllegalStateException("FaceVerification client isn't registered");
+    }
+
+    return client;
   }
 }
@@ -0,0 +1,484 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import androidx.annotation.Nullable;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.MediaType;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okio.ByteString;
+
+import org.json.JSONObject;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import org.gooddollar.facetec.api.FaceVerification.APICallback;
+import org.gooddollar.facetec.api.FaceVerification.APIException;
+import org.gooddollar.facetec.api.FaceVerification.CancelledException;
+import org.gooddollar.facetec.api.FaceVerification.DeadlineExceededException;
+import org.gooddollar.facetec.api.FaceVerification.SessionTokenCallback;
+import org.gooddollar.facetec.api.FaceVerification.SessionTokenTTLCallback;
+
+/*
+ * GoodServer API client bound to the single server and user credentials
+ *
+ * Configuration is immutable, so the client could be safely used from the OkHttp worker
+ * threads while the app switches environment or token: it just creates the new client,
+ * the calls in flight are finishing with the old one. All the clients are sharing the
+ * same OkHttp instance (connection pool, dispatcher). Server capabilities and session
+ * tokens pool are kept per client, as they are per server / user
+ */
+public final class FaceVerificationClient {
+  // get & store global http client instance
+  private final static OkHttpClient http = NetworkingHelpers.getApiClient();
+  // request body encoders available on the client side, by Content-Encoding value
+  private static final Map<String, RequestCodec> codecs = new LinkedHashMap<>();
+
+  static {
+    registerCodec(RequestCodec.GZIP);
+  }
+
+  private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+  private static final String unexpectedMessage = FaceVerification.unexpectedMessage;
+
+  private final String serverURL;
+  private final String jwtAccessToken;
+  // JWT "exp" claim (wall clock millis), -1 if unknown
+  private final long accessTokenExpiresAt;
+  // features advertised by the server along with the session token
+  private volatile ServerCapabilities capabilities;
+  private final SessionTokenPool sessionTokenPool = new SessionTokenPool(this);
+
+  public FaceVerificationClient(String serverURL, String jwtAccessToken) {
+    this(serverURL, jwtAccessToken, ServerCapabilities.NONE);
+  }
+
+  private FaceVerificationClient(String serverURL, String jwtAccessToken, ServerCapabilities capabilities) {
+    this.serverURL = serverURL;
+    this.jwtAccessToken = jwtAccessToken;
+    this.capabilities = capabilities;
+    accessTokenExpiresAt = AccessToken.expiresAt(jwtAccessToken);
+  }
+
+  // returns client for the same server with the another token. capabilities negotiated are kept
+  // session tokens pool isn't, as tokens were issued to the previous user
+  public FaceVerificationClient withAccessToken(String accessToken) {
+    if (jwtAccessToken.equals(accessToken)) {
+      return this;
+    }
+
+    return new FaceVerificationClient(serverURL, accessToken, capabilities);
+  }
+
+  // adds (or replaces) request body codec. it's used only if server supports its encoding
+  public static void registerCodec(RequestCodec codec) {
+    synchronized (codecs) {
+      codecs.put(codec.encoding(), codec);
+    }
+  }
+
+  public String getServerURL() {
+    return serverURL;
+  }
+
+  public ServerCapabilities getCapabilities() {
+    return capabilities;
+  }
+
+  String getAccessToken() {
+    return jwtAccessToken;
+  }
+
+  public long getAccessTokenExpiresAt() {
+    return accessTokenExpiresAt;
+  }
+
+  // checks if JWT will be still accepted by the server after the time given
+  // (e.g. remaining session budget). true if token has no expiry
+  public boolean isAccessTokenValidFor(long duration, TimeUnit unit) {
+    return AccessToken.isValidFor(accessTokenExpiresAt, unit.toMillis(duration));
+  }
+
+  public SessionTokenPool getSessionTokenPool() {
+    return sessionTokenPool;
+  }
+
+  // establishes connection to the server (DNS, TCP, TLS) ahead of time, so it will be
+  // taken from the pool by the API calls. response doesn't matter, errors are ignored
+  public void preconnect() {
+    probe(null);
+  }
+
+  // pings the server, round trip time is recorded to the network quality estimate
+  // onComplete (if set) is called once ping completed or failed
+  public void probe(@Nullable final Runnable onComplete) {
+    Request pingRequest = new Request.Builder().url(serverURL + "/").head().build();
+
+    http.newCall(pingRequest).enqueue(new Callback() {
+      @Override
+      public void onResponse(Call call, Response response) {
+        response.close();
+
+        if (onComplete != null) {
+          onComplete.run();
+        }
+      }
+
+      @Override
+      public void onFailure(Call call, IOException e) {
+        if (onComplete != null) {
+          onComplete.run();
+        }
+      }
+    });
+  }
+
+  // opens FV session and returns sessionToken
+  public void getSessionToken(final SessionTokenCallback callback) {
+    getSessionToken(null, callback);
+  }
+
+  public void getSessionToken(@Nullable Deadline deadline, final SessionTokenCallback callback) {
+    getSessionToken(deadline, new SessionTokenTTLCallback() {
+      @Override
+      public void onSessionTokenReceived(String sessionToken, long ttl) {
+        callback.onSessionTokenReceived(sessionToken);
+      }
+
+      @Override
+      public void onFailure(APIException exception) {
+        callback.onFailure(exception);
+      }
+    });
+  }
+
+  void getSessionToken(@Nullable Deadline deadline, final SessionTokenTTLCallback callback) {
+    // build request POST <goodserver>/verify/face/session with empty body 
+    Request tokenRequest = createRequest("/verify/face/session", "post", new JSONObject());
+
+    // send it
+    sendRequest(tokenRequest, deadline, SessionTokenResponse.ADAPTER, new APICallback<SessionTokenResponse>() {
+      @Override
+      public void onSuccess(SessionTokenResponse response) {
+        String sessionToken = response.getSessionToken();
+
+        if (sessionToken == null) {
+          // fail if no token prop in response
+          callback.onFailure(new APIException("FaceTec API response is empty", response));
+          return;
+        }
+
+        // store features server supports (if advertised)
+        capabilities = response.getCapabilities();
+        // read token lifetime (in seconds) if server has returned it
+        long ttl = response.getExpiresIn() > 0 ? TimeUnit.SECONDS.toMillis(response.getExpiresIn()) : -1;
+
+        // otherwise call onSessionTokenReceived callback with token
+        callback.onSessionTokenReceived(sessionToken, ttl);
+      }
+
+      @Override
+      public void onFailure(APIException exception) {
+        callback.onFailure(exception);
+      }
+    });
+  }
+
+  // checks if identifier is already enrolled (or known as duplicate) before capturing
+  // servers which don't support it (see enrollmentStatus capability) are answering 404 / 405
+  public void getEnrollmentStatus(
+    String enrollmentIdentifier, @Nullable Deadline deadline,
+    @Nullable CallGroup calls, final APICallback<EnrollmentStatusResponse> callback
+  ) {
+    // build request GET <goodserver>/verify/face/<enrollment id>/status
+    Request statusRequest = createRequest("/verify/face/" + enrollmentIdentifier + "/status", "get", (RequestBody) null)
+      .newBuilder()
+      .tag(CallGroup.class, calls)
+      .build();
+
+    sendRequest(statusRequest, deadline, EnrollmentStatusResponse.ADAPTER, callback);
+  }
+
+  // different enroll() overloads to support send plain object or RequestBody instance and covering optional params
+  public void enroll(String enrollmentIdentifier, JSONObject payload, final APICallback<EnrollmentResponse> callback) {
+    enroll(enrollmentIdentifier, FaceVerification.jsonStringify(payload), null, callback);
+  }
+
+  public void enroll(String enrollmentIdentifier, RequestBody customRequest, final APICallback<EnrollmentResponse> callback) {
+    enroll(enrollmentIdentifier, customRequest, null, callback);
+  }
+
+  public void enroll(String enrollmentIdentifier, JSONObject payload, @Nullable Deadline deadline, final APICallback<EnrollmentResponse> callback) {
+    enroll(enrollmentIdentifier, FaceVerification.jsonStringify(payload), deadline, null, callback);
+  }
+
+  public void enroll(String enrollmentIdentifier, RequestBody customRequest, @Nullable Deadline deadline, final APICallback<EnrollmentResponse> callback) {
+    enroll(enrollmentIdentifier, customRequest, deadline, null, callback);
+  }
+
+  // full enroll() implementation. calls group (if set) allows to abort upload once session cancelled
+  public void enroll(
+    String enrollmentIdentifier, RequestBody customRequest, @Nullable Deadline deadline,
+    @Nullable CallGroup calls, final APICallback<EnrollmentResponse> callback
+  ) {
+    // build request PUT <goodserver>/verify/face/<enrollment id> { faceScan, auditTrailImage, lowQualityAuditTrailImage, sessionId, fvSigner }
+    // payload is compressed if server has negotiated some encoding
+    Request enrollmentRequest = createRequest("/verify/face/" + enrollmentIdentifier, "put", encodeBody(customRequest))
+      .newBuilder()
+      // the same key is sent with each retry, so server could deduplicate re-sent enrollment
+      .header("Idempotency-Key", UUID.randomUUID().toString())
+      .tag(CallGroup.class, calls)
+      .build();
+
+    // send it, pass callback object with onSuccess/onFailure
+    sendRequest(enrollmentRequest, deadline, EnrollmentResponse.ADAPTER, callback);
+  }
+
+  // wraps body with the first codec (in server's preference order) both sides support
+  private RequestBody encodeBody(RequestBody body) {
+    MediaType contentType = body.contentType();
+
+    // binary multipart payload couldn't be compressed noticeably, so it's sent as is
+    if ((contentType != null) && "multipart".equals(contentType.type())) {
+      return body;
+    }
+
+    for (String encoding : capabilities.getRequestEncodings()) {
+      RequestCodec codec;
+
+      synchronized (codecs) {
+        codec = codecs.get(encoding);
+      }
+
+      if (codec != null) {
+        return new EncodedRequestBody(body, codec);
+      }
+    }
+
+    return body;
+  }
+
+  // uploads payload in chunks (if server supports it), resuming after interruptions
+  // progress listener receives the whole payload progress aggregated from all chunks
+  // payload is serialized once on the calling thread, chunks are sliced from that snapshot
+  public void enrollInChunks(
+    String enrollmentIdentifier, RequestBody payload, ProgressRequestBody.Listener progressListener,
+    @Nullable Deadline deadline, @Nullable CallGroup calls, final APICallback<EnrollmentResponse> callback
+  ) {
+    ByteString snapshot;
+
+    try {
+      snapshot = ChunkedUpload.snapshot(payload);
+    } catch (IOException exception) {
+      callback.onFailure(new APIException(exception, null));
+      return;
+    }
+
+    new ChunkedUpload(
+      this, enrollmentIdentifier, snapshot, payload.contentType(), (int) capabilities.getChunkSize(),
+      deadline, calls, progressListener, callback
+    ).start();
+  }
+
+  // request factory helper
+  Request createRequest(String url, @Nullable String method, @Nullable RequestBody body) {
+    Request.Builder request = new Request.Builder()
+      .url(serverURL + url) // combine url, set headers
+      .header("Content-Type", "application/json")
+      .header("Authorization", "Bearer " + jwtAccessToken);
+
+    if (body instanceof EncodedRequestBody) {
+      request.header("Content-Encoding", ((EncodedRequestBody) body).encoding());
+    }
+
+    // set method
+    switch (method) {
+      case "post":
+        request.post(body);
+        break;
+      case "put":
+        request.put(body);
+        break;
+      case "get":
+        request.get();
+        break;
+    }
+
+    // build & return
+    return request.build();
+  }
+
+  // send request overloads for different methods & body types
+  Request createRequest(String url, String method, JSONObject body) {
+    RequestBody requestBody = FaceVerification.jsonStringify(body);
+
+    return createRequest(url, method, requestBody);
+  }
+
+  <T extends APIResponse> void sendRequest(
+    Request request, @Nullable Deadline deadline, TypeAdapter<T> responseAdapter, final APICallback<T> requestCallback
+  ) {
+    // each request (but not retry attempt) refills retry budget
+    RetryPolicy.onRequest();
+    sendRequest(request, deadline, 0, responseAdapter, requestCallback);
+  }
+
+  // full send request implenetations
+  private <T extends APIResponse> void sendRequest(
+    final Request request, @Nullable final Deadline deadline, final int attempt,
+    final TypeAdapter<T> responseAdapter, final APICallback<T> requestCallback
+  ) {
+    // fail fast if there's no time left for the call
+    if ((deadline != null) && deadline.isExpired()) {
+      requestCallback.onFailure(new DeadlineExceededException());
+      return;
+    }
+
+    // session's calls group, retries and fallback requests are keeping the same tag
+    final CallGroup calls = request.tag(CallGroup.class);
+    // all calls are made via the global http client instance
+    final Call call = http.newCall(request);
+
+    // session has been cancelled - do not start the call
+    if ((calls != null) && !calls.add(call)) {
+      requestCallback.onFailure(new CancelledException());
+      return;
+    }
+
+    if (deadline != null) { // if deadline been set - limit the whole call with the remaining budget
+      call.timeout().timeout(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+    }
+
+    // send request
+    call.enqueue(new Callback() {
+      // response/error handling the same as in the web (as we interact with the same GoodServer)
+      // the same props are read & checked, the same cases processed
+      @Override
+      public void onResponse(Call call, Response response) throws IOException {
+        RequestBody requestBody = request.body();
+
+        if (calls != null) {
+          calls.remove(call);
+        }
+
+        // server refused the encoding - disable it and re-send the same payload as is
+        if ((response.code() == HTTP_UNSUPPORTED_MEDIA_TYPE) && (requestBody instanceof EncodedRequestBody)) {
+          EncodedRequestBody encodedBody = (EncodedRequestBody) requestBody;
+          Request plainRequest = request.newBuilder()
+            .removeHeader("Content-Encoding")
+            .method(request.method(), encodedBody.getSource())
+            .build();
+
+          response.close();
+          capabilities = capabilities.withoutRequestEncoding(encodedBody.encoding());
+          sendRequest(plainRequest, deadline, attempt, responseAdapter, requestCallback);
+          return;
+        }
+
+        // gateway / unavailable responses are transient, retry if policy allows
+        if (RetryPolicy.isRetryableStatus(response.code())
+          && scheduleRetry(request, deadline, attempt, response, responseAdapter, requestCallback)) {
+          response.close();
+          return;
+        }
+
+        T responseData;
+
+        // parse typed response right from the body stream
+        try {
+          JsonReader reader = new JsonReader(response.body().charStream());
+
+          responseData = responseAdapter.read(reader);
+        } catch (Exception exception) {
+          requestCallback.onFailure(wrapException(exception, deadline));
+          return;
+        } finally {
+          response.close();
+        }
+
+        // if (!('success' in response.data))
+        if (!responseData.hasSuccess()) {
+          requestCallback.onFailure(new APIException(unexpectedMessage, responseData));
+          return;
+        }
+
+        // if (response.data.success)
+        if (responseData.isSuccess()) {
+          requestCallback.onSuccess(responseData);
+          return;
+        }
+
+        // if (response.data.error)
+        String errorMessage = responseData.getError();
+
+        if (errorMessage == null) {
+          errorMessage = unexpectedMessage;
+        }
+
+        requestCallback.onFailure(new APIException(errorMessage, responseData));
+      }
+
+      @Override
+      public void onFailure(Call call, IOException e) {
+        if (calls != null) {
+          calls.remove(call);
+        }
+
+        // aborted by the session cancel - no retries
+        if ((calls != null) && calls.isCancelled()) {
+          requestCallback.onFailure(new CancelledException());
+          return;
+        }
+
+        // retry transient network errors, but not the cancelled or timed out by deadline calls
+        boolean isRetryable = !call.isCanceled() && RetryPolicy.isTransient(e)
+          && ((deadline == null) || !deadline.isExpired());
+
+        if (isRetryable && scheduleRetry(request, deadline, attempt, null, responseAdapter, requestCallback)) {
+          return;
+        }
+
+        requestCallback.onFailure(wrapException(e, deadline));
+      }
+    });
+  }
+
+  // schedules the next attempt with the backoff delay. returns false if retry isn't allowed
+  private <T extends APIResponse> boolean scheduleRetry(
+    final Request request, @Nullable final Deadline deadline, final int attempt, @Nullable Response response,
+    final TypeAdapter<T> responseAdapter, final APICallback<T> requestCallback
+  ) {
+    long delay = RetryPolicy.DEFAULT.nextDelay(attempt, response, deadline);
+
+    if (delay < 0) {
+      return false;
+    }
+
+    NetworkingHelpers.getScheduler().schedule(new Runnable() {
+      @Override
+      public void run() {
+        sendRequest(request, deadline, attempt + 1, responseAdapter, requestCallback);
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+
+    return true;
+  }
+
+  // wraps network exception, distinguishing the ones caused by the session deadline
+  private static APIException wrapException(Exception exception, @Nullable Deadline deadline) {
+    if ((deadline != null) && deadline.isExpired()) {
+      return new DeadlineExceededException(exception);
+    }
+
+    return new APIException(exception, null);
+  }
+}
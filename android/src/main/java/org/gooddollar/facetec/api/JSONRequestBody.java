@@ -0,0 +1,232 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/*
+ * JSON object request body which streams its fields straight into the request sink
+ *
+ * Unlike JSONObject + jsonStringify() it never builds the serialized payload as a String,
+ * so the multi-megabyte base64 values (face scan, audit trail images) are kept in memory
+ * only once - as the strings received from the FaceTec SDK. Also it doesn't escape '/'
+ * the way org.json does, so base64 values are written as is, without any inflation.
+ *
+ * Supports flat objects with string, number, boolean and null values - that's all
+ * GoodServer API payloads contain. Could be written more than once (e.g. on retry).
+ */
+public class JSONRequestBody extends RequestBody {
+  public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+  private static final String HEX_DIGITS = "0123456789abcdef";
+  // okio segment size. buffered sink emits the complete segments after each write, so writing
+  // the value in slices lets them be recycled instead of buffering the whole value first
+  private static final int sliceLength = 8192;
+
+  // keeps insertion order, the same as JSONObject.toString() output does for the web payload
+  private final Map<String, Object> fields = new LinkedHashMap<>();
+  private long contentLength = -1;
+
+  // JSONObject-like put() to make call sites look the same as before
+  public JSONRequestBody put(String name, @Nullable Object value) {
+    if ((value != null) && !(value instanceof String) && !(value instanceof Number) && !(value instanceof Boolean)) {
+      throw new IllegalArgumentException("Unsupported JSON value type: " + value.getClass().getName());
+    }
+
+    if (value instanceof Number) {
+      double number = ((Number) value).doubleValue();
+
+      if (Double.isInfinite(number) || Double.isNaN(number)) {
+        throw new IllegalArgumentException("JSON does not allow non-finite numbers");
+      }
+    }
+
+    fields.put(name, value);
+    contentLength = -1; // reset cached length
+    return this;
+  }
+
+  public boolean has(String name) {
+    return fields.containsKey(name);
+  }
+
+  @Nullable
+  public Object opt(String name) {
+    return fields.get(name);
+  }
+
+  @Override
+  public MediaType contentType() {
+    return JSON;
+  }
+
+  // calculated without serializing the payload, so progress listener gets exact total
+  @Override
+  public long contentLength() {
+    if (contentLength < 0) {
+      long length = 2; // {}
+      boolean isFirst = true;
+
+      for (Map.Entry<String, Object> field : fields.entrySet()) {
+        if (!isFirst) {
+          length += 1; // ,
+        }
+
+        length += stringLength(field.getKey()) + 1; // "name":
+        length += valueLength(field.getValue());
+        isFirst = false;
+      }
+
+      contentLength = length;
+    }
+
+    return contentLength;
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    boolean isFirst = true;
+
+    sink.writeByte('{');
+
+    for (Map.Entry<String, Object> field : fields.entrySet()) {
+      if (!isFirst) {
+        sink.writeByte(',');
+      }
+
+      writeString(sink, field.getKey());
+      sink.writeByte(':');
+      writeValue(sink, field.getValue());
+      isFirst = false;
+    }
+
+    sink.writeByte('}');
+  }
+
+  private static void writeValue(BufferedSink sink, @Nullable Object value) throws IOException {
+    if (value instanceof String) {
+      writeString(sink, (String) value);
+      return;
+    }
+
+    // null, numbers and booleans are written as is
+    sink.writeUtf8(String.valueOf(value));
+  }
+
+  private static long valueLength(@Nullable Object value) {
+    if (value instanceof String) {
+      return stringLength((String) value);
+    }
+
+    return String.valueOf(value).length(); // ASCII only
+  }
+
+  // writes quoted & escaped string. unescaped ranges are passed to the sink directly,
+  // so for base64 strings the value is encoded to UTF-8 right into the sink segments
+  private static void writeString(BufferedSink sink, String value) throws IOException {
+    int length = value.length();
+    int rangeStart = 0;
+
+    sink.writeByte('"');
+
+    for (int index = 0; index < length; index++) {
+      char character = value.charAt(index);
+      String replacement = escape(character);
+
+      if (replacement == null) {
+        continue;
+      }
+
+      if (rangeStart < index) {
+        writeRange(sink, value, rangeStart, index);
+      }
+
+      sink.writeUtf8(replacement);
+      rangeStart = index + 1;
+    }
+
+    if (rangeStart < length) {
+      writeRange(sink, value, rangeStart, length);
+    }
+
+    sink.writeByte('"');
+  }
+
+  // writes unescaped range in slices, surrogate pairs aren't split between them
+  private static void writeRange(BufferedSink sink, String value, int start, int end) throws IOException {
+    int sliceStart = start;
+
+    while (sliceStart < end) {
+      int sliceEnd = Math.min(end, sliceStart + sliceLength);
+
+      if ((sliceEnd < end) && Character.isHighSurrogate(value.charAt(sliceEnd - 1))) {
+        sliceEnd -= 1;
+      }
+
+      sink.writeUtf8(value, sliceStart, sliceEnd);
+      sliceStart = sliceEnd;
+    }
+  }
+
+  // returns the number of bytes writeString() will write for the value given
+  private static long stringLength(String value) {
+    int length = value.length();
+    long size = 2; // quotes
+
+    for (int index = 0; index < length; index++) {
+      char character = value.charAt(index);
+      String replacement = escape(character);
+
+      if (replacement != null) {
+        size += replacement.length();
+      } else if (character < 0x80) {
+        size += 1;
+      } else if (character < 0x800) {
+        size += 2;
+      } else if (Character.isHighSurrogate(character) && (index + 1 < length)
+        && Character.isLowSurrogate(value.charAt(index + 1))) {
+        size += 4; // surrogate pair is encoded as a single 4-byte code point
+        index++;
+      } else if (Character.isSurrogate(character)) {
+        size += 1; // okio replaces malformed surrogates with '?'
+      } else {
+        size += 3;
+      }
+    }
+
+    return size;
+  }
+
+  // JSON escape sequence for the character or null if it could be written as is
+  @Nullable
+  private static String escape(char character) {
+    switch (character) {
+      case '"':
+        return "\\\"";
+      case '\\':
+        return "\\\\";
+      case '\n':
+        return "\\n";
+      case '\r':
+        return "\\r";
+      case '\t':
+        return "\\t";
+      case '\b':
+        return "\\b";
+      case '\f':
+        return "\\f";
+    }
+
+    if (character < 0x20) { // other control characters
+      return "\\u" + HEX_DIGITS.charAt((character >> 12) & 0xf) + HEX_DIGITS.charAt((character >> 8) & 0xf)
+        + HEX_DIGITS.charAt((character >> 4) & 0xf) + HEX_DIGITS.charAt(character & 0xf);
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,206 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Sink;
+
+/*
+ * Network quality estimator
+ *
+ * Fed by the upload throughput measured on the API calls sending large bodies and by the
+ * round trip time measured on the HEAD pings (preconnect, keep-warm, probe). Both values
+ * are exponentially weighted, so the estimate follows link changes. Estimate expires if
+ * there were no samples for a while (e.g. device has switched from Wi-Fi to cellular)
+ */
+public final class NetworkQuality {
+  private NetworkQuality() {}
+
+  public enum Quality {
+    UNKNOWN("unknown"),
+    POOR("poor"),
+    MODERATE("moderate"),
+    GOOD("good");
+
+    private final String qualityName;
+
+    Quality(String qualityName) {
+      this.qualityName = qualityName;
+    }
+
+    public String qualityName() {
+      return qualityName;
+    }
+  }
+
+  // smaller bodies fit into the socket send buffer, so writes aren't blocked by the network
+  static final long minSampleBytes = 256 * 1024;
+
+  private static final double poorThroughput = 32 * 1024; // bytes per second
+  private static final double goodThroughput = 128 * 1024;
+  private static final double poorRoundTrip = 1500; // millis
+  private static final double goodRoundTrip = 500;
+  private static final long maxSampleAge = TimeUnit.MINUTES.toNanos(5);
+  // weight of the latest sample
+  private static final double smoothing = 0.3;
+
+  private static double bytesPerSecond = -1;
+  private static long throughputSampledAt = 0;
+  private static double roundTrip = -1;
+  private static long roundTripSampledAt = 0;
+
+  // current estimate. throughput is in bytes per second, round trip time is in millis, -1 if unknown
+  public static final class Estimate {
+    public final Quality quality;
+    public final long bytesPerSecond;
+    public final long roundTripTime;
+
+    Estimate(long bytesPerSecond, long roundTripTime) {
+      this.bytesPerSecond = bytesPerSecond;
+      this.roundTripTime = roundTripTime;
+      this.quality = classify(bytesPerSecond, roundTripTime);
+    }
+  }
+
+  // network interceptor measuring throughput of the request bodies. only the time spent
+  // in the socket writes is counted, the time body spends on the serialization / encoding
+  // (base64 decoding, gzip) between the writes is excluded
+  public static final Interceptor INTERCEPTOR = new Interceptor() {
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+      Request request = chain.request();
+      RequestBody body = request.body();
+
+      if (body == null) {
+        return chain.proceed(request);
+      }
+
+      return chain.proceed(request.newBuilder().method(request.method(), new TimedRequestBody(body)).build());
+    }
+  };
+
+  static synchronized void recordUpload(long bytes, long elapsedNanos) {
+    if ((bytes < minSampleBytes) || (elapsedNanos <= 0)) {
+      return;
+    }
+
+    double rate = bytes * 1e9 / elapsedNanos;
+    long now = System.nanoTime();
+
+    bytesPerSecond = isFresh(throughputSampledAt, now) ? smoothing * rate + (1 - smoothing) * bytesPerSecond : rate;
+    throughputSampledAt = now;
+  }
+
+  static synchronized void recordRoundTrip(long elapsedNanos) {
+    double millis = elapsedNanos / 1e6;
+    long now = System.nanoTime();
+
+    roundTrip = isFresh(roundTripSampledAt, now) ? smoothing * millis + (1 - smoothing) * roundTrip : millis;
+    roundTripSampledAt = now;
+  }
+
+  public static synchronized Estimate estimate() {
+    long now = System.nanoTime();
+
+    return new Estimate(
+      isFresh(throughputSampledAt, now) ? (long) bytesPerSecond : -1,
+      isFresh(roundTripSampledAt, now) ? (long) roundTrip : -1
+    );
+  }
+
+  // measured throughput is preferred, round trip time is used if no uploads were made recently
+  private static Quality classify(long bytesPerSecond, long roundTripTime) {
+    if (bytesPerSecond >= 0) {
+      return bytesPerSecond < poorThroughput ? Quality.POOR
+        : bytesPerSecond < goodThroughput ? Quality.MODERATE : Quality.GOOD;
+    }
+
+    if (roundTripTime >= 0) {
+      return roundTripTime > poorRoundTrip ? Quality.POOR
+        : roundTripTime > goodRoundTrip ? Quality.MODERATE : Quality.GOOD;
+    }
+
+    return Quality.UNKNOWN;
+  }
+
+  private static boolean isFresh(long sampledAt, long now) {
+    return (sampledAt != 0) && (now - sampledAt < maxSampleAge);
+  }
+
+  private static final class TimedRequestBody extends RequestBody {
+    private final RequestBody body;
+
+    TimedRequestBody(RequestBody body) {
+      this.body = body;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return body.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return body.contentLength();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+      TimingSink timingSink = new TimingSink(sink);
+      BufferedSink bufferedSink = Okio.buffer(timingSink);
+
+      body.writeTo(bufferedSink);
+
+      // encoded bodies are closing the sink to write the trailer
+      if (bufferedSink.isOpen()) {
+        bufferedSink.emit();
+      }
+
+      recordUpload(timingSink.bytesWritten, timingSink.elapsedNanos);
+    }
+  }
+
+  // sums the time spent in the writes to the network sink
+  private static final class TimingSink extends ForwardingSink {
+    long bytesWritten = 0;
+    long elapsedNanos = 0;
+
+    TimingSink(Sink sink) {
+      super(sink);
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+      long startedAt = System.nanoTime();
+
+      super.write(source, byteCount);
+      elapsedNanos += System.nanoTime() - startedAt;
+      bytesWritten += byteCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      long startedAt = System.nanoTime();
+
+      super.flush();
+      elapsedNanos += System.nanoTime() - startedAt;
+    }
+
+    @Override
+    public void close() throws IOException {
+      long startedAt = System.nanoTime();
+
+      super.close();
+      elapsedNanos += System.nanoTime() - startedAt;
+    }
+  }
+}
@@ -1,5 +1,8 @@
 package org.gooddollar.facetec.api;
 
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.Build;
 import androidx.annotation.Nullable;
 import androidx.annotation.NonNull;
@@ -9,8 +12,12 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import okhttp3.Call;
 import okhttp3.MediaType;
@@ -21,6 +28,9 @@ import okio.Okio;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
 
 /**
  * Ships with the FaceTect Android app demo
@@ -32,14 +42,19 @@ public class NetworkingHelpers {
     private static OkHttpClient _apiClient = null;
     private static OkHttpClient createApiClient() {
         OkHttpClient client = null;
-        OkHttpClient.Builder builder = setTimeouts(new OkHttpClient.Builder(), 60, TimeUnit.SECONDS);
+        OkHttpClient.Builder builder = setTimeouts(new OkHttpClient.Builder(), 60, TimeUnit.SECONDS)
+            .eventListenerFactory(ConnectionStats.FACTORY) // collects connection reuse stats
+            .addNetworkInterceptor(NetworkQuality.INTERCEPTOR); // measures upload throughput
 
         // Enabling support for TLSv1.1 and TLSv1.2 on Android 4.4 and below.
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
             try {
-                client = builder.sslSocketFactory(new TLSSocketFactory()).build();
+                // trust manager is passed explicitly, okhttp couldn't extract it from the custom factory
+                client = builder.sslSocketFactory(new TLSSocketFactory(), getDefaultTrustManager()).build();
             } catch (KeyManagementException e) {
                 e.printStackTrace();
+            } catch (KeyStoreException e) {
+                e.printStackTrace();
             } catch (NoSuchAlgorithmException e) {
                 e.printStackTrace();
             }
@@ -52,11 +67,25 @@ public class NetworkingHelpers {
         return client;
     }
 
+    // the same system trust manager TLSSocketFactory's SSL context is initialized with
+    private static X509TrustManager getDefaultTrustManager() throws KeyStoreException, NoSuchAlgorithmException {
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+
+        factory.init((KeyStore) null);
+
+        for (TrustManager trustManager : factory.getTrustManagers()) {
+            if (trustManager instanceof X509TrustManager) {
+                return (X509TrustManager) trustManager;
+            }
+        }
+
+        throw new NoSuchAlgorithmException("No default X509 trust manager");
+    }
+
     public static OkHttpClient.Builder setTimeouts(OkHttpClient.Builder builder, int timeout, TimeUnit unit) {
         return builder.connectTimeout(timeout, unit).readTimeout(timeout, unit).writeTimeout(timeout, unit).callTimeout(timeout, unit);
     }
 
-    public static String OK_HTTP_BUILDER_TAG = "APIRequest";
     public static String OK_HTTP_RESPONSE_CANCELED = "Canceled";
 
     public static synchronized OkHttpClient getApiClient() {
@@ -67,20 +96,57 @@ public class NetworkingHelpers {
         return _apiClient;
     }
 
+    private static ScheduledExecutorService _scheduler = null;
+
+    /*
+     * Single daemon thread scheduler for the delayed networking tasks (retries, pings)
+     */
+    public static synchronized ScheduledExecutorService getScheduler() {
+        if (_scheduler == null) {
+            _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "FaceTec-Networking");
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return _scheduler;
+    }
+
+    /*
+     * Checks is there some network connected. Assumes online if state couldn't be checked
+     */
+    public static boolean isOnline(Context context) {
+        ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        if (manager == null) {
+            return true;
+        }
+
+        NetworkInfo network = manager.getActiveNetworkInfo();
+
+        return (network != null) && network.isConnected();
+    }
+
     /*
-     * Cancels all in flight requests.
+     * Cancels all in flight requests made by the verification sessions.
+     * To cancel the particular session's requests use its CallGroup
      */
     static public void cancelPendingRequests() {
         OkHttpClient client = getApiClient();
 
         // Cancel all queued calls
         for (Call call : client.dispatcher().queuedCalls()) {
-            if(Objects.equals(call.request().tag(), OK_HTTP_BUILDER_TAG))
+            if (call.request().tag(CallGroup.class) != null)
                 call.cancel();
         }
         // Cancel all running calls
         for (Call call : client.dispatcher().runningCalls()) {
-            if (Objects.equals(call.request().tag(), OK_HTTP_BUILDER_TAG))
+            if (call.request().tag(CallGroup.class) != null)
                 call.cancel();
         }
     }
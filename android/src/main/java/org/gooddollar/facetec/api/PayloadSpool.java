@@ -0,0 +1,435 @@
+package org.gooddollar.facetec.api;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Source;
+
+import org.json.JSONObject;
+
+/*
+ * App-private storage of the deferred enrollment payloads
+ *
+ * Only the enrollments which couldn't be uploaded during the session are spooled,
+ * online sessions are sending the payload from memory. Payload is encrypted with the random
+ * per-entry key in segments (see SegmentedCipher), so the face scan never hits the disk
+ * unencrypted and it's decrypted streaming while being uploaded. Entry key is kept in the
+ * metadata encrypted (wrapped) with AES-GCM key kept in the Android Keystore, so keystore
+ * handles just a few small buffers per entry instead of the whole payload.
+ * Entry keeps the server URL and the (encrypted) JWT the session was made with and
+ * expires at the time given. Total size is limited with <maxSpoolBytes> (the oldest
+ * entries are evicted).
+ *
+ * Metadata is written once the payload has been spooled completely, entries without it
+ * (or without "deferred" flag, e.g. left by the previous versions) are removed.
+ * Entries being spooled or uploaded are in flight: they're neither listed nor evicted.
+ *
+ * Keystore AES keys are available since Android 6, on the older ones payloads
+ * are not spooled and enrollment fails the same way as before if device is offline
+ */
+public final class PayloadSpool {
+  private PayloadSpool() {}
+
+  private static final String directoryName = "facetec-spool";
+  private static final String keyAlias = "org.gooddollar.facetec.spool";
+  private static final String keyStoreType = "AndroidKeyStore";
+  private static final String transformation = "AES/GCM/NoPadding";
+  private static final int tagLength = 128;
+
+  private static final String payloadExtension = ".bin";
+  private static final String metadataExtension = ".json";
+  private static final String temporaryExtension = ".tmp";
+
+  private static final long maxSpoolBytes = 16 * 1024 * 1024;
+
+  private static File directory = null;
+  // ids of the entries being spooled or uploaded
+  private static final Set<String> inFlight = new HashSet<>();
+
+  // spooled payload. metadata is kept in the separate JSON file
+  static final class Entry {
+    private final String id;
+    private final String enrollmentIdentifier;
+    private final String serverURL;
+    private final String accessToken;
+    private final byte[] payloadKey;
+    private final String contentType;
+    private final long size;
+    private final long createdAt;
+    private final long expiresAt;
+
+    private Entry(
+      String id, String enrollmentIdentifier, String serverURL, String accessToken, byte[] payloadKey,
+      String contentType, long size, long createdAt, long expiresAt
+    ) {
+      this.id = id;
+      this.enrollmentIdentifier = enrollmentIdentifier;
+      this.serverURL = serverURL;
+      this.accessToken = accessToken;
+      this.payloadKey = payloadKey;
+      this.contentType = contentType;
+      this.size = size;
+      this.createdAt = createdAt;
+      this.expiresAt = expiresAt;
+    }
+
+    String getEnrollmentIdentifier() {
+      return enrollmentIdentifier;
+    }
+
+    String getServerURL() {
+      return serverURL;
+    }
+
+    String getAccessToken() {
+      return accessToken;
+    }
+
+    // wall clock millis
+    long getExpiresAt() {
+      return expiresAt;
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+
+    // marks entry as in flight. false if it's already taken (or has been removed)
+    boolean acquire() {
+      synchronized (PayloadSpool.class) {
+        return metadataFile(id).exists() && inFlight.add(id);
+      }
+    }
+
+    // entry is kept in the spool and could be listed again
+    void release() {
+      synchronized (PayloadSpool.class) {
+        inFlight.remove(id);
+      }
+    }
+
+    // request body decrypting the payload while writing it to the connection. could be written many times
+    RequestBody body() {
+      return new RequestBody() {
+        @Override
+        public MediaType contentType() {
+          return MediaType.parse(contentType);
+        }
+
+        @Override
+        public long contentLength() {
+          return size;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+          Source source = SegmentedCipher.decrypt(payloadKey, Okio.source(payloadFile(id)));
+
+          try {
+            sink.writeAll(source);
+          } finally {
+            source.close();
+          }
+        }
+      };
+    }
+
+    void delete() {
+      synchronized (PayloadSpool.class) {
+        payloadFile(id).delete();
+        metadataFile(id).delete();
+        inFlight.remove(id);
+      }
+    }
+  }
+
+  // connects spool to the app storage. should be called before spool() / list()
+  public static synchronized void register(Context context) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      directory = new File(context.getApplicationContext().getNoBackupFilesDir(), directoryName);
+    }
+  }
+
+  public static boolean isSupported() {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+  }
+
+  // serializes and encrypts payload into the spool. returns null if spooling isn't supported or failed
+  @Nullable
+  static Entry spool(String enrollmentIdentifier, String serverURL, String accessToken, long expiresAt, RequestBody payload) {
+    MediaType contentType = payload.contentType();
+    String id = UUID.randomUUID().toString();
+    byte[] payloadKey = SegmentedCipher.generateKey();
+    File file;
+
+    synchronized (PayloadSpool.class) {
+      if ((directory == null) || (contentType == null) || (!directory.exists() && !directory.mkdirs())) {
+        return null;
+      }
+
+      file = payloadFile(id);
+      inFlight.add(id);
+    }
+
+    try {
+      long expectedSize = payload.contentLength();
+
+      // too large to be spooled at all
+      if (expectedSize > maxSpoolBytes) {
+        return null;
+      }
+
+      final long[] size = { 0 };
+      BufferedSink sink = Okio.buffer(new ForwardingSink(SegmentedCipher.encrypt(payloadKey, Okio.sink(file))) {
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+          super.write(source, byteCount);
+          size[0] += byteCount;
+        }
+      });
+
+      try {
+        payload.writeTo(sink);
+      } finally {
+        sink.close();
+      }
+
+      Entry entry = new Entry(
+        id, enrollmentIdentifier, serverURL, accessToken, payloadKey, contentType.toString(),
+        size[0], System.currentTimeMillis(), expiresAt
+      );
+
+      writeMetadata(entry);
+      prune();
+      return entry;
+    } catch (Exception exception) {
+      // no space left, keystore is unavailable etc - just not spooling
+      file.delete();
+      metadataFile(id).delete();
+      return null;
+    } finally {
+      synchronized (PayloadSpool.class) {
+        inFlight.remove(id);
+      }
+    }
+  }
+
+  // returns the entries which aren't in flight (the oldest first), including the expired ones
+  // removes broken entries and the files left by the interrupted spool() calls
+  static synchronized List<Entry> list() {
+    List<Entry> entries = new ArrayList<>();
+
+    if ((directory == null) || !directory.exists()) {
+      return entries;
+    }
+
+    File[] files = directory.listFiles();
+
+    if (files == null) {
+      return entries;
+    }
+
+    for (File file : files) {
+      String name = file.getName();
+      int extensionIndex = name.indexOf('.');
+      String id = extensionIndex < 0 ? name : name.substring(0, extensionIndex);
+
+      if (inFlight.contains(id)) {
+        continue;
+      }
+
+      // payload or temporary metadata without the committed metadata
+      if (!name.endsWith(metadataExtension)) {
+        if (!metadataFile(id).exists()) {
+          file.delete();
+        }
+
+        continue;
+      }
+
+      Entry entry = readMetadata(id);
+
+      // broken entry or the one spooled by the previous versions - remove it
+      if ((entry == null) || !payloadFile(id).exists()) {
+        payloadFile(id).delete();
+        file.delete();
+        continue;
+      }
+
+      entries.add(entry);
+    }
+
+    Collections.sort(entries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry left, Entry right) {
+        return Long.compare(left.createdAt, right.createdAt);
+      }
+    });
+
+    return entries;
+  }
+
+  // evicts the oldest entries (except the ones in flight) until total size fits the limit
+  private static synchronized void prune() {
+    List<Entry> entries = list();
+    long totalSize = 0;
+
+    for (Entry entry : entries) {
+      totalSize += payloadFile(entry.id).length();
+    }
+
+    for (Entry entry : entries) {
+      if (totalSize <= maxSpoolBytes) {
+        break;
+      }
+
+      totalSize -= payloadFile(entry.id).length();
+      entry.delete();
+    }
+  }
+
+  private static File payloadFile(String id) {
+    return new File(directory, id + payloadExtension);
+  }
+
+  private static File metadataFile(String id) {
+    return new File(directory, id + metadataExtension);
+  }
+
+  // written to the temporary file and renamed, so it's either complete or missing
+  private static void writeMetadata(Entry entry) throws Exception {
+    JSONObject metadata = new JSONObject();
+    File temporaryFile = new File(directory, entry.id + temporaryExtension);
+
+    metadata.put("enrollmentIdentifier", entry.enrollmentIdentifier);
+    metadata.put("serverURL", entry.serverURL);
+    metadata.put("accessToken", seal(entry.accessToken.getBytes("UTF-8")));
+    metadata.put("payloadKey", seal(entry.payloadKey));
+    metadata.put("contentType", entry.contentType);
+    metadata.put("size", entry.size);
+    metadata.put("createdAt", entry.createdAt);
+    metadata.put("expiresAt", entry.expiresAt);
+    metadata.put("deferred", true);
+
+    BufferedSink sink = Okio.buffer(Okio.sink(temporaryFile));
+
+    try {
+      sink.writeUtf8(metadata.toString());
+    } finally {
+      sink.close();
+    }
+
+    if (!temporaryFile.renameTo(metadataFile(entry.id))) {
+      temporaryFile.delete();
+      throw new IOException("Couldn't write spooled payload metadata");
+    }
+  }
+
+  @Nullable
+  private static Entry readMetadata(String id) {
+    try {
+      BufferedSource source = Okio.buffer(Okio.source(metadataFile(id)));
+      JSONObject metadata;
+
+      try {
+        metadata = new JSONObject(source.readUtf8());
+      } finally {
+        source.close();
+      }
+
+      if (!metadata.optBoolean("deferred")) {
+        return null;
+      }
+
+      return new Entry(
+        id, metadata.getString("enrollmentIdentifier"), metadata.getString("serverURL"),
+        new String(unseal(metadata.getString("accessToken")), "UTF-8"), unseal(metadata.getString("payloadKey")),
+        metadata.getString("contentType"),
+        metadata.getLong("size"), metadata.getLong("createdAt"), metadata.getLong("expiresAt")
+      );
+    } catch (Exception exception) {
+      return null;
+    }
+  }
+
+  // encrypts small secret (JWT, payload key) with the keystore key
+  // returns base64 of <iv length><iv><encrypted data with GCM tag>
+  @TargetApi(Build.VERSION_CODES.M)
+  private static String seal(byte[] data) throws IOException, GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance(transformation);
+
+    cipher.init(Cipher.ENCRYPT_MODE, getKey());
+
+    byte[] iv = cipher.getIV();
+    byte[] encrypted = cipher.doFinal(data);
+    byte[] sealed = new byte[1 + iv.length + encrypted.length];
+
+    sealed[0] = (byte) iv.length;
+    System.arraycopy(iv, 0, sealed, 1, iv.length);
+    System.arraycopy(encrypted, 0, sealed, 1 + iv.length, encrypted.length);
+    return Base64.encodeToString(sealed, Base64.NO_WRAP);
+  }
+
+  @TargetApi(Build.VERSION_CODES.M)
+  private static byte[] unseal(String data) throws IOException, GeneralSecurityException {
+    byte[] sealed = Base64.decode(data, Base64.NO_WRAP);
+    int ivLength = sealed.length > 0 ? sealed[0] : 0;
+
+    if ((ivLength <= 0) || (sealed.length <= 1 + ivLength)) {
+      throw new IOException("Sealed data is corrupted");
+    }
+
+    Cipher cipher = Cipher.getInstance(transformation);
+
+    cipher.init(Cipher.DECRYPT_MODE, getKey(), new GCMParameterSpec(tagLength, sealed, 1, ivLength));
+    return cipher.doFinal(sealed, 1 + ivLength, sealed.length - 1 - ivLength);
+  }
+
+  @TargetApi(Build.VERSION_CODES.M)
+  private static synchronized SecretKey getKey() throws IOException, GeneralSecurityException {
+    KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+
+    keyStore.load(null);
+
+    if (keyStore.containsAlias(keyAlias)) {
+      return (SecretKey) keyStore.getKey(keyAlias, null);
+    }
+
+    KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, keyStoreType);
+
+    generator.init(new KeyGenParameterSpec.Builder(keyAlias, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+      .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+      .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+      .setKeySize(256)
+      .build());
+
+    return generator.generateKey();
+  }
+}
@@ -0,0 +1,89 @@
+package org.gooddollar.facetec.api;
+
+/*
+ * Upload progress listener coalescing raw progress updates (received on each sink write)
+ *
+ * Update is passed to the delegate listener only if at least minInterval millis have passed
+ * or progress has changed for at least minDelta since the last one. Completion is always passed.
+ * Also estimates live throughput (exponentially weighted) and time left to complete upload.
+ * Thread-safe, so could be shared by the chunks uploaded in parallel
+ */
+public final class ProgressCoalescer implements ProgressRequestBody.Listener {
+  // throughput is sampled not more often than this, shorter periods are too noisy
+  private static final long sampleIntervalNanos = 100_000_000L;
+  // weight of the latest throughput sample
+  private static final double smoothing = 0.3;
+
+  private final long minIntervalNanos;
+  private final double minDelta;
+  private final Listener listener;
+
+  private long lastReportedAt = 0;
+  private double lastReportedProgress = -1;
+  private long sampledAt = 0;
+  private long sampledBytes = 0;
+  private double bytesPerSecond = -1;
+
+  public interface Listener {
+    // throughput is in bytes per second, eta is in millis. both are -1 if not estimated yet
+    void onUploadProgress(long bytesWritten, long totalBytes, long bytesPerSecond, long eta);
+  }
+
+  public ProgressCoalescer(long minIntervalMillis, double minDelta, Listener listener) {
+    this.minIntervalNanos = minIntervalMillis * 1_000_000L;
+    this.minDelta = minDelta;
+    this.listener = listener;
+  }
+
+  @Override
+  public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
+    long now = System.nanoTime();
+    double progress = totalBytes > 0 ? ((double) bytesWritten) / totalBytes : 0;
+    boolean isCompleted = bytesWritten == totalBytes;
+    long throughput;
+    long eta = -1;
+
+    synchronized (this) {
+      sample(now, bytesWritten);
+
+      boolean isDue = (lastReportedProgress < 0) || (now - lastReportedAt >= minIntervalNanos)
+        || (Math.abs(progress - lastReportedProgress) >= minDelta);
+
+      // skip repeated completion (e.g. on body re-write) as well as too frequent updates
+      if ((isCompleted && (lastReportedProgress == 1)) || (!isCompleted && !isDue)) {
+        return;
+      }
+
+      lastReportedAt = now;
+      lastReportedProgress = progress;
+      throughput = (long) bytesPerSecond;
+    }
+
+    if (throughput > 0) {
+      eta = (totalBytes - bytesWritten) * 1000 / throughput;
+    }
+
+    listener.onUploadProgress(bytesWritten, totalBytes, throughput, eta);
+  }
+
+  private void sample(long now, long bytesWritten) {
+    if (sampledAt == 0) {
+      sampledAt = now;
+      sampledBytes = bytesWritten;
+      return;
+    }
+
+    long elapsed = now - sampledAt;
+
+    if (elapsed < sampleIntervalNanos) {
+      return;
+    }
+
+    // progress could go back if upload restarted, rate is estimated by the bytes sent since
+    double rate = Math.max(0, bytesWritten - sampledBytes) * 1e9 / elapsed;
+
+    bytesPerSecond = bytesPerSecond < 0 ? rate : smoothing * rate + (1 - smoothing) * bytesPerSecond;
+    sampledAt = now;
+    sampledBytes = bytesWritten;
+  }
+}
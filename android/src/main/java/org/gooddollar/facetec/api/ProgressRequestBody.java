@@ -1,19 +1,19 @@
 package org.gooddollar.facetec.api;
 
-import androidx.annotation.NonNull;
 import java.io.IOException;
-import java.io.OutputStream;
 
-import okhttp3.Call;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
+import okio.Buffer;
 import okio.BufferedSink;
+import okio.ForwardingSink;
 import okio.Okio;
+import okio.Sink;
 
 /*
  * Implementation of RequestBody that allows upload progress to be retrieved
- * Ships with the FaceTect Android app demo, nothing been changed/customized
+ * Ships with the FaceTect Android app demo. Progress stream was replaced with
+ * the forwarding okio sink: segments are moved to the request sink, not copied
  */
 public class ProgressRequestBody extends RequestBody {
     private final RequestBody requestBody;
@@ -36,39 +36,27 @@ public class ProgressRequestBody extends RequestBody {
 
     @Override
     public void writeTo(BufferedSink sink) throws IOException {
-        ProgressStream progressStream = new ProgressStream(sink.outputStream(), contentLength());
-        BufferedSink progressSink = Okio.buffer(Okio.sink(progressStream));
+        BufferedSink progressSink = Okio.buffer(new ProgressSink(sink, contentLength()));
+
         requestBody.writeTo(progressSink);
-        progressSink.flush();
+        // do not close - request sink is owned by okhttp
+        progressSink.emit();
     }
 
-    protected final class ProgressStream extends OutputStream {
-        private final OutputStream stream;
-        private long totalBytes;
-        private long bytesSent;
+    protected final class ProgressSink extends ForwardingSink {
+        private final long totalBytes;
+        private long bytesSent = 0;
 
-        ProgressStream(OutputStream stream, long totalBytes) {
-            this.stream = stream;
+        ProgressSink(Sink delegate, long totalBytes) {
+            super(delegate);
             this.totalBytes = totalBytes;
         }
 
         @Override
-        public void write(@NonNull byte[] b, int off, int len) throws IOException {
-            this.stream.write(b, off, len);
-            if(len < b.length) {
-                this.bytesSent += len;
-            }
-            else {
-                this.bytesSent += b.length;
-            }
-            listener.onUploadProgressChanged(this.bytesSent, this.totalBytes);
-        }
-
-        @Override
-        public void write(int b) throws IOException {
-            this.stream.write(b);
-            this.bytesSent += 1;
-            listener.onUploadProgressChanged(this.bytesSent, this.totalBytes);
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            bytesSent += byteCount;
+            listener.onUploadProgressChanged(bytesSent, totalBytes);
         }
     }
 
@@ -0,0 +1,33 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+
+import okio.GzipSink;
+import okio.Sink;
+
+/*
+ * Request body content coding (Content-Encoding header value + encoder)
+ *
+ * Codecs are registered with FaceVerification.registerCodec() and are used
+ * only if GoodServer advertises the corresponding encoding in its capabilities
+ */
+public interface RequestCodec {
+  // Content-Encoding header value
+  String encoding();
+
+  // wraps the request sink with the encoding one. closing the sink returned should finish the encoding
+  Sink encode(Sink sink) throws IOException;
+
+  // gzip codec, supported out of the box
+  RequestCodec GZIP = new RequestCodec() {
+    @Override
+    public String encoding() {
+      return "gzip";
+    }
+
+    @Override
+    public Sink encode(Sink sink) {
+      return new GzipSink(sink);
+    }
+  };
+}
@@ -0,0 +1,148 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+
+/*
+ * Transport-level retry rules for the API calls
+ *
+ * - only transient failures are retried: connection errors, dropped streams
+ *   and 502 / 503 / 504 responses. GoodServer business errors (any other response)
+ *   are never retried
+ * - delay grows exponentially with the full jitter, Retry-After header is respected
+ * - process-wide budget limits retries to some share of the requests sent,
+ *   so the retries couldn't multiply the load if server is down
+ */
+public final class RetryPolicy {
+  public static final RetryPolicy DEFAULT = new RetryPolicy(3, 500, TimeUnit.SECONDS.toMillis(8));
+
+  // retry budget: each request deposits some share of the token, each retry withdraws the whole one
+  private static final double budgetMaxTokens = 10;
+  private static final double budgetDepositPerRequest = 0.2;
+  private static double budgetTokens = budgetMaxTokens;
+
+  // Retry-After value larger than that means server won't be back soon, so we're not waiting for it
+  private static final long maxRetryAfter = TimeUnit.SECONDS.toMillis(30);
+
+  private static final Random random = new Random();
+
+  private final int maxAttempts;
+  private final long baseDelay;
+  private final long maxDelay;
+
+  public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+    this.maxAttempts = maxAttempts;
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+  }
+
+  public static boolean isRetryableStatus(int code) {
+    return (code == 502) || (code == 503) || (code == 504);
+  }
+
+  public static boolean isTransient(IOException exception) {
+    return (exception instanceof SocketException) // ConnectException, connection reset etc
+      || (exception instanceof SocketTimeoutException)
+      || (exception instanceof UnknownHostException)
+      || isStreamReset(exception)
+      || (exception instanceof EOFException)
+      || "unexpected end of stream".equals(exception.getMessage());
+  }
+
+  // HTTP/2 stream dropped by the server or proxy. matched by name / message,
+  // as StreamResetException is okhttp internal class and could be moved or renamed
+  private static boolean isStreamReset(IOException exception) {
+    String message = exception.getMessage();
+
+    return "StreamResetException".equals(exception.getClass().getSimpleName())
+      || ((message != null) && message.startsWith("stream was reset"));
+  }
+
+  // should be called once per request (not per attempt) to refill the retry budget
+  public static synchronized void onRequest() {
+    budgetTokens = Math.min(budgetMaxTokens, budgetTokens + budgetDepositPerRequest);
+  }
+
+  // returns delay before the next attempt (in millis) or -1 if request shouldn't be retried
+  // attempt is zero-based number of the attempt just failed
+  public long nextDelay(int attempt, @Nullable Response response, @Nullable Deadline deadline) {
+    if (attempt + 1 >= maxAttempts) {
+      return -1;
+    }
+
+    long delay = backoff(attempt);
+    long retryAfter = response == null ? -1 : parseRetryAfter(response);
+
+    if (retryAfter > maxRetryAfter) {
+      return -1;
+    }
+
+    if (retryAfter >= 0) {
+      delay = retryAfter;
+    }
+
+    // no sense to wait if the deadline will be reached before the next attempt
+    if ((deadline != null) && (delay >= deadline.remaining(TimeUnit.MILLISECONDS))) {
+      return -1;
+    }
+
+    if (!withdrawBudget()) {
+      return -1;
+    }
+
+    return delay;
+  }
+
+  // exponential backoff with the full jitter
+  private long backoff(int attempt) {
+    long ceiling = Math.min(maxDelay, baseDelay << Math.min(attempt, 16));
+
+    synchronized (random) {
+      return (long) (random.nextDouble() * ceiling);
+    }
+  }
+
+  // Retry-After could be either delay in seconds or HTTP date
+  private static long parseRetryAfter(Response response) {
+    String retryAfter = response.header("Retry-After");
+
+    if (retryAfter == null) {
+      return -1;
+    }
+
+    try {
+      return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+    } catch (NumberFormatException exception) {
+      Date retryDate = response.headers().getDate("Retry-After");
+
+      if (retryDate == null) {
+        return -1;
+      }
+
+      return Math.max(0, retryDate.getTime() - System.currentTimeMillis());
+    }
+  }
+
+  // refills the budget completely, used by tests
+  static synchronized void resetBudget() {
+    budgetTokens = budgetMaxTokens;
+  }
+
+  private static synchronized boolean withdrawBudget() {
+    if (budgetTokens < 1) {
+      return false;
+    }
+
+    budgetTokens -= 1;
+    return true;
+  }
+}
@@ -0,0 +1,224 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+import okio.Timeout;
+
+/*
+ * Streaming authenticated encryption of the spooled payloads
+ *
+ * Payload is split into <segmentSize> segments, each one is sealed with AES-GCM separately,
+ * so it's decrypted and verified segment by segment while being uploaded: neither side
+ * buffers more than a segment (GCM cipher streams keep the whole message until the tag is checked).
+ * Nonce is <random prefix><segment index><last segment flag>, so segments couldn't be
+ * reordered, dropped or truncated without failing the decryption.
+ *
+ * Layout: <nonce prefix><segment 0 + tag>...<last segment + tag>
+ * Each key should encrypt a single payload
+ */
+final class SegmentedCipher {
+  private SegmentedCipher() {}
+
+  static final int keySize = 32;
+
+  private static final String transformation = "AES/GCM/NoPadding";
+  private static final int segmentSize = 64 * 1024;
+  private static final int tagSize = 16;
+  private static final int prefixSize = 7;
+  private static final int nonceSize = 12;
+
+  private static final SecureRandom random = new SecureRandom();
+
+  static byte[] generateKey() {
+    byte[] key = new byte[keySize];
+
+    random.nextBytes(key);
+    return key;
+  }
+
+  // encrypts everything written to the sink returned. closing it writes the last segment
+  static Sink encrypt(byte[] key, Sink sink) throws IOException {
+    byte[] prefix = new byte[prefixSize];
+
+    random.nextBytes(prefix);
+    return new EncryptingSink(createCipher(), new SecretKeySpec(key, "AES"), prefix, sink);
+  }
+
+  // decrypts the source. fails with IOException once the segment couldn't be verified
+  static Source decrypt(byte[] key, Source source) throws IOException {
+    return new DecryptingSource(createCipher(), new SecretKeySpec(key, "AES"), Okio.buffer(source));
+  }
+
+  private static Cipher createCipher() throws IOException {
+    try {
+      return Cipher.getInstance(transformation);
+    } catch (GeneralSecurityException exception) {
+      throw new IOException(exception);
+    }
+  }
+
+  private static GCMParameterSpec nonce(byte[] prefix, int index, boolean isLast) {
+    byte[] nonce = new byte[nonceSize];
+
+    System.arraycopy(prefix, 0, nonce, 0, prefixSize);
+    nonce[prefixSize] = (byte) (index >>> 24);
+    nonce[prefixSize + 1] = (byte) (index >>> 16);
+    nonce[prefixSize + 2] = (byte) (index >>> 8);
+    nonce[prefixSize + 3] = (byte) index;
+    nonce[prefixSize + 4] = (byte) (isLast ? 1 : 0);
+    return new GCMParameterSpec(tagSize * 8, nonce);
+  }
+
+  private static final class EncryptingSink implements Sink {
+    private final Cipher cipher;
+    private final SecretKeySpec key;
+    private final byte[] prefix;
+    private final Sink sink;
+    private final Buffer output = new Buffer();
+    private final byte[] segment = new byte[segmentSize];
+    private int segmentLength = 0;
+    private int index = 0;
+    private boolean isClosed = false;
+
+    EncryptingSink(Cipher cipher, SecretKeySpec key, byte[] prefix, Sink sink) {
+      this.cipher = cipher;
+      this.key = key;
+      this.prefix = prefix;
+      this.sink = sink;
+
+      output.write(prefix);
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+      while (byteCount > 0) {
+        // full segment is sealed only once more data arrives, as the last one is flagged
+        if (segmentLength == segmentSize) {
+          seal(false);
+        }
+
+        int read = source.read(segment, segmentLength, (int) Math.min(byteCount, segmentSize - segmentLength));
+
+        segmentLength += read;
+        byteCount -= read;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      sink.write(output, output.size());
+      sink.flush();
+    }
+
+    @Override
+    public Timeout timeout() {
+      return sink.timeout();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+
+      isClosed = true;
+
+      try {
+        seal(true);
+        sink.write(output, output.size());
+      } finally {
+        sink.close();
+      }
+    }
+
+    private void seal(boolean isLast) throws IOException {
+      try {
+        cipher.init(Cipher.ENCRYPT_MODE, key, nonce(prefix, index, isLast));
+        output.write(cipher.doFinal(segment, 0, segmentLength));
+      } catch (GeneralSecurityException exception) {
+        throw new IOException(exception);
+      }
+
+      segmentLength = 0;
+      index += 1;
+      sink.write(output, output.size());
+    }
+  }
+
+  private static final class DecryptingSource implements Source {
+    private final Cipher cipher;
+    private final SecretKeySpec key;
+    private final BufferedSource source;
+    private final Buffer output = new Buffer();
+    private byte[] prefix = null;
+    private int index = 0;
+    private boolean isFinished = false;
+
+    DecryptingSource(Cipher cipher, SecretKeySpec key, BufferedSource source) {
+      this.cipher = cipher;
+      this.key = key;
+      this.source = source;
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+      if (output.size() == 0) {
+        if (isFinished) {
+          return -1;
+        }
+
+        open();
+      }
+
+      return output.read(sink, byteCount);
+    }
+
+    // reads, verifies and decrypts the next segment. the one followed by EOF is the last
+    private void open() throws IOException {
+      int sealedSize = segmentSize + tagSize;
+
+      if (prefix == null) {
+        prefix = source.readByteArray(prefixSize);
+      }
+
+      boolean isLast = !source.request(sealedSize + 1);
+      long length = isLast ? source.buffer().size() : sealedSize;
+
+      if (length < tagSize) {
+        throw new IOException("Encrypted payload is truncated");
+      }
+
+      byte[] sealed = source.readByteArray(length);
+
+      try {
+        cipher.init(Cipher.DECRYPT_MODE, key, nonce(prefix, index, isLast));
+        output.write(cipher.doFinal(sealed));
+      } catch (GeneralSecurityException exception) {
+        throw new IOException("Encrypted payload is corrupted", exception);
+      }
+
+      index += 1;
+      isFinished = isLast;
+    }
+
+    @Override
+    public Timeout timeout() {
+      return source.timeout();
+    }
+
+    @Override
+    public void close() throws IOException {
+      source.close();
+    }
+  }
+}
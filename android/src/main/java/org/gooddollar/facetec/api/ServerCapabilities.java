@@ -0,0 +1,167 @@
+package org.gooddollar.facetec.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/*
+ * Optional GoodServer features advertised in the session token response:
+ *
+ * { success: true, sessionToken, capabilities: {
+ *   requestEncodings: ['gzip'],
+ *   chunkedUpload: { chunkSize: 262144 },
+ *   multipartUpload: true,
+ *   auditTrailOptional: true,
+ *   enrollmentStatus: true,
+ * } }
+ *
+ * Older servers don't send capabilities, so everything is disabled by default
+ */
+public final class ServerCapabilities {
+  public static final ServerCapabilities NONE = new ServerCapabilities(Collections.<String>emptyList(), -1, false, false, false);
+
+  private static final String requestEncodingsProperty = "requestEncodings";
+  private static final String chunkedUploadProperty = "chunkedUpload";
+  private static final String chunkSizeProperty = "chunkSize";
+  private static final String multipartUploadProperty = "multipartUpload";
+  private static final String auditTrailOptionalProperty = "auditTrailOptional";
+  private static final String enrollmentStatusProperty = "enrollmentStatus";
+
+  private static final long defaultChunkSize = 256 * 1024;
+
+  // in the server's order of preference
+  private final List<String> requestEncodings;
+  // -1 if chunked upload isn't supported
+  private final long chunkSize;
+  // accepts enrollment as multipart/form-data with the raw binary parts
+  private final boolean multipartUpload;
+  // accepts enrollment without the full quality audit trail image (low quality one is enough)
+  private final boolean auditTrailOptional;
+  // GET /verify/face/:id/status is available. client checks status regardless, as capabilities
+  // aren't known before the first session token response
+  private final boolean enrollmentStatus;
+
+  private ServerCapabilities(
+    List<String> requestEncodings, long chunkSize, boolean multipartUpload,
+    boolean auditTrailOptional, boolean enrollmentStatus
+  ) {
+    this.requestEncodings = Collections.unmodifiableList(requestEncodings);
+    this.chunkSize = chunkSize;
+    this.multipartUpload = multipartUpload;
+    this.auditTrailOptional = auditTrailOptional;
+    this.enrollmentStatus = enrollmentStatus;
+  }
+
+  // reads capabilities object from the session token response stream
+  public static ServerCapabilities read(JsonReader reader) throws IOException {
+    List<String> requestEncodings = new ArrayList<>();
+    long chunkSize = -1;
+    boolean multipartUpload = false;
+    boolean auditTrailOptional = false;
+    boolean enrollmentStatus = false;
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        continue;
+      }
+
+      switch (name) {
+        case requestEncodingsProperty:
+          readStrings(reader, requestEncodings);
+          break;
+        case chunkedUploadProperty:
+          chunkSize = readChunkSize(reader);
+          break;
+        case multipartUploadProperty:
+          multipartUpload = reader.nextBoolean();
+          break;
+        case auditTrailOptionalProperty:
+          auditTrailOptional = reader.nextBoolean();
+          break;
+        case enrollmentStatusProperty:
+          enrollmentStatus = reader.nextBoolean();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+    return new ServerCapabilities(
+      requestEncodings, chunkSize > 0 ? chunkSize : -1, multipartUpload, auditTrailOptional, enrollmentStatus
+    );
+  }
+
+  public List<String> getRequestEncodings() {
+    return requestEncodings;
+  }
+
+  public boolean supportsChunkedUpload() {
+    return chunkSize > 0;
+  }
+
+  public long getChunkSize() {
+    return chunkSize;
+  }
+
+  public boolean supportsMultipartUpload() {
+    return multipartUpload;
+  }
+
+  public boolean isAuditTrailOptional() {
+    return auditTrailOptional;
+  }
+
+  public boolean supportsEnrollmentStatus() {
+    return enrollmentStatus;
+  }
+
+  // returns copy of capabilities without encoding specified (e.g. if server refused it)
+  public ServerCapabilities withoutRequestEncoding(String encoding) {
+    List<String> encodings = new ArrayList<>(requestEncodings);
+
+    encodings.remove(encoding);
+    return new ServerCapabilities(encodings, chunkSize, multipartUpload, auditTrailOptional, enrollmentStatus);
+  }
+
+  private static void readStrings(JsonReader reader, List<String> strings) throws IOException {
+    reader.beginArray();
+
+    while (reader.hasNext()) {
+      if (reader.peek() == JsonToken.STRING) {
+        strings.add(reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+
+    reader.endArray();
+  }
+
+  // { chunkSize? }
+  private static long readChunkSize(JsonReader reader) throws IOException {
+    long chunkSize = defaultChunkSize;
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      if (chunkSizeProperty.equals(reader.nextName()) && (reader.peek() == JsonToken.NUMBER)) {
+        chunkSize = reader.nextLong();
+      } else {
+        reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+    return chunkSize;
+  }
+}
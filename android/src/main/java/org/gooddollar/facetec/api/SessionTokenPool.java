@@ -0,0 +1,221 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.gooddollar.facetec.api.FaceVerification.APIException;
+import org.gooddollar.facetec.api.FaceVerification.DeadlineExceededException;
+import org.gooddollar.facetec.api.FaceVerification.SessionTokenCallback;
+import org.gooddollar.facetec.api.FaceVerification.SessionTokenTTLCallback;
+
+/*
+ * Keeps session tokens fetched ahead of time, so FV session could be launched
+ * right after user has tapped, without waiting for /verify/face/session round trip
+ *
+ * - tokens are single-use, acquire() takes the token out of the pool
+ * - each token has lifetime (returned by server or configured), stale ones are dropped
+ * - concurrent fetches are merged: while the request is in flight, all the callers
+ *   are waiting for its result instead of sending the new ones
+ * - fetch is shared, so it's made without deadline. each caller waits up to its own one,
+ *   token received after that is pooled for the next session
+ * - each client has its own pool, as tokens are issued per server / user.
+ *   Pool size and default lifetime are configured globally
+ */
+public final class SessionTokenPool {
+  // used if server hasn't returned token lifetime
+  private static volatile long defaultTTL = TimeUnit.MINUTES.toMillis(1);
+  // token should have at least this time left to be returned from the pool
+  private static final long minRemainingTTL = TimeUnit.SECONDS.toMillis(5);
+  private static volatile int capacity = 1;
+
+  private final FaceVerificationClient client;
+  private final Deque<PooledToken> tokens = new ArrayDeque<>();
+  private final List<Waiter> waiters = new ArrayList<>();
+  private boolean isFetching = false;
+
+  SessionTokenPool(FaceVerificationClient client) {
+    this.client = client;
+  }
+
+  private static final class PooledToken {
+    final String sessionToken;
+    final long expiresAt; // System.nanoTime() based
+
+    PooledToken(String sessionToken, long ttl) {
+      this.sessionToken = sessionToken;
+      this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+    boolean isStale() {
+      return expiresAt - System.nanoTime() < TimeUnit.MILLISECONDS.toNanos(minRemainingTTL);
+    }
+  }
+
+  // caller waiting for the fetch in flight. fails once its deadline is reached (runs on the scheduler)
+  private final class Waiter implements Runnable {
+    final SessionTokenCallback callback;
+    volatile ScheduledFuture<?> timeout = null;
+
+    Waiter(SessionTokenCallback callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      synchronized (SessionTokenPool.this) {
+        // has been already served
+        if (!waiters.remove(this)) {
+          return;
+        }
+      }
+
+      callback.onFailure(new DeadlineExceededException());
+    }
+
+    void onSessionTokenReceived(String sessionToken) {
+      cancelTimeout();
+      callback.onSessionTokenReceived(sessionToken);
+    }
+
+    void onFailure(APIException exception) {
+      cancelTimeout();
+      callback.onFailure(exception);
+    }
+
+    private void cancelTimeout() {
+      ScheduledFuture<?> scheduledTimeout = timeout;
+
+      if (scheduledTimeout != null) {
+        scheduledTimeout.cancel(false);
+      }
+    }
+  }
+
+  // sets pool size and default token lifetime (in millis)
+  public static void configure(int poolCapacity, long ttl) {
+    capacity = Math.max(1, poolCapacity);
+    defaultTTL = ttl;
+  }
+
+  // fills the pool in background if there're no fresh tokens
+  public void prefetch() {
+    synchronized (this) {
+      dropStale();
+
+      if (isFetching || (tokens.size() >= capacity)) {
+        return;
+      }
+
+      isFetching = true;
+    }
+
+    fetch();
+  }
+
+  // returns warm token immediately if any, otherwise joins the fetch in flight (or starts a new one)
+  // fails with DeadlineExceededException if token hasn't been received before the deadline
+  public void acquire(@Nullable Deadline deadline, SessionTokenCallback callback) {
+    PooledToken token;
+    Waiter waiter = null;
+    boolean shouldFetch = false;
+
+    // no time left - fail fast, even if there's a warm token
+    if ((deadline != null) && deadline.isExpired()) {
+      callback.onFailure(new DeadlineExceededException());
+      return;
+    }
+
+    synchronized (this) {
+      dropStale();
+      token = tokens.pollFirst();
+
+      if (token == null) {
+        waiter = new Waiter(callback);
+        waiters.add(waiter);
+        shouldFetch = !isFetching;
+        isFetching = true;
+      }
+    }
+
+    if (token != null) {
+      callback.onSessionTokenReceived(token.sessionToken);
+      return;
+    }
+
+    if (deadline != null) {
+      waiter.timeout = NetworkingHelpers.getScheduler()
+        .schedule(waiter, deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+    }
+
+    if (shouldFetch) {
+      fetch();
+    }
+  }
+
+  private void fetch() {
+    client.getSessionToken(null, new SessionTokenTTLCallback() {
+      @Override
+      public void onSessionTokenReceived(String sessionToken, long ttl) {
+        Waiter waiter = null;
+        boolean shouldFetchMore = false;
+
+        synchronized (SessionTokenPool.this) {
+          isFetching = false;
+
+          if (!waiters.isEmpty()) {
+            // someone is waiting - hand the token over directly
+            waiter = waiters.remove(0);
+          } else {
+            tokens.addLast(new PooledToken(sessionToken, ttl > 0 ? ttl : defaultTTL));
+          }
+
+          // one token per request, so fetch again if there're more waiters
+          if (!waiters.isEmpty()) {
+            isFetching = true;
+            shouldFetchMore = true;
+          }
+        }
+
+        if (shouldFetchMore) {
+          fetch();
+        }
+
+        if (waiter != null) {
+          waiter.onSessionTokenReceived(sessionToken);
+        }
+      }
+
+      @Override
+      public void onFailure(APIException exception) {
+        List<Waiter> failed;
+
+        // all callers merged into this fetch are getting its error
+        synchronized (SessionTokenPool.this) {
+          isFetching = false;
+          failed = new ArrayList<>(waiters);
+          waiters.clear();
+        }
+
+        for (Waiter waiter : failed) {
+          waiter.onFailure(exception);
+        }
+      }
+    });
+  }
+
+  private void dropStale() {
+    Iterator<PooledToken> iterator = tokens.iterator();
+
+    while (iterator.hasNext()) {
+      if (iterator.next().isStale()) {
+        iterator.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+// POST /verify/face/session response { success, sessionToken, expiresIn?, capabilities? }
+public class SessionTokenResponse extends APIResponse {
+  @Nullable String sessionToken = null;
+  // token lifetime in seconds, -1 if not set
+  long expiresIn = -1;
+  ServerCapabilities capabilities = ServerCapabilities.NONE;
+
+  public static final TypeAdapter<SessionTokenResponse> ADAPTER = new Adapter<SessionTokenResponse>() {
+    @Override
+    protected SessionTokenResponse create() {
+      return new SessionTokenResponse();
+    }
+
+    @Override
+    protected boolean readProperty(SessionTokenResponse response, String name, JsonReader reader) throws IOException {
+      switch (name) {
+        case "sessionToken":
+          response.sessionToken = reader.nextString();
+          return true;
+        case "expiresIn":
+          response.expiresIn = reader.nextLong();
+          return true;
+        case "capabilities":
+          response.capabilities = ServerCapabilities.read(reader);
+          return true;
+      }
+
+      return false;
+    }
+  };
+
+  @Nullable
+  public String getSessionToken() {
+    return sessionToken;
+  }
+
+  public long getExpiresIn() {
+    return expiresIn;
+  }
+
+  public ServerCapabilities getCapabilities() {
+    return capabilities;
+  }
+}
@@ -0,0 +1,51 @@
+package org.gooddollar.facetec.api;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+// chunked upload open / status response { success, uploadId, received: [chunk indexes] }
+public class UploadResponse extends APIResponse {
+  @Nullable String uploadId = null;
+  List<Integer> received = new ArrayList<>();
+
+  public static final TypeAdapter<UploadResponse> ADAPTER = new Adapter<UploadResponse>() {
+    @Override
+    protected UploadResponse create() {
+      return new UploadResponse();
+    }
+
+    @Override
+    protected boolean readProperty(UploadResponse response, String name, JsonReader reader) throws IOException {
+      switch (name) {
+        case "uploadId":
+          response.uploadId = reader.nextString();
+          return true;
+        case "received":
+          reader.beginArray();
+
+          while (reader.hasNext()) {
+            response.received.add(reader.nextInt());
+          }
+
+          reader.endArray();
+          return true;
+      }
+
+      return false;
+    }
+  };
+
+  @Nullable
+  public String getUploadId() {
+    return uploadId;
+  }
+
+  public List<Integer> getReceived() {
+    return received;
+  }
+}
@@ -1,8 +1,14 @@
 package org.gooddollar.facetec.processors;
 
 import androidx.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import android.app.Activity;
+import android.app.Application;
 import android.content.Context;
-import org.json.JSONObject;
+import android.os.Bundle;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import java.lang.ref.WeakReference;
 
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
@@ -15,27 +21,68 @@ import com.facetec.sdk.FaceTecSessionStatus;
 import com.facetec.sdk.FaceTecSessionResult;
 import com.facetec.sdk.FaceTecCustomization;
 
+import org.gooddollar.facetec.api.APIResponse;
+import org.gooddollar.facetec.api.AccessTokenRefresh;
+import org.gooddollar.facetec.api.Base64PartBody;
+import org.gooddollar.facetec.api.CallGroup;
+import org.gooddollar.facetec.api.ConnectionWarmer;
+import org.gooddollar.facetec.api.Deadline;
+import org.gooddollar.facetec.api.DeferredEnrollments;
+import org.gooddollar.facetec.api.EnrollmentResponse;
+import org.gooddollar.facetec.api.EnrollmentStatusCheck;
 import org.gooddollar.facetec.api.FaceVerification;
+import org.gooddollar.facetec.api.FaceVerificationClient;
+import org.gooddollar.facetec.api.JSONRequestBody;
+import org.gooddollar.facetec.api.NetworkQuality;
 import org.gooddollar.facetec.api.NetworkingHelpers;
+import org.gooddollar.facetec.api.ProgressCoalescer;
 import org.gooddollar.facetec.api.ProgressRequestBody;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
 
 import org.gooddollar.facetec.processors.ProcessingSubscriber;
 import org.gooddollar.facetec.util.EventEmitter;
 import org.gooddollar.facetec.util.Customization;
 import org.gooddollar.facetec.util.Permissions;
+import org.gooddollar.facetec.util.SessionExecutors;
+import org.gooddollar.facetec.util.SessionMetrics;
 
 // Implements face verification flow. Based on the class from the FaceTec demo app
 public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
-  private Context context;
+  // JWT lifetime required if session has no deadline: capture and upload respectively
+  private static final long defaultSessionTime = TimeUnit.MINUTES.toMillis(2);
+  private static final long defaultUploadTime = TimeUnit.MINUTES.toMillis(1);
+  // minimal JWT lifetime to get session token and start capturing while the fresh one is being requested
+  private static final long minTokenLifetime = TimeUnit.SECONDS.toMillis(10);
+
+  // application context is kept, activity is referenced weakly, so abandoned session doesn't leak it
+  private final Context context;
+  private final WeakReference<Context> activity;
   private ProcessingSubscriber subscriber;
   private Permissions permissions;
+  private final SessionMetrics metrics;
+  // client session was started with. all session's API calls are made via it
+  // replaced with the one having fresh JWT if token is expiring during the session
+  private volatile FaceVerificationClient client;
+  private Application.ActivityLifecycleCallbacks activityWatcher = null;
 
   private FaceTecFaceScanResultCallback lastResultCallback = null;
-  private FaceTecSessionResult lastResult = null;
+  // holds all the scan data (megabytes of base64), released once payload is built
+  // only the status is kept until the session is finished
+  private volatile FaceTecSessionResult lastResult = null;
+  private FaceTecSessionStatus lastStatus = null;
   private String lastMessage = null;
 
+  private Deadline deadline = null;
+  // enrollment upload timeout (the same as on iOS), the session deadline limits it too
   private Integer timeout = null;
+  private boolean isDeadlineExceeded = false;
+  private boolean isDeferred = false;
+  // session is launched only once pre-capture status check is done, token is kept meanwhile
+  private EnrollmentStatusCheck statusCheck = null;
+  // API calls of this session, aborted once session cancelled / preempted
+  private final CallGroup calls = new CallGroup();
   private int maxRetries = -1;
   private int retryAttempt = 0;
   private String enrollmentIdentifier = null;
@@ -45,8 +92,21 @@ public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
 
   // instantiated with content context (activity) and subscriber  
   public EnrollmentProcessor(Context context, ProcessingSubscriber subscriber) {
-    this.context = context;
+    this(context, subscriber, FaceVerification.getClient());
+  }
+
+  // the same but the specific API client (server / user) is used instead of the default one
+  public EnrollmentProcessor(Context context, ProcessingSubscriber subscriber, FaceVerificationClient client) {
+    if (client == null) {
+      throw new IllegalStateException("FaceVerification client isn't registered");
+    }
+
+    // no activity - session will be rejected on the permissions request
+    this.context = context != null ? context.getApplicationContext() : null;
+    this.activity = new WeakReference<>(context);
     this.subscriber = subscriber;
+    this.client = client;
+    metrics = subscriber.getMetrics();
     permissions = new Permissions(context);
   }
 
@@ -54,6 +114,14 @@ public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
     return subscriber;
   }
 
+  // aborts session's in-flight API calls (e.g. if session has been preempted by the new one)
+  // FaceTec UI won't be shown if session token hasn't been received yet
+  public void cancel() {
+    calls.cancel();
+    ConnectionWarmer.stop();
+    lastResult = null;
+  }
+
   // different enroll() overloads covering params defaults
   public void enroll(final String enrollmentIdentifier, final String v1Identifier) {
     enroll(enrollmentIdentifier, v1Identifier, null, null, null);
@@ -67,9 +135,16 @@ public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
     enroll(enrollmentIdentifier, v1Identifier, chainId, maxRetries, null);
   }
 
-  // starts FV session
-  public void enroll(final String enrollmentIdentifier, final String v1Identifier, @Nullable final String chainId, @Nullable final Integer maxRetries, @Nullable final Integer timeout) {
-    final Context ctx = this.context;
+  public void enroll(final String enrollmentIdentifier, final String v1Identifier, @Nullable final String chainId, @Nullable final Integer maxRetries, @Nullable final Deadline deadline) {
+    enroll(enrollmentIdentifier, v1Identifier, chainId, maxRetries, null, deadline);
+  }
+
+  // starts FV session. timeout (millis, if set) limits the enrollment upload (with retries)
+  // deadline (if set) limits the whole session, including all API calls
+  public void enroll(
+    final String enrollmentIdentifier, final String v1Identifier, @Nullable final String chainId,
+    @Nullable final Integer maxRetries, @Nullable final Integer timeout, @Nullable final Deadline deadline
+  ) {
     final ProcessingSubscriber subscriber = this.subscriber;
 
     // get session token callback
@@ -77,19 +152,35 @@ public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
       new FaceVerification.SessionTokenCallback() {
         @Override
         public void onSessionTokenReceived(String sessionToken) {
-          // when got token successfully - show FV UI
-          FaceTecSessionActivity.createAndLaunchSession(ctx, EnrollmentProcessor.this, sessionToken);
-          EventEmitter.dispatch(EventEmitter.UXEvent.UI_READY);
+          // session has been cancelled while token was fetching
+          if (calls.isCancelled()) {
+            return;
+          }
+
+          metrics.mark(SessionMetrics.Mark.TOKEN_RECEIVED);
+          // if status check is still in flight - session will be launched once it's done
+          statusCheck.onSessionTokenReceived(sessionToken);
         }
 
         @Override
         public void onFailure(FaceVerification.APIException exception) {
+          // session has been already finished (preempted or short-circuited by status check)
+          if (calls.isCancelled()) {
+            return;
+          }
+
+          // no time left for the session - reject with deadline status
+          if (exception instanceof FaceVerification.DeadlineExceededException) {
+            subscriber.onDeadlineExceeded();
+            return;
+          }
+
           // otherwise reject with specific error
           subscriber.onSessionTokenError(exception);
         }
       };
 
-    // store enrollmentIdentifier, maxRetries and timeout in the corresponding instance vars
+    // store enrollmentIdentifier, maxRetries, timeout and deadline in the corresponding instance vars
     this.enrollmentIdentifier = enrollmentIdentifier;
     this.v1Identifier = v1Identifier;
     this.chainId = chainId;
@@ -102,12 +193,25 @@ public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
       this.timeout = timeout;
     }
 
+    this.deadline = deadline;
+
+    // if there's no warm token - start fetching it while permissions prompt is shown
+    client.getSessionTokenPool().prefetch();
+    // meanwhile check if user is already enrolled, so capture & upload won't be made just to find that out
+    checkEnrollmentStatus();
+
     // request camera permissions.
     this.permissions.requestCameraPermissions(new Permissions.PermissionsCallback() {
       @Override
       public void onSuccess() {
-        // on premissions granted - get session token, pas callbacks
-        FaceVerification.getSessionToken(onSessionTokenRetrieved);
+        metrics.mark(SessionMetrics.Mark.PERMISSIONS_GRANTED);
+        // on premissions granted - check JWT, then take session token from the pool, pass callbacks
+        ensureAccessToken(new Runnable() {
+          @Override
+          public void run() {
+            client.getSessionTokenPool().acquire(deadline, onSessionTokenRetrieved);
+          }
+        }, onSessionTokenRetrieved);
       }
 
       @Override
@@ -118,17 +222,76 @@ public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
     });
   }
 
+  // shows FV UI. token is received on the background thread, so session is launched from the main one
+  private void launchSession(final String sessionToken) {
+    SessionExecutors.main().execute(new Runnable() {
+      @Override
+      public void run() {
+        Context sessionContext = activity.get();
+
+        // session has been cancelled while status check was in flight
+        if (calls.isCancelled()) {
+          return;
+        }
+
+        // activity has been destroyed while token was fetching
+        if (sessionContext == null) {
+          calls.cancel();
+          subscriber.onSessionContextSwitch();
+          return;
+        }
+
+        // UI_READY will be dispatched once FaceTec activity will be on screen
+        watchSessionActivity();
+
+        metrics.mark(SessionMetrics.Mark.SESSION_LAUNCHED);
+        FaceTecSessionActivity.createAndLaunchSession(sessionContext, EnrollmentProcessor.this, sessionToken);
+        // keep connection alive while user is capturing
+        ConnectionWarmer.start(client);
+      }
+    });
+  }
+
+  // asks server whether identifier is already enrolled or known as duplicate
+  // if so, session finishes with the corresponding status before camera is opened
+  // if status is unknown (e.g. check failed or server doesn't support it) session goes on as usual
+  private void checkEnrollmentStatus() {
+    statusCheck = new EnrollmentStatusCheck(client, calls, new EnrollmentStatusCheck.Listener() {
+      @Override
+      public void onProceed(String sessionToken) {
+        launchSession(sessionToken);
+      }
+
+      @Override
+      public void onAlreadyEnrolled() {
+        subscriber.onAlreadyEnrolled();
+      }
+
+      @Override
+      public void onDuplicateEnrollment() {
+        subscriber.onDuplicateEnrollment();
+      }
+    });
+
+    statusCheck.start(enrollmentIdentifier, deadline);
+  }
+
   // capturing done/failed callback
   // logic the same as on the web
   public void processSessionWhileFaceTecSDKWaits(
     final FaceTecSessionResult sessionResult,
     final FaceTecFaceScanResultCallback faceScanResultCallback
   ) {
+    metrics.mark(SessionMetrics.Mark.CAPTURE_DONE);
     lastResult = sessionResult;
+    lastStatus = sessionResult.getStatus();
     lastResultCallback = faceScanResultCallback;
+    // capture is done, upload (if any) will use the connection kept warm
+    ConnectionWarmer.stop();
 
     if (sessionResult.getStatus() != FaceTecSessionStatus.SESSION_COMPLETED_SUCCESSFULLY) {
-      NetworkingHelpers.cancelPendingRequests();
+      lastResult = null;
+      calls.cancel();
       faceScanResultCallback.cancel();
 
       return;
@@ -137,127 +300,504 @@ public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
     // notifying that capturing is done
     EventEmitter.dispatch(EventEmitter.UXEvent.CAPTURE_DONE);
 
+    // no time left to upload - fail fast instead of sending megabytes which will be timed out
+    if ((deadline != null) && deadline.isExpired()) {
+      onDeadlineExceeded();
+      return;
+    }
+
+    // JWT will expire during upload - get the fresh one first, so upload won't be rejected
+    if (!client.isAccessTokenValidFor(remainingTime(defaultUploadTime), TimeUnit.MILLISECONDS)) {
+      AccessTokenRefresh.request(client, new AccessTokenRefresh.Callback() {
+        @Override
+        public void onAccessTokenRefreshed(@Nullable final FaceVerificationClient refreshed) {
+          SessionExecutors.main().execute(new Runnable() {
+            @Override
+            public void run() {
+              if (calls.isCancelled()) {
+                return;
+              }
+
+              if (!switchClient(refreshed)) {
+                handleEnrollmentError(new FaceVerification.AccessTokenExpiredException());
+                return;
+              }
+
+              sendEnrollmentRequest();
+            }
+          });
+        }
+      });
+
+      return;
+    }
+
     // perform verification
     sendEnrollmentRequest();
   }
 
+  // checks JWT is valid for the whole session before getting session token
+  //   - if it's valid - proceeds immediately
+  //   - if it will expire during the session - asks app for a fresh one and proceeds
+  //   while user is capturing, upload will wait for it if still not received
+  //   - if it's (almost) expired - waits for a fresh one, fails if app hasn't provided it
+  private void ensureAccessToken(final Runnable proceed, final FaceVerification.SessionTokenCallback callback) {
+    final boolean canProceed = client.isAccessTokenValidFor(minTokenLifetime, TimeUnit.MILLISECONDS);
+
+    if (client.isAccessTokenValidFor(remainingTime(defaultSessionTime), TimeUnit.MILLISECONDS)) {
+      proceed.run();
+      return;
+    }
+
+    AccessTokenRefresh.request(client, new AccessTokenRefresh.Callback() {
+      @Override
+      public void onAccessTokenRefreshed(@Nullable FaceVerificationClient refreshed) {
+        boolean isSwitched = switchClient(refreshed);
+
+        if (canProceed || calls.isCancelled()) {
+          return;
+        }
+
+        if (!isSwitched) {
+          callback.onFailure(new FaceVerification.AccessTokenExpiredException());
+          return;
+        }
+
+        proceed.run();
+      }
+    });
+
+    if (canProceed) {
+      proceed.run();
+    }
+  }
+
+  // switches session to the client with refreshed JWT, false if app hasn't provided it
+  // or the default client has been re-registered with another server meanwhile
+  private boolean switchClient(@Nullable FaceVerificationClient refreshed) {
+    if ((refreshed == null) || !refreshed.getServerURL().equals(client.getServerURL())) {
+      return false;
+    }
+
+    client = refreshed;
+    return true;
+  }
+
+  // time JWT should be valid for: the default one, but not longer than remaining session budget
+  private long remainingTime(long defaultTime) {
+    return deadline != null ? Math.min(defaultTime, deadline.remaining(TimeUnit.MILLISECONDS)) : defaultTime;
+  }
+
   // done callback
   // logic the same as on the web
   public void onFaceTecSDKCompletelyDone() {
+    ConnectionWarmer.stop();
+    unwatchSessionActivity();
+
+    // session has been cancelled because of deadline - reject with the corresponding status
+    if (isDeadlineExceeded) {
+      subscriber.onDeadlineExceeded();
+      return;
+    }
+
+    // device is offline, enrollment will be uploaded later
+    if (isDeferred) {
+      subscriber.onEnrollmentDeferred(lastMessage);
+      return;
+    }
+
     // recalls processing subscriber with success slate and last result/message
-    subscriber.onProcessingComplete(isSuccess, lastResult, lastMessage);
+    subscriber.onProcessingComplete(isSuccess, lastStatus, lastMessage);
   }
 
-  // enrollment request factory helper
-  private RequestBody createEnrollmentRequest(JSONObject payload) {
-    final FaceTecFaceScanResultCallback resultCallback = lastResultCallback;
+  // dispatches UI_READY once FaceTec activity is actually on screen (about to draw its first frame)
+  // instead of right after launching it
+  private void watchSessionActivity() {
+    final Application application = (Application) context;
+
+    unwatchSessionActivity();
+    activityWatcher = new Application.ActivityLifecycleCallbacks() {
+      @Override
+      public void onActivityResumed(Activity activity) {
+        if (!(activity instanceof FaceTecSessionActivity)) {
+          return;
+        }
+
+        final View decorView = activity.getWindow().getDecorView();
+
+        unwatchSessionActivity();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+          @Override
+          public boolean onPreDraw() {
+            decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+            metrics.mark(SessionMetrics.Mark.UI_READY);
+            EventEmitter.dispatch(EventEmitter.UXEvent.UI_READY);
+            return true;
+          }
+        });
+      }
 
+      @Override
+      public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+      @Override
+      public void onActivityStarted(Activity activity) {}
+
+      @Override
+      public void onActivityPaused(Activity activity) {}
+
+      @Override
+      public void onActivityStopped(Activity activity) {}
+
+      @Override
+      public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+      @Override
+      public void onActivityDestroyed(Activity activity) {}
+    };
+
+    application.registerActivityLifecycleCallbacks(activityWatcher);
+  }
+
+  private void unwatchSessionActivity() {
+    if (activityWatcher == null) {
+      return;
+    }
+
+    ((Application) context).unregisterActivityLifecycleCallbacks(activityWatcher);
+    activityWatcher = null;
+  }
+
+  // enrollment request factory helper
+  private RequestBody createEnrollmentRequest(RequestBody payload) {
     // create request with send progress listener
-    return new ProgressRequestBody(FaceVerification.jsonStringify(payload),
-      new ProgressRequestBody.Listener() {
-        // send from total listener, the logic same as on web
-        @Override
-        public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
-          // get progress while performing the upload
-          final float uploaded = ((float) bytesWritten) / ((float) totalBytes);
+    return new ProgressRequestBody(payload, createProgressListener());
+  }
 
-          // updating the UX, upload progress from 10 to 80%
-          resultCallback.uploadProgress(0.1f + 0.7f * uploaded);
+  // upload progress listener factory helper
+  private ProgressRequestBody.Listener createProgressListener() {
+    final FaceTecFaceScanResultCallback resultCallback = lastResultCallback;
 
-          if (bytesWritten == totalBytes) {
-            // switch status message to processing once upload completed
-            resultCallback.uploadMessageOverride(Customization.resultFacescanProcessingMessage);
+    // FaceTec UI progress bar, updated each 1% or 100ms
+    final ProgressCoalescer uiProgress = new ProgressCoalescer(100, 0.01, new ProgressCoalescer.Listener() {
+      // send from total listener, the logic same as on web
+      @Override
+      public void onUploadProgress(long bytesWritten, long totalBytes, long bytesPerSecond, long eta) {
+        // get progress while performing the upload
+        final float uploaded = ((float) bytesWritten) / ((float) totalBytes);
+        final boolean isUploaded = bytesWritten == totalBytes;
+
+        // payload & upload buffers are the session's heap peak
+        metrics.sampleHeap();
+
+        SessionExecutors.main().execute(new Runnable() {
+          @Override
+          public void run() {
+            // updating the UX, upload progress from 10 to 80%
+            resultCallback.uploadProgress(0.1f + 0.7f * uploaded);
+
+            if (isUploaded) {
+              // switch status message to processing once upload completed
+              resultCallback.uploadMessageOverride(Customization.resultFacescanProcessingMessage);
+            }
           }
+        });
+      }
+    });
+
+    // progress event for JS, throttled more to not flood the bridge
+    final ProgressCoalescer jsProgress = new ProgressCoalescer(500, 0.05, new ProgressCoalescer.Listener() {
+      @Override
+      public void onUploadProgress(long bytesWritten, long totalBytes, long bytesPerSecond, long eta) {
+        WritableMap eventData = Arguments.createMap();
+
+        eventData.putDouble("bytesSent", bytesWritten);
+        eventData.putDouble("totalBytes", totalBytes);
+        eventData.putDouble("bytesPerSecond", bytesPerSecond);
+        eventData.putDouble("eta", eta);
+
+        EventEmitter.dispatch(EventEmitter.UXEvent.UPLOAD_PROGRESS, eventData);
+      }
+    });
+
+    return new ProgressRequestBody.Listener() {
+      @Override
+      public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
+        if (bytesWritten == totalBytes) {
+          metrics.mark(SessionMetrics.Mark.UPLOAD_DONE);
         }
+
+        uiProgress.onUploadProgressChanged(bytesWritten, totalBytes);
+        jsProgress.onUploadProgressChanged(bytesWritten, totalBytes);
       }
-    );
+    };
+  }
+
+  // chooses payload profile. on the poor link full quality audit trail image is omitted
+  // (if server allows it), the low quality one is always sent
+  private boolean shouldSendAuditTrailImage() {
+    if (!client.getCapabilities().isAuditTrailOptional()) {
+      return true;
+    }
+
+    return NetworkQuality.estimate().quality != NetworkQuality.Quality.POOR;
+  }
+
+  // { faceScan, auditTrailImage?, lowQualityAuditTrailImage, sessionId, fvSigner, chainId? }
+  private RequestBody createJSONPayload(FaceTecSessionResult sessionResult, boolean withAuditTrailImage) {
+    // streams fields directly to the connection, no in-memory JSON string being built
+    JSONRequestBody payload = new JSONRequestBody();
+
+    payload.put("faceScan", sessionResult.getFaceScanBase64());
+
+    if (withAuditTrailImage) {
+      payload.put("auditTrailImage", sessionResult.getAuditTrailCompressedBase64()[0]);
+    }
+
+    payload.put("lowQualityAuditTrailImage", sessionResult.getLowQualityAuditTrailCompressedBase64()[0]);
+    return putSessionFields(sessionResult, payload);
+  }
+
+  // multipart/form-data with "metadata" JSON part { sessionId, fvSigner, chainId? }
+  // and the raw binary faceScan, auditTrailImage (optional) and lowQualityAuditTrailImage parts
+  private RequestBody createMultipartPayload(FaceTecSessionResult sessionResult, boolean withAuditTrailImage) {
+    MediaType binary = MediaType.parse("application/octet-stream");
+    MediaType jpeg = MediaType.parse("image/jpeg");
+    MultipartBody.Builder payload = new MultipartBody.Builder()
+      .setType(MultipartBody.FORM)
+      .addFormDataPart("metadata", null, putSessionFields(sessionResult, new JSONRequestBody()))
+      .addFormDataPart("faceScan", "faceScan.bin", new Base64PartBody(binary, sessionResult.getFaceScanBase64()));
+
+    if (withAuditTrailImage) {
+      payload.addFormDataPart("auditTrailImage", "auditTrailImage.jpg",
+        new Base64PartBody(jpeg, sessionResult.getAuditTrailCompressedBase64()[0]));
+    }
+
+    return payload
+      .addFormDataPart("lowQualityAuditTrailImage", "lowQualityAuditTrailImage.jpg",
+        new Base64PartBody(jpeg, sessionResult.getLowQualityAuditTrailCompressedBase64()[0]))
+      .build();
+  }
+
+  private JSONRequestBody putSessionFields(FaceTecSessionResult sessionResult, JSONRequestBody payload) {
+    payload.put("sessionId", sessionResult.getSessionId());
+    payload.put("fvSigner", this.v1Identifier);
+
+    // if no chainId then DO NOT send chainId in body
+    if (this.chainId != null) {
+      payload.put("chainId", this.chainId);
+    }
+
+    return payload;
   }
 
   // send request helper, processing logic same as on web
+  // called on the main thread, payload is built on the serial background one
   private void sendEnrollmentRequest() {
     final FaceTecFaceScanResultCallback resultCallback = lastResultCallback;
-    JSONObject payload = new JSONObject();
+    // payload takes the ownership of the scan data, session result isn't referenced anymore
+    final FaceTecSessionResult sessionResult = lastResult;
+
+    lastResult = null;
 
     // setting initial progress to 0 for freeze progress bar
     resultCallback.uploadProgress(0);
 
+    SessionExecutors.payload().execute(new Runnable() {
+      @Override
+      public void run() {
+        buildAndSendPayload(sessionResult, resultCallback);
+      }
+    });
+  }
+
+  // runs on the payload thread: builds payload, then starts the upload
+  // payload is kept until response received, so it could be deferred if connection is lost
+  private void buildAndSendPayload(FaceTecSessionResult sessionResult, final FaceTecFaceScanResultCallback resultCallback) {
+    final RequestBody payload;
+
     try {
-      // same request as on web
-      // { faceScan, auditTrailImage, lowQualityAuditTrailImage, sessionId, fvSigner }
-      payload.put("faceScan", lastResult.getFaceScanBase64());
-      payload.put("auditTrailImage", lastResult.getAuditTrailCompressedBase64()[0]);
-      payload.put("lowQualityAuditTrailImage", lastResult.getLowQualityAuditTrailCompressedBase64()[0]);
-      payload.put("sessionId", lastResult.getSessionId());
-      payload.put("fvSigner", this.v1Identifier);
-
-      // if no chainId then DO NOT send chainId in body
-      if (this.chainId != null) {
-        payload.put("chainId", this.chainId);
+      boolean withAuditTrailImage = shouldSendAuditTrailImage();
+
+      // send binary multipart if server supports it, otherwise the same JSON request as on web
+      if (client.getCapabilities().supportsMultipartUpload()) {
+        payload = createMultipartPayload(sessionResult, withAuditTrailImage);
+      } else {
+        payload = createJSONPayload(sessionResult, withAuditTrailImage);
       }
     } catch(Exception e) {
-      lastMessage = "Exception raised while attempting to create JSON payload for upload.";
-      resultCallback.cancel();
+      SessionExecutors.main().execute(new Runnable() {
+        @Override
+        public void run() {
+          lastMessage = "Exception raised while attempting to create JSON payload for upload.";
+          resultCallback.cancel();
+        }
+      });
+
+      return;
     }
 
-    RequestBody request = createEnrollmentRequest(payload);
-    FaceVerification.enroll(enrollmentIdentifier, request, timeout, new FaceVerification.APICallback() {
-      @Override
-      public void onSuccess(JSONObject response) { // same logic as on web
-        String successMessage = Customization.resultSuccessMessage;
-        JSONObject enrollmentResult = getEnrollmentResult(response);
-        String resultBlob = enrollmentResult.optString("resultBlob"); // response.data.resultBlob
+    metrics.mark(SessionMetrics.Mark.PAYLOAD_BUILT);
+    sessionResult = null;
 
-        resultCallback.uploadProgress(1);
+    // no network - do not even try, queue enrollment to be uploaded later (if spooling is available)
+    if (!NetworkingHelpers.isOnline(context) && DeferredEnrollments.defer(client, enrollmentIdentifier, payload)) {
+      SessionExecutors.main().execute(new Runnable() {
+        @Override
+        public void run() {
+          onEnrollmentDeferred();
+        }
+      });
 
-        // no result blob - throw unknown error
-        if (resultBlob == null) {
-          FaceVerification.APIException exception = new FaceVerification.APIException(
-            FaceVerification.unexpectedMessage, response
-          );
+      return;
+    }
 
-          EnrollmentProcessor.this.handleEnrollmentError(exception);
-          return;
-        }
+    // response is handled on the main thread, as it calls FaceTec SDK
+    final FaceVerification.APICallback<EnrollmentResponse> enrollmentCallback = new FaceVerification.APICallback<EnrollmentResponse>() {
+      @Override
+      public void onSuccess(final EnrollmentResponse response) {
+        metrics.mark(SessionMetrics.Mark.RESPONSE_RECEIVED);
+
+        SessionExecutors.main().execute(new Runnable() {
+          @Override
+          public void run() {
+            onEnrollmentSucceeded(response, resultCallback);
+          }
+        });
+      }
 
-        // GoodServer returs only success blob
-        // any specific error as dup or low quality 
-        // throws exception and is processed at onFailure
-        EnrollmentProcessor.this.isSuccess = true; // set success sate & message
-        EnrollmentProcessor.this.lastMessage = successMessage;
-        FaceTecCustomization.overrideResultScreenSuccessMessage = successMessage; // show unicorn greeting at UI
+      @Override
+      public void onFailure(final FaceVerification.APIException exception) {
+        metrics.mark(SessionMetrics.Mark.RESPONSE_RECEIVED);
 
-        // finish flow with OK
-        resultCallback.succeed();
-        resultCallback.proceedToNextStep(resultBlob);
+        SessionExecutors.main().execute(new Runnable() {
+          @Override
+          public void run() {
+            onEnrollmentFailed(exception, payload, resultCallback);
+          }
+        });
       }
+    };
+
+    // upload timeout starts right now, but the upload couldn't outlast the session
+    Deadline uploadDeadline = Deadline.earliest(deadline, timeout != null ? Deadline.after(timeout, TimeUnit.MILLISECONDS) : null);
+
+    // if server supports it, upload in resumable chunks. otherwise send the whole payload at once
+    if (client.getCapabilities().supportsChunkedUpload()) {
+      client.enrollInChunks(enrollmentIdentifier, payload, createProgressListener(), uploadDeadline, calls, enrollmentCallback);
+      return;
+    }
+
+    RequestBody request = createEnrollmentRequest(payload);
+    client.enroll(enrollmentIdentifier, request, uploadDeadline, calls, enrollmentCallback);
+  }
+
+  // same logic as on web
+  private void onEnrollmentSucceeded(EnrollmentResponse response, FaceTecFaceScanResultCallback resultCallback) {
+    String successMessage = Customization.resultSuccessMessage;
+
+    String resultBlob = response.getEnrollmentResult().getResultBlob(); // response.data.resultBlob
+
+    resultCallback.uploadProgress(1);
+
+    // no result blob - throw unknown error
+    if (resultBlob == null) {
+      FaceVerification.APIException exception = new FaceVerification.APIException(
+        FaceVerification.unexpectedMessage, response
+      );
+
+      handleEnrollmentError(exception);
+      return;
+    }
 
+    // GoodServer returs only success blob
+    // any specific error as dup or low quality 
+    // throws exception and is processed at onEnrollmentFailed
+    isSuccess = true; // set success sate & message
+    lastMessage = successMessage;
+    FaceTecCustomization.overrideResultScreenSuccessMessage = successMessage; // show unicorn greeting at UI
+
+    // finish flow with OK
+    resultCallback.succeed();
+    resultCallback.proceedToNextStep(resultBlob);
+  }
+
+  private void onEnrollmentFailed(
+    FaceVerification.APIException exception, RequestBody payload, FaceTecFaceScanResultCallback resultCallback
+  ) {
+    // connection lost during upload - spool payload and upload it later
+    if ((exception.getResponse() == null) && !calls.isCancelled() && !NetworkingHelpers.isOnline(context)) {
+      deferEnrollment(exception, payload, resultCallback);
+      return;
+    }
+
+    resultCallback.uploadProgress(1); // on any error set procressbar complete
+    handleEnrollmentError(exception); // and handle error
+  }
+
+  // spools payload on the payload thread, then finishes session as deferred
+  // if payload couldn't be spooled, the original error is handled as usual
+  private void deferEnrollment(
+    final FaceVerification.APIException exception, final RequestBody payload, final FaceTecFaceScanResultCallback resultCallback
+  ) {
+    SessionExecutors.payload().execute(new Runnable() {
       @Override
-      public void onFailure(FaceVerification.APIException exception) {
-        resultCallback.uploadProgress(1); // on any error set procressbar complete
-        EnrollmentProcessor.this.handleEnrollmentError(exception); // and handle error
+      public void run() {
+        final boolean isSpooled = DeferredEnrollments.defer(client, enrollmentIdentifier, payload);
+
+        SessionExecutors.main().execute(new Runnable() {
+          @Override
+          public void run() {
+            if (isSpooled) {
+              onEnrollmentDeferred();
+              return;
+            }
+
+            resultCallback.uploadProgress(1);
+            handleEnrollmentError(exception);
+          }
+        });
       }
     });
   }
 
   // handles enrollment error. logic the same as on web
   private void handleEnrollmentError(FaceVerification.APIException exception) {
-    JSONObject response = exception.getResponse();
+    APIResponse response = exception.getResponse();
+
+    if (exception instanceof FaceVerification.DeadlineExceededException) {
+      // no retries if session budget has been used up
+      if ((deadline != null) && deadline.isExpired()) {
+        onDeadlineExceeded();
+        return;
+      }
+
+      // otherwise upload has timed out, session fails as on the other network errors
+      lastMessage = "Enrollment request timed out";
+      lastResultCallback.cancel();
+      return;
+    }
+
+    // session has been cancelled - no retries as well
+    if (exception instanceof FaceVerification.CancelledException) {
+      lastResultCallback.cancel();
+      return;
+    }
 
     // by default we'll use exception's message as lastMessage
     lastMessage = exception.getMessage();
 
-    if (response != null) {
-      JSONObject enrollmentResult = getEnrollmentResult(response);
+    if (response instanceof EnrollmentResponse) {
+      EnrollmentResponse.EnrollmentResult enrollmentResult = ((EnrollmentResponse) response).getEnrollmentResult();
 
       // if isDuplicate is strictly true, that means we have dup face
-      boolean isDuplicateIssue = enrollmentResult.optBoolean("isDuplicate", false);
-      boolean is3DMatchIssue = enrollmentResult.optBoolean("isNotMatch", false);
-      boolean isEnrolled = enrollmentResult.optBoolean("isEnrolled", false);
-      // in JS code we're checking for false === isLive strictly. so if no isLive flag in the response,
-      // we assume that liveness check was successfull. That's why we're setting true as fallback value
-      boolean isLivenessIssue = enrollmentResult.optBoolean("isLive", true);
+      boolean isDuplicateIssue = enrollmentResult.isDuplicate();
+      boolean is3DMatchIssue = enrollmentResult.isNotMatch();
+      boolean isEnrolled = enrollmentResult.isEnrolled();
+      // isLive defaults to true if server hasn't sent the flag (see EnrollmentResult)
+      boolean isLivenessIssue = enrollmentResult.isLive();
       // getting result Blob to use in the retry case
-      String resultBlob = enrollmentResult.optString("resultBlob");
+      String resultBlob = enrollmentResult.getResultBlob();
 
       // if there's no duplicate / 3d match issues but we have
       // liveness issue strictly - we'll check for possible session retry
@@ -290,14 +830,18 @@ public class EnrollmentProcessor implements FaceTecFaceScanProcessor {
     lastResultCallback.cancel();
   }
 
-  //  reads response.data.enrollmentResult from GoodServer enroll response
-  private JSONObject getEnrollmentResult(JSONObject response) {
-    JSONObject enrollmentResult = response.optJSONObject("enrollmentResult");
-
-    if (enrollmentResult == null) {
-      return new JSONObject();
-    }
+  // cancels FaceTec session, it will be rejected with the deferred status once UI closed
+  private void onEnrollmentDeferred() {
+    isDeferred = true;
+    lastMessage = "No internet connection. Verification will be completed once device is online";
+    lastResultCallback.cancel();
+  }
 
-    return enrollmentResult;
+  // cancels FaceTec session, it will be rejected with the deadline status once UI closed
+  private void onDeadlineExceeded() {
+    isDeadlineExceeded = true;
+    lastMessage = "Verification session deadline exceeded";
+    calls.cancel();
+    lastResultCallback.cancel();
   }
 }
@@ -3,8 +3,13 @@ package org.gooddollar.facetec.processors;
 import java.lang.Throwable;
 import androidx.annotation.Nullable;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+import org.gooddollar.facetec.util.EventEmitter;
 import org.gooddollar.facetec.util.RCTPromise;
+import org.gooddollar.facetec.util.ExtendedSessionStatus;
+import org.gooddollar.facetec.util.SessionMetrics;
 
 import com.facetec.sdk.FaceTecSessionResult;
 import com.facetec.sdk.FaceTecSessionStatus;
@@ -13,28 +18,63 @@ import com.facetec.sdk.FaceTecSessionStatus;
 // for different flow cases / errors
 public class ProcessingSubscriber {
   private Promise promise;
+  private final SessionMetrics metrics;
+  // sent with the metrics event, so JS could match it to the enroll() call
+  @Nullable private final String enrollmentIdentifier;
+  // promise is settled once, the later calls (e.g. from the preempted session) are ignored
+  private boolean isFinished = false;
+  @Nullable private Runnable onFinished = null;
 
   // wraps native => JS promise interface
   public ProcessingSubscriber(Promise promise) {
+    this(promise, new SessionMetrics());
+  }
+
+  // metrics are collected by the module & processor during the session
+  public ProcessingSubscriber(Promise promise, SessionMetrics metrics) {
+    this(promise, metrics, null);
+  }
+
+  public ProcessingSubscriber(Promise promise, SessionMetrics metrics, @Nullable String enrollmentIdentifier) {
     this.promise = promise;
+    this.metrics = metrics;
+    this.enrollmentIdentifier = enrollmentIdentifier;
+  }
+
+  public SessionMetrics getMetrics() {
+    return metrics;
+  }
+
+  // sets callback called once the promise is settled (e.g. to release the session)
+  public void setOnSessionFinished(@Nullable Runnable onFinished) {
+    this.onFinished = onFinished;
   }
 
   // completion handler
   public void onProcessingComplete(boolean isSuccess, @Nullable FaceTecSessionResult sessionResult, @Nullable String sessionMessage) {
+    onProcessingComplete(isSuccess, sessionResult != null ? sessionResult.getStatus() : null, sessionMessage);
+  }
+
+  // the same, but receives just session status, so the processor doesn't need to keep the whole result
+  public void onProcessingComplete(boolean isSuccess, @Nullable FaceTecSessionStatus sessionStatus, @Nullable String sessionMessage) {
     // if success - resolve with message given
+    // metrics are sent with the event delivered right before, JS wrapper attaches them to the result
     if (isSuccess == true) {
-      promise.resolve(sessionMessage);
+      if (onSessionFinished() != null) {
+        promise.resolve(sessionMessage);
+      }
+
       return;
     }
 
     // if fv result is empty - something unexpected happened, reject
-    if (sessionResult == null) {
+    if (sessionStatus == null) {
       throwUnexpectedError("Session could not be completed due to an unexpected issue during the network request.");
       return;
     }
 
     // if session (capturing/enrollment) result exists - reject with corresponding status and (optional) message
-    RCTPromise.rejectWith(promise, sessionResult.getStatus(), sessionMessage);
+    reject(sessionStatus, sessionMessage);
   }
 
   // helpers for some particular error cases
@@ -45,14 +85,89 @@ public class ProcessingSubscriber {
   }
 
   public void onSessionContextSwitch() {
-    RCTPromise.rejectWith(promise, FaceTecSessionStatus.CONTEXT_SWITCH);
+    reject(FaceTecSessionStatus.CONTEXT_SWITCH, null);
   }
 
   public void onCameraAccessError() {
-    RCTPromise.rejectWith(promise, FaceTecSessionStatus.CAMERA_PERMISSION_DENIED);
+    reject(FaceTecSessionStatus.CAMERA_PERMISSION_DENIED, null);
+  }
+
+  public void onDeadlineExceeded() {
+    reject(ExtendedSessionStatus.DEADLINE_EXCEEDED, null);
+  }
+
+  public void onEnrollmentDeferred(@Nullable String sessionMessage) {
+    reject(ExtendedSessionStatus.ENROLLMENT_DEFERRED, sessionMessage);
+  }
+
+  public void onAlreadyEnrolled() {
+    reject(ExtendedSessionStatus.ALREADY_ENROLLED, "Face is already enrolled");
+  }
+
+  public void onDuplicateEnrollment() {
+    reject(ExtendedSessionStatus.DUPLICATE_ENROLLMENT, "Face is already enrolled for another account");
   }
 
   private void throwUnexpectedError(String message) {
-    RCTPromise.rejectWith(promise, FaceTecSessionStatus.UNKNOWN_INTERNAL_ERROR, message);
+    reject(FaceTecSessionStatus.UNKNOWN_INTERNAL_ERROR, message);
+  }
+
+  // rejects with { metrics } attached, if session hasn't been finished yet
+  private void reject(FaceTecSessionStatus status, @Nullable String message) {
+    WritableMap userInfo = onSessionFinished();
+
+    if (userInfo != null) {
+      RCTPromise.rejectWith(promise, status, message, userInfo);
+    }
+  }
+
+  private void reject(ExtendedSessionStatus status, @Nullable String message) {
+    WritableMap userInfo = onSessionFinished();
+
+    if (userInfo != null) {
+      RCTPromise.rejectWith(promise, status, message, userInfo);
+    }
+  }
+
+  // marks session completed, sends metrics event and returns { metrics } to attach to the rejection
+  // returns null if session has been already finished, so promise is settled and metrics are sent once
+  @Nullable
+  private WritableMap onSessionFinished() {
+    WritableMap userInfo;
+
+    synchronized (this) {
+      if (isFinished) {
+        return null;
+      }
+
+      isFinished = true;
+    }
+
+    metrics.mark(SessionMetrics.Mark.COMPLETED);
+
+    // release the session first, so the retained heap is sampled without it
+    if (onFinished != null) {
+      onFinished.run();
+    }
+
+    metrics.sampleRetainedHeap();
+    dispatchMetrics();
+
+    userInfo = Arguments.createMap();
+    userInfo.putMap("metrics", metrics.toMap());
+    return userInfo;
+  }
+
+  // sends { ...metrics, enrollmentIdentifier } event, flushed before the promise is settled
+  // so JS wrapper receives it before enroll() result
+  private void dispatchMetrics() {
+    WritableMap eventData = metrics.toMap();
+
+    if (enrollmentIdentifier != null) {
+      eventData.putString("enrollmentIdentifier", enrollmentIdentifier);
+    }
+
+    EventEmitter.dispatch(EventEmitter.UXEvent.METRICS, eventData);
+    EventEmitter.flushNow();
   }
 }
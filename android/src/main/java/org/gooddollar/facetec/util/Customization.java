@@ -5,6 +5,7 @@ import android.graphics.Typeface;
 import androidx.annotation.Nullable;
 
 import com.facetec.sdk.R;
+import com.facetec.sdk.FaceTecSDK;
 import com.facetec.sdk.FaceTecCustomization;
 import com.facetec.sdk.FaceTecOverlayCustomization;
 import com.facetec.sdk.FaceTecCancelButtonCustomization;
@@ -15,11 +16,19 @@ import com.facetec.sdk.FaceTecGuidanceCustomization;
 import com.facetec.sdk.FaceTecResultScreenCustomization;
 import com.facetec.sdk.FaceTecVocalGuidanceCustomization;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.HashMap;
 
 import org.gooddollar.facetec.R.drawable;
 
+/*
+ * FaceTec UI customizations
+ *
+ * Customizations (normal, low light and dynamic dimming ones) are compiled from the Theme
+ * on the background thread, so neither module initialization nor JS thread pays for it.
+ * Compiled ones are cached by theme, SDK is updated only if the effective theme has changed
+ */
 public class Customization {
   private Customization() {}
 
@@ -27,45 +36,94 @@ public class Customization {
   final public static String resultFacescanUploadMessage = "Uploading Your face snapshot to verify";
   final public static String resultFacescanProcessingMessage = "Verifying you're\none of a kind";
 
-  final public static FaceTecCustomization UICustomization = basicCustomizationFactory();
-  final public static FaceTecCustomization LowLightModeCustomization = basicCustomizationFactory();
-  final public static FaceTecCustomization DynamicModeCustomization = basicCustomizationFactory();
   final public static Map<Integer, String> UITextStrings = new HashMap<>();
 
   final private static int black = Color.BLACK;
   final private static int white = Color.WHITE;
   final private static int whiteTransparent = 0x00ffffff;
-  final private static int whiteSemiTransparent = 0x80ffffff;
-  final private static int green = Color.GREEN;
-  final private static int darkGray = Color.DKGRAY;
-  final private static int lightGray = Color.LTGRAY;
 
-  final private static int primary = 0xff00afff;
-  final private static int gray50Percent = 0xffcbcbcb;
+  // the last themes compiled, the least recently used one is evicted
+  final private static int cacheSize = 4;
+  final private static Map<Theme, Compiled> compiled = new LinkedHashMap<Theme, Compiled>(cacheSize, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Theme, Compiled> eldest) {
+      return size() > cacheSize;
+    }
+  };
+
+  // theme currently set to the SDK (accessed on the main thread only)
+  @Nullable private static Theme appliedTheme = null;
+
+  // customizations set compiled from the single theme
+  public static final class Compiled {
+    public final FaceTecCustomization normal;
+    public final FaceTecCustomization lowLight;
+    public final FaceTecCustomization dynamicDimming;
+
+    Compiled(FaceTecCustomization normal, FaceTecCustomization lowLight, FaceTecCustomization dynamicDimming) {
+      this.normal = normal;
+      this.lowLight = lowLight;
+      this.dynamicDimming = dynamicDimming;
+    }
+  }
 
-  final private static int defaultCornerRadius = 5;
-  final private static int buttonCornerRadius = 12;
+  public interface ApplyCallback {
+    // isChanged is false if the same theme has been already set
+    void onThemeApplied(boolean isChanged);
+  }
 
-  // "sans-serif" family resolves to the Roboto font
-  final private static Typeface defaultFont = Typeface.create("sans-serif", Typeface.NORMAL);
-  final private static Typeface mediumFont = Typeface.create("sans-serif-medium", Typeface.NORMAL);
-  final private static Typeface boldFont = Typeface.create("sans-serif", Typeface.BOLD);
+  // compiles theme (if not cached) on the background thread, then sets it to the SDK on the main one
+  public static void apply(final Theme theme, @Nullable final ApplyCallback callback) {
+    SessionExecutors.theme().execute(new Runnable() {
+      @Override
+      public void run() {
+        final Compiled customizations = compile(theme);
+
+        SessionExecutors.main().execute(new Runnable() {
+          @Override
+          public void run() {
+            boolean isChanged = !theme.equals(appliedTheme);
+
+            if (isChanged) {
+              FaceTecSDK.setCustomization(customizations.normal);
+              FaceTecSDK.setLowLightCustomization(customizations.lowLight);
+              FaceTecSDK.setDynamicDimmingCustomization(customizations.dynamicDimming);
+              appliedTheme = theme;
+            }
+
+            if (callback != null) {
+              callback.onThemeApplied(isChanged);
+            }
+          }
+        });
+      }
+    });
+  }
 
-  static {
-    // customize Dynamic dimming & low light mode UI
-    FaceTecGuidanceCustomization lowLightGuidance = LowLightModeCustomization.getGuidanceCustomization();
-    FaceTecGuidanceCustomization dynamicDimmingGuidance = DynamicModeCustomization.getGuidanceCustomization();
-    FaceTecCancelButtonCustomization dynamicDimmingButton = DynamicModeCustomization.getCancelButtonCustomization();
+  // returns cached customizations or compiles them from theme
+  public static Compiled compile(Theme theme) {
+    synchronized (compiled) {
+      Compiled customizations = compiled.get(theme);
 
-    // Dynamic dimming customizations
-    dynamicDimmingButton.customImage = drawable.facetec_cancel_white;
-    dynamicDimmingGuidance.readyScreenHeaderTextColor = black;
-    dynamicDimmingGuidance.readyScreenSubtextTextColor = black;
+      if (customizations != null) {
+        return customizations;
+      }
+    }
 
-    // Low light customizations
-    lowLightGuidance.readyScreenHeaderTextColor = white;
-    lowLightGuidance.readyScreenSubtextTextColor = white;
+    Compiled customizations = new Compiled(
+      basicCustomizationFactory(theme),
+      lowLightCustomizationFactory(theme),
+      dynamicDimmingCustomizationFactory(theme)
+    );
 
+    synchronized (compiled) {
+      compiled.put(theme, customizations);
+    }
+
+    return customizations;
+  }
+
+  static {
     // override locale strings
     UITextStrings.put(R.string.FaceTec_result_success_message, resultSuccessMessage);
     UITextStrings.put(R.string.FaceTec_result_facescan_upload_message, resultFacescanUploadMessage);
@@ -78,9 +136,39 @@ public class Customization {
     UITextStrings.put(R.string.FaceTec_instructions_message_ready_2, "Oval, Then The Big Oval");
   }
 
-  final private static FaceTecCustomization basicCustomizationFactory() {
+  // Low light customizations
+  final private static FaceTecCustomization lowLightCustomizationFactory(Theme theme) {
+    FaceTecCustomization customization = basicCustomizationFactory(theme);
+    FaceTecGuidanceCustomization lowLightGuidance = customization.getGuidanceCustomization();
+
+    lowLightGuidance.readyScreenHeaderTextColor = white;
+    lowLightGuidance.readyScreenSubtextTextColor = white;
+    return customization;
+  }
+
+  // Dynamic dimming customizations
+  final private static FaceTecCustomization dynamicDimmingCustomizationFactory(Theme theme) {
+    FaceTecCustomization customization = basicCustomizationFactory(theme);
+    FaceTecGuidanceCustomization dynamicDimmingGuidance = customization.getGuidanceCustomization();
+    FaceTecCancelButtonCustomization dynamicDimmingButton = customization.getCancelButtonCustomization();
+
+    dynamicDimmingButton.customImage = drawable.facetec_cancel_white;
+    dynamicDimmingGuidance.readyScreenHeaderTextColor = black;
+    dynamicDimmingGuidance.readyScreenSubtextTextColor = black;
+    return customization;
+  }
+
+  final private static FaceTecCustomization basicCustomizationFactory(Theme theme) {
     FaceTecCustomization customization = new FaceTecCustomization();
 
+    // Typeface.create() caches typefaces by family, so these are cheap for the same theme font
+    final int primary = theme.primaryColor;
+    final int defaultCornerRadius = theme.cornerRadius;
+    final boolean isDefaultFont = Theme.defaultFontFamily.equals(theme.fontFamily);
+    final Typeface defaultFont = Typeface.create(theme.fontFamily, Typeface.NORMAL);
+    final Typeface mediumFont = Typeface.create(isDefaultFont ? "sans-serif-medium" : theme.fontFamily, Typeface.NORMAL);
+    final Typeface boldFont = Typeface.create(theme.fontFamily, Typeface.BOLD);
+
     // customize UI
     FaceTecOverlayCustomization overlay = customization.getOverlayCustomization();
     FaceTecCancelButtonCustomization cancelButton = customization.getCancelButtonCustomization();
@@ -93,7 +181,7 @@ public class Customization {
 
     // removing branding image from overlay
     overlay.showBrandingImage = false;
-    overlay.backgroundColor = whiteSemiTransparent;
+    overlay.backgroundColor = theme.overlayColor;
 
     // setting custom location & image of cancel button
     cancelButton.setLocation(FaceTecCancelButtonCustomization.ButtonLocation.TOP_RIGHT);
@@ -109,8 +197,8 @@ public class Customization {
     // setting oval border color & width
     oval.strokeWidth = 6;
     oval.strokeColor = primary;
-    oval.progressColor1 = green;
-    oval.progressColor2 = green;
+    oval.progressColor1 = theme.successColor;
+    oval.progressColor2 = theme.successColor;
 
     // frame (zoom's popup) customizations
     // setting frame border, radius & elevation
@@ -120,16 +208,16 @@ public class Customization {
     frame.elevation = 19;
 
     // setting Zoom UI background color
-    frame.backgroundColor = white;
+    frame.backgroundColor = theme.backgroundColor;
 
     // guidance screens ("frame your face", "retry" etc) customizations
     // setting setting Zoom UI default text color
-    guidance.foregroundColor = darkGray;
+    guidance.foregroundColor = theme.foregroundColor;
 
     // customizing buttons
     guidance.buttonFont = defaultFont;
     guidance.buttonBorderWidth = 0;
-    guidance.buttonCornerRadius = buttonCornerRadius;
+    guidance.buttonCornerRadius = theme.buttonCornerRadius;
     guidance.buttonTextNormalColor = white;
     guidance.buttonTextHighlightColor = white;
     guidance.buttonTextDisabledColor = white;
@@ -150,12 +238,12 @@ public class Customization {
     guidance.retryScreenImageCornerRadius = defaultCornerRadius;
 
     // customizing result screen - progress bar & success animation
-    resultScreen.foregroundColor = darkGray;
+    resultScreen.foregroundColor = theme.foregroundColor;
     resultScreen.messageFont = defaultFont;
     resultScreen.showUploadProgressBar = true;
     resultScreen.uploadProgressFillColor = primary;
-    resultScreen.uploadProgressTrackColor = lightGray;
-    resultScreen.resultAnimationBackgroundColor = white;
+    resultScreen.uploadProgressTrackColor = theme.progressTrackColor;
+    resultScreen.resultAnimationBackgroundColor = theme.backgroundColor;
     resultScreen.resultAnimationForegroundColor = primary;
     resultScreen.customActivityIndicatorImage = drawable.facetec_activity_indicator;
     resultScreen.customActivityIndicatorRotationInterval = 3000;
@@ -1,30 +1,70 @@
 package org.gooddollar.facetec.util;
 
 import androidx.annotation.Nullable;
+import android.os.Handler;
+import android.os.Looper;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
 import java.util.HashMap;
 
+/*
+ * Native => JS events channel
+ *
+ * Events aren't emitted one by one: they're queued and sent once per frame as the single
+ * BATCH_EVENT [{ event, data }] bridge call (JS wrapper dispatches them to the listeners).
+ * - events dispatched before register() are kept until the emitter is attached
+ * - queue is bounded, the oldest events are dropped on overflow
+ * - coalescing events (e.g. progress) replace the queued one of the same type, so only the latest is sent
+ */
 public final class EventEmitter {
   private EventEmitter() {}
-  private static DeviceEventManagerModule.RCTDeviceEventEmitter rctEventEmitter;
+
+  public static final String BATCH_EVENT = "onEventBatch";
+
+  private static final int capacity = 64;
+  private static final long batchInterval = 16; // ms, one frame
+
+  private static DeviceEventManagerModule.RCTDeviceEventEmitter rctEventEmitter = null;
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  private static final Deque<PendingEvent> pending = new ArrayDeque<>();
+  private static boolean isFlushScheduled = false;
+
+  private static long dispatchedCount = 0;
+  private static long batchesCount = 0;
+  private static long coalescedCount = 0;
+  private static long droppedCount = 0;
 
   // event type enum
-  // defined as enum class 
+  // defined as enum class
   // as have string (non - int) values
   public static enum UXEvent {
     UI_READY("onUIReady"),
     CAPTURE_DONE("onCaptureDone"),
-    FV_RETRY("onRetry");
+    FV_RETRY("onRetry"),
+    UPLOAD_PROGRESS("onUploadProgress", true),
+    DEFERRED_ENROLLMENT("onDeferredEnrollment"),
+    ACCESS_TOKEN_REQUIRED("onAccessTokenRequired"),
+    METRICS("onMetrics");
 
     private final String eventName;
+    // each next event supersedes the previous one, so only the latest queued is sent
+    private final boolean isCoalescing;
 
     UXEvent(String eventName) {
+      this(eventName, false);
+    }
+
+    UXEvent(String eventName, boolean isCoalescing) {
       this.eventName = eventName;
+      this.isCoalescing = isCoalescing;
     }
 
     public String eventName() {
@@ -44,13 +84,51 @@ public final class EventEmitter {
     }
   }
 
+  // channel counters snapshot
+  public static final class Stats {
+    public final long dispatched;
+    public final long batches;
+    public final long coalesced;
+    public final long dropped;
+
+    Stats(long dispatched, long batches, long coalesced, long dropped) {
+      this.dispatched = dispatched;
+      this.batches = batches;
+      this.coalesced = coalesced;
+      this.dropped = dropped;
+    }
+  }
+
+  private static final class PendingEvent {
+    final UXEvent event;
+    @Nullable WritableMap body;
+
+    PendingEvent(UXEvent event, @Nullable WritableMap body) {
+      this.event = event;
+      this.body = body;
+    }
+  }
+
+  private static final Runnable flush = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
   // connects EventEmitter to the react context
   public static void register(ReactApplicationContext reactContext) {
     // fetches event emitter from context and stores to the class var
     // this reference will be used to send events from native to JS
-    rctEventEmitter = reactContext.getJSModule(
+    DeviceEventManagerModule.RCTDeviceEventEmitter emitter = reactContext.getJSModule(
       DeviceEventManagerModule.RCTDeviceEventEmitter.class
     );
+
+    synchronized (EventEmitter.class) {
+      rctEventEmitter = emitter;
+      // send events buffered before registration (if any)
+      scheduleFlush();
+    }
   }
 
   // overload to send event without data
@@ -58,8 +136,76 @@ public final class EventEmitter {
     dispatch(event, null);
   }
 
-  // send event with data. just re-calls native => js event emitter
-  public static void dispatch(UXEvent event, @Nullable WritableMap body) {
-    rctEventEmitter.emit(event.eventName(), body);
+  // queues event to be sent with the next batch
+  public static synchronized void dispatch(UXEvent event, @Nullable WritableMap body) {
+    dispatchedCount += 1;
+
+    if (event.isCoalescing) {
+      for (PendingEvent queued : pending) {
+        if (queued.event == event) {
+          queued.body = body;
+          coalescedCount += 1;
+          return;
+        }
+      }
+    }
+
+    if (pending.size() >= capacity) {
+      pending.pollFirst();
+      droppedCount += 1;
+    }
+
+    pending.addLast(new PendingEvent(event, body));
+    scheduleFlush();
+  }
+
+  // sends queued events right away, e.g. the ones JS should receive before the promise is settled
+  public static synchronized void flushNow() {
+    if ((rctEventEmitter == null) || pending.isEmpty()) {
+      return;
+    }
+
+    handler.removeCallbacks(flush);
+    flush();
+  }
+
+  public static synchronized Stats getStats() {
+    return new Stats(dispatchedCount, batchesCount, coalescedCount, droppedCount);
+  }
+
+  private static void scheduleFlush() {
+    if (isFlushScheduled || (rctEventEmitter == null) || pending.isEmpty()) {
+      return;
+    }
+
+    isFlushScheduled = true;
+    handler.postDelayed(flush, batchInterval);
+  }
+
+  // emits under the lock, so the batches flushed from different threads are sent in order
+  private static void flush() {
+    WritableArray batch = Arguments.createArray();
+
+    synchronized (EventEmitter.class) {
+      isFlushScheduled = false;
+
+      for (PendingEvent queued : pending) {
+        WritableMap item = Arguments.createMap();
+
+        item.putString("event", queued.event.eventName());
+
+        if (queued.body != null) {
+          item.putMap("data", queued.body);
+        } else {
+          item.putNull("data");
+        }
+
+        batch.pushMap(item);
+      }
+
+      pending.clear();
+      batchesCount += 1;
+      rctEventEmitter.emit(BATCH_EVENT, batch);
+    }
   }
 }
@@ -0,0 +1,42 @@
+package org.gooddollar.facetec.util;
+
+import java.util.Map;
+import java.util.HashMap;
+
+// session statuses the module could finish session with in addition to the FaceTec's ones
+// codes are exported to JS along with FaceTecSessionStatus and don't intersect with its values
+public enum ExtendedSessionStatus {
+  DEADLINE_EXCEEDED("DeadlineExceeded", 100),
+  // device is offline, enrollment has been saved and will be uploaded later
+  ENROLLMENT_DEFERRED("EnrollmentDeferred", 101),
+  // pre-capture status check: identifier is already enrolled / known as duplicate, capturing was skipped
+  ALREADY_ENROLLED("AlreadyEnrolled", 102),
+  DUPLICATE_ENROLLMENT("DuplicateEnrollment", 103);
+
+  private final String statusName;
+  private final int code;
+
+  ExtendedSessionStatus(String statusName, int code) {
+    this.statusName = statusName;
+    this.code = code;
+  }
+
+  public String statusName() {
+    return statusName;
+  }
+
+  public int code() {
+    return code;
+  }
+
+  // helper method used to export enum to JS constants
+  public static Map<String, Integer> toMap() {
+    Map<String, Integer> enumMap = new HashMap<>();
+
+    for (ExtendedSessionStatus enumItem : ExtendedSessionStatus.values()) {
+      enumMap.put(enumItem.statusName(), enumItem.code());
+    }
+
+    return enumMap;
+  }
+}
@@ -3,6 +3,7 @@ package org.gooddollar.facetec.util;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.util.SparseArray;
+import java.lang.ref.WeakReference;
 
 import com.facebook.react.bridge.Callback;
 import com.facebook.react.modules.core.PermissionListener;
@@ -11,7 +12,8 @@ import com.facebook.react.modules.core.PermissionAwareActivity;
 // Utility to request camera permissions
 // uses common approach, nothing FV-specific here
 public class Permissions implements PermissionListener {
-  private Context context;
+  // activity, referenced weakly as permissions helper lives as long as the FV session
+  private final WeakReference<Context> context;
 
   private final SparseArray<PermissionsRequest> mRequests = new SparseArray<PermissionsRequest>();
   private int mRequestCode = 0;
@@ -32,7 +34,7 @@ public class Permissions implements PermissionListener {
   }
 
   public Permissions(Context context) {
-    this.context = context;
+    this.context = new WeakReference<>(context);
   }
 
   // receives callback class instance should have onSuccess() and onFailure() methods defined
@@ -82,7 +84,7 @@ public class Permissions implements PermissionListener {
   }
 
   private PermissionAwareActivity getPermissionAwareActivity() {
-    Context ctx = this.context;
+    Context ctx = this.context.get();
 
     if (ctx == null) {
       throw new IllegalStateException(
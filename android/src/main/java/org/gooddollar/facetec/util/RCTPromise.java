@@ -3,6 +3,7 @@ package org.gooddollar.facetec.util;
 import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
 
 import com.facetec.sdk.FaceTecSessionStatus;
 import com.facetec.sdk.FaceTecSDKStatus;
@@ -18,7 +19,7 @@ public final class RCTPromise {
   }
 
   public static void rejectWith(Promise promise, FaceTecSDKStatus status, @Nullable String message) {
-    rejectWithStatus(promise, status, message);
+    rejectWithStatus(promise, status, message, null);
   }
 
   public static void rejectWith(Promise promise, FaceTecSessionStatus status) {
@@ -26,11 +27,35 @@ public final class RCTPromise {
   }
 
   public static void rejectWith(Promise promise, FaceTecSessionStatus status, @Nullable String message) {
-    rejectWithStatus(promise, status, message);
+    rejectWithStatus(promise, status, message, null);
+  }
+
+  // userInfo (e.g. session metrics) is available in JS as error.userInfo
+  public static void rejectWith(Promise promise, FaceTecSessionStatus status, @Nullable String message, @Nullable WritableMap userInfo) {
+    rejectWithStatus(promise, status, message, userInfo);
+  }
+
+  public static void rejectWith(Promise promise, ExtendedSessionStatus status) {
+    rejectWith(promise, status, null);
+  }
+
+  public static void rejectWith(Promise promise, ExtendedSessionStatus status, @Nullable String message) {
+    rejectWith(promise, status, message, null);
+  }
+
+  // module-specific statuses have explicit codes instead of ordinals
+  public static void rejectWith(Promise promise, ExtendedSessionStatus status, @Nullable String message, @Nullable WritableMap userInfo) {
+    String reason = message;
+
+    if (reason == null) {
+      reason = status.toString();
+    }
+
+    reject(promise, status.code(), reason, userInfo);
   }
 
   // overloads "aggregator" receiving all params possible
-  private static <T extends Enum<T>> void rejectWithStatus(Promise promise, Enum<T> status, @Nullable String message) {
+  private static <T extends Enum<T>> void rejectWithStatus(Promise promise, Enum<T> status, @Nullable String message, @Nullable WritableMap userInfo) {
     String reason = message;
     int code = status.ordinal(); // convert enum item to integer code
 
@@ -39,6 +64,15 @@ public final class RCTPromise {
     }
 
     // reject with code & message
-    promise.reject(String.valueOf(code), reason);
+    reject(promise, code, reason, userInfo);
+  }
+
+  private static void reject(Promise promise, int code, String reason, @Nullable WritableMap userInfo) {
+    if (userInfo == null) {
+      promise.reject(String.valueOf(code), reason);
+      return;
+    }
+
+    promise.reject(String.valueOf(code), reason, userInfo);
   }
 }
\ No newline at end of file
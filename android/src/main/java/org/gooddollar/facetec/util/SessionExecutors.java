@@ -0,0 +1,70 @@
+package org.gooddollar.facetec.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Threads verification session work is done on
+ *
+ * - payload: single background thread building and serializing enrollment payload
+ *   (several megabytes of base64 copies). Serial, so payloads of the subsequent
+ *   sessions / retries never compete for memory and CPU
+ * - theme: single background thread compiling UI themes. Separate, so setTheme() called
+ *   while the payload is being built neither waits for it nor delays it. Serial, so themes
+ *   are applied in the order they were set
+ * - main: hand-off to the UI thread. FaceTec SDK (session launch, FaceTecFaceScanResultCallback)
+ *   is called only from here, OkHttp & other background callbacks are posted to it in order
+ */
+public final class SessionExecutors {
+  private SessionExecutors() {}
+
+  private static ExecutorService _payload = null;
+  private static ExecutorService _theme = null;
+
+  private static final Executor _main = new Executor() {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable runnable) {
+      // always posted (even from the main thread) to keep the order tasks were submitted in
+      handler.post(runnable);
+    }
+  };
+
+  public static synchronized Executor payload() {
+    if (_payload == null) {
+      _payload = newSerialExecutor("FaceTec-Payload");
+    }
+
+    return _payload;
+  }
+
+  public static synchronized Executor theme() {
+    if (_theme == null) {
+      _theme = newSerialExecutor("FaceTec-Theme");
+    }
+
+    return _theme;
+  }
+
+  public static Executor main() {
+    return _main;
+  }
+
+  private static ExecutorService newSerialExecutor(final String threadName) {
+    return Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, threadName);
+
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+}
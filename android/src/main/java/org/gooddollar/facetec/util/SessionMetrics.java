@@ -0,0 +1,135 @@
+package org.gooddollar.facetec.util;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+// verification session phases timing & heap usage
+// timestamps are taken from the monotonic clock, so wall clock changes don't affect durations
+public final class SessionMetrics {
+  // session milestones in the order they're reached
+  public static enum Mark {
+    STARTED,
+    PERMISSIONS_GRANTED,
+    TOKEN_RECEIVED,
+    SESSION_LAUNCHED,
+    UI_READY,
+    CAPTURE_DONE,
+    PAYLOAD_BUILT,
+    UPLOAD_DONE,
+    RESPONSE_RECEIVED,
+    COMPLETED
+  }
+
+  // phase name, start mark, end mark
+  private static final Object[][] phases = {
+    {"permissions", Mark.STARTED, Mark.PERMISSIONS_GRANTED},
+    {"sessionToken", Mark.PERMISSIONS_GRANTED, Mark.TOKEN_RECEIVED},
+    {"launch", Mark.SESSION_LAUNCHED, Mark.UI_READY},
+    {"capture", Mark.UI_READY, Mark.CAPTURE_DONE},
+    {"payload", Mark.CAPTURE_DONE, Mark.PAYLOAD_BUILT},
+    {"upload", Mark.PAYLOAD_BUILT, Mark.UPLOAD_DONE},
+    {"processing", Mark.UPLOAD_DONE, Mark.RESPONSE_RECEIVED},
+    {"resultScreen", Mark.RESPONSE_RECEIVED, Mark.COMPLETED},
+    {"total", Mark.STARTED, Mark.COMPLETED},
+  };
+
+  // System.nanoTime() the mark has been reached at, 0 if not reached
+  // if mark is reached many times (e.g. on capture retry), the last one is kept
+  private final long[] marks = new long[Mark.values().length];
+
+  // used heap (bytes) sampled on each mark / sampleHeap() call, -1 if not sampled
+  // baseline and retained are sampled after GC, so only the live objects are counted
+  private long baselineHeap = -1;
+  private long peakHeap = -1;
+  private long retainedHeap = -1;
+
+  public void mark(Mark mark) {
+    if (mark == Mark.STARTED) {
+      Runtime.getRuntime().gc();
+    }
+
+    synchronized (this) {
+      marks[mark.ordinal()] = System.nanoTime();
+      sampleHeap();
+
+      if (mark == Mark.STARTED) {
+        baselineHeap = peakHeap;
+      }
+    }
+  }
+
+  // samples heap used once session has been finished and released, so anything
+  // session has left referenced (e.g. scan data or payload) shows up as retained
+  public void sampleRetainedHeap() {
+    Runtime.getRuntime().gc();
+
+    synchronized (this) {
+      retainedHeap = usedHeap();
+    }
+  }
+
+  // records current heap usage, called also during the memory-heavy phases (payload, upload)
+  public synchronized void sampleHeap() {
+    peakHeap = Math.max(peakHeap, usedHeap());
+  }
+
+  public synchronized boolean hasReached(Mark mark) {
+    return marks[mark.ordinal()] != 0;
+  }
+
+  // { phases: { <phase>: millis }, marks: { <MARK>: millis since session started },
+  //   memory: { baseline, peak, retained } (bytes, peak & retained are relative to baseline) }
+  // phases / marks not reached are omitted. new map is returned on each call
+  // as WritableMap couldn't be passed to the bridge twice
+  public synchronized WritableMap toMap() {
+    WritableMap result = Arguments.createMap();
+    WritableMap phaseDurations = Arguments.createMap();
+    WritableMap markOffsets = Arguments.createMap();
+    long startedAt = marks[Mark.STARTED.ordinal()];
+
+    for (Object[] phase : phases) {
+      long start = marks[((Mark) phase[1]).ordinal()];
+      long end = marks[((Mark) phase[2]).ordinal()];
+
+      if ((start != 0) && (end >= start)) {
+        phaseDurations.putDouble((String) phase[0], toMillis(end - start));
+      }
+    }
+
+    for (Mark mark : Mark.values()) {
+      long reachedAt = marks[mark.ordinal()];
+
+      if ((reachedAt != 0) && (startedAt != 0)) {
+        markOffsets.putDouble(mark.name(), toMillis(reachedAt - startedAt));
+      }
+    }
+
+    result.putMap("phases", phaseDurations);
+    result.putMap("marks", markOffsets);
+
+    if (baselineHeap >= 0) {
+      WritableMap memory = Arguments.createMap();
+
+      memory.putDouble("baseline", baselineHeap);
+      memory.putDouble("peak", peakHeap - baselineHeap);
+
+      if (retainedHeap >= 0) {
+        memory.putDouble("retained", retainedHeap - baselineHeap);
+      }
+
+      result.putMap("memory", memory);
+    }
+
+    return result;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
+}
@@ -0,0 +1,112 @@
+package org.gooddollar.facetec.util;
+
+import android.graphics.Color;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.Arrays;
+
+/*
+ * FaceTec UI theme passed from JS
+ *
+ * { primaryColor, foregroundColor, backgroundColor, overlayColor, successColor,
+ *   progressTrackColor, fontFamily, cornerRadius, buttonCornerRadius }
+ *
+ * Colors are ARGB integers (processColor() on the JS side), properties omitted are taken
+ * from the default theme. Immutable, equal themes have equal hash, so it's used as the
+ * compiled customizations cache key
+ */
+public final class Theme {
+  public static final String defaultFontFamily = "sans-serif"; // resolves to the Roboto font
+
+  public static final Theme DEFAULT = new Theme(
+    0xff00afff, Color.DKGRAY, Color.WHITE, 0x80ffffff, Color.GREEN, Color.LTGRAY, defaultFontFamily, 5, 12
+  );
+
+  final int primaryColor;
+  final int foregroundColor;
+  final int backgroundColor;
+  final int overlayColor;
+  final int successColor;
+  final int progressTrackColor;
+  final String fontFamily;
+  final int cornerRadius;
+  final int buttonCornerRadius;
+
+  private Theme(
+    int primaryColor, int foregroundColor, int backgroundColor, int overlayColor, int successColor,
+    int progressTrackColor, String fontFamily, int cornerRadius, int buttonCornerRadius
+  ) {
+    this.primaryColor = primaryColor;
+    this.foregroundColor = foregroundColor;
+    this.backgroundColor = backgroundColor;
+    this.overlayColor = overlayColor;
+    this.successColor = successColor;
+    this.progressTrackColor = progressTrackColor;
+    this.fontFamily = fontFamily;
+    this.cornerRadius = cornerRadius;
+    this.buttonCornerRadius = buttonCornerRadius;
+  }
+
+  // reads theme from JS object, null / missing properties are defaulted
+  public static Theme fromMap(@Nullable ReadableMap theme) {
+    if (theme == null) {
+      return DEFAULT;
+    }
+
+    return new Theme(
+      readInt(theme, "primaryColor", DEFAULT.primaryColor),
+      readInt(theme, "foregroundColor", DEFAULT.foregroundColor),
+      readInt(theme, "backgroundColor", DEFAULT.backgroundColor),
+      readInt(theme, "overlayColor", DEFAULT.overlayColor),
+      readInt(theme, "successColor", DEFAULT.successColor),
+      readInt(theme, "progressTrackColor", DEFAULT.progressTrackColor),
+      readString(theme, "fontFamily", DEFAULT.fontFamily),
+      readInt(theme, "cornerRadius", DEFAULT.cornerRadius),
+      readInt(theme, "buttonCornerRadius", DEFAULT.buttonCornerRadius)
+    );
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+
+    if (!(other instanceof Theme)) {
+      return false;
+    }
+
+    return Arrays.equals(values(), ((Theme) other).values());
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(values());
+  }
+
+  private Object[] values() {
+    return new Object[] {
+      primaryColor, foregroundColor, backgroundColor, overlayColor, successColor,
+      progressTrackColor, fontFamily, cornerRadius, buttonCornerRadius
+    };
+  }
+
+  private static int readInt(ReadableMap theme, String name, int defaultValue) {
+    if (!theme.hasKey(name) || theme.isNull(name)) {
+      return defaultValue;
+    }
+
+    // colors could be passed as unsigned 32-bit values
+    return (int) (long) theme.getDouble(name);
+  }
+
+  private static String readString(ReadableMap theme, String name, String defaultValue) {
+    if (!theme.hasKey(name) || theme.isNull(name)) {
+      return defaultValue;
+    }
+
+    return theme.getString(name);
+  }
+}
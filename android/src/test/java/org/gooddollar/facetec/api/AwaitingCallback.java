@@ -0,0 +1,76 @@
+package org.gooddollar.facetec.api;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.gooddollar.facetec.api.FaceVerification.APICallback;
+import org.gooddollar.facetec.api.FaceVerification.APIException;
+import org.gooddollar.facetec.api.FaceVerification.SessionTokenCallback;
+
+// API & session token callback the test could wait for
+final class AwaitingCallback<T extends APIResponse> implements APICallback<T>, SessionTokenCallback {
+  private static final long timeout = 10;
+
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile T response = null;
+  private volatile String sessionToken = null;
+  private volatile APIException exception = null;
+
+  @Override
+  public void onSuccess(T response) {
+    this.response = response;
+    done.countDown();
+  }
+
+  @Override
+  public void onSessionTokenReceived(String sessionToken) {
+    this.sessionToken = sessionToken;
+    done.countDown();
+  }
+
+  @Override
+  public void onFailure(APIException exception) {
+    this.exception = exception;
+    done.countDown();
+  }
+
+  boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  T awaitSuccess() throws InterruptedException {
+    await();
+
+    if (exception != null) {
+      throw new AssertionError("Call has failed", exception);
+    }
+
+    return response;
+  }
+
+  String awaitSessionToken() throws InterruptedException {
+    await();
+
+    if (exception != null) {
+      throw new AssertionError("Session token call has failed", exception);
+    }
+
+    return sessionToken;
+  }
+
+  APIException awaitFailure() throws InterruptedException {
+    await();
+
+    if (exception == null) {
+      throw new AssertionError("Call has succeeded");
+    }
+
+    return exception;
+  }
+
+  private void await() throws InterruptedException {
+    if (!done.await(timeout, TimeUnit.SECONDS)) {
+      throw new AssertionError("Callback hasn't been called in " + timeout + " seconds");
+    }
+  }
+}
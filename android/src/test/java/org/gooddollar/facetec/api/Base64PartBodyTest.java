@@ -0,0 +1,96 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Random;
+
+import okhttp3.MediaType;
+import okio.Buffer;
+import okio.ByteString;
+import org.junit.Test;
+
+public class Base64PartBodyTest {
+  private static final MediaType binary = MediaType.parse("application/octet-stream");
+
+  @Test
+  public void decodesWhileWriting() throws IOException {
+    // sizes around the scratch buffer boundaries and incomplete trailing groups
+    int[] sizes = { 0, 1, 2, 3, 4, 8190, 8191, 8192, 8193, 3 * 8192 + 2, 256 * 1024 + 1 };
+
+    for (int size : sizes) {
+      byte[] bytes = randomBytes(size);
+      Base64PartBody body = new Base64PartBody(binary, ByteString.of(bytes).base64());
+
+      assertEquals("content length of " + size + " bytes", size, body.contentLength());
+      assertArrayEquals("payload of " + size + " bytes", bytes, write(body));
+    }
+  }
+
+  @Test
+  public void skipsLineBreaksAndAcceptsUrlSafeAlphabet() throws IOException {
+    byte[] bytes = randomBytes(1000);
+    String base64 = ByteString.of(bytes).base64();
+    StringBuilder wrapped = new StringBuilder();
+
+    // MIME-like wrapping, as some encoders are doing
+    for (int offset = 0; offset < base64.length(); offset += 76) {
+      wrapped.append(base64, offset, Math.min(base64.length(), offset + 76)).append("\r\n");
+    }
+
+    assertArrayEquals(bytes, write(new Base64PartBody(binary, wrapped.toString())));
+    assertArrayEquals(bytes, write(new Base64PartBody(binary, ByteString.of(bytes).base64Url())));
+    assertEquals(1000, new Base64PartBody(binary, wrapped.toString()).contentLength());
+  }
+
+  @Test
+  public void failsOnInvalidCharacter() throws IOException {
+    try {
+      write(new Base64PartBody(binary, "QUJD*REVG"));
+      fail("invalid base64 has been decoded");
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void couldBeWrittenMoreThanOnce() throws IOException {
+    byte[] bytes = randomBytes(20000);
+    Base64PartBody body = new Base64PartBody(binary, ByteString.of(bytes).base64());
+
+    assertArrayEquals(bytes, write(body));
+    assertArrayEquals(bytes, write(body));
+  }
+
+  @Test
+  public void reusesScratchBuffers() {
+    byte[] first = BufferPool.acquire();
+    byte[] second = BufferPool.acquire();
+
+    assertNotSame(first, second);
+    assertEquals(BufferPool.bufferSize, first.length);
+
+    BufferPool.release(first);
+    assertSame(first, BufferPool.acquire());
+
+    BufferPool.release(first);
+    BufferPool.release(second);
+  }
+
+  private static byte[] write(Base64PartBody body) throws IOException {
+    Buffer buffer = new Buffer();
+
+    body.writeTo(buffer);
+    return buffer.readByteArray();
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,22 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertEquals;
+
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+public class CallTimingsTest {
+  @Test
+  public void replacesIdsInEndpoint() {
+    assertEquals("/verify/face/session", endpointOf("/verify/face/session"));
+    assertEquals("/verify/face/:id", endpointOf("/verify/face/0x5b1f3b2a"));
+    assertEquals("/verify/face/:id/status", endpointOf("/verify/face/0x5b1f3b2a/status"));
+    assertEquals("/verify/face/:id/upload/:id/:id", endpointOf("/verify/face/0x5b1f3b2a/upload/abc/2"));
+    assertEquals("/verify/face/:id/upload/:id/finalize", endpointOf("/verify/face/0x5b1f3b2a/upload/abc/finalize"));
+    assertEquals("/", endpointOf("/"));
+  }
+
+  private static String endpointOf(String path) {
+    return CallTimings.endpointOf(HttpUrl.parse("https://goodserver.gooddollar.org" + path));
+  }
+}
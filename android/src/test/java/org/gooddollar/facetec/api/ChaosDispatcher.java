@@ -0,0 +1,85 @@
+package org.gooddollar.facetec.api;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/*
+ * In-process GoodServer stand-in for the load / soak harness
+ *
+ * Answers session token and enrollment calls, injecting faults:
+ * - random latency (0..<latency> ms) before the response headers
+ * - bandwidth cap applied to both request and response bodies
+ * - connection resets: socket is closed right after the request has been read
+ * - bursts of 503 responses: once started, the next <burst - 1> calls are failing too
+ */
+final class ChaosDispatcher extends Dispatcher {
+  private final long latency;
+  private final long bytesPerSecond;
+  private final double resetRate;
+  private final double errorRate;
+  private final int burst;
+  private final Random random = new Random(42);
+
+  private int burstRemaining = 0;
+  final AtomicLong requests = new AtomicLong();
+  final AtomicLong resets = new AtomicLong();
+  final AtomicLong errors = new AtomicLong();
+
+  // latency in millis, bandwidth in bytes per second (0 - unlimited), rates are 0..1
+  ChaosDispatcher(long latency, long bytesPerSecond, double resetRate, double errorRate, int burst) {
+    this.latency = latency;
+    this.bytesPerSecond = bytesPerSecond;
+    this.resetRate = resetRate;
+    this.errorRate = errorRate;
+    this.burst = Math.max(1, burst);
+  }
+
+  @Override
+  public MockResponse dispatch(RecordedRequest request) {
+    MockResponse response;
+
+    requests.incrementAndGet();
+
+    synchronized (this) {
+      if (burstRemaining > 0 || random.nextDouble() < errorRate) {
+        burstRemaining = burstRemaining > 0 ? burstRemaining - 1 : burst - 1;
+        errors.incrementAndGet();
+        return throttle(new MockResponse().setResponseCode(503));
+      }
+
+      if (random.nextDouble() < resetRate) {
+        resets.incrementAndGet();
+        return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+      }
+
+      response = new MockResponse().setHeadersDelay(latency > 0 ? random.nextInt((int) latency + 1) : 0, TimeUnit.MILLISECONDS);
+    }
+
+    String path = request.getPath();
+
+    if ("/verify/face/session".equals(path)) {
+      return throttle(json(response, "{\"success\":true,\"sessionToken\":\"token-" + requests.get() + "\",\"expiresIn\":60}"));
+    }
+
+    if (path.startsWith("/verify/face/") && "PUT".equals(request.getMethod())) {
+      return throttle(json(response, "{\"success\":true,\"enrollmentResult\":{\"isEnrolled\":true,\"isLive\":true,\"resultBlob\":\"blob\"}}"));
+    }
+
+    return new MockResponse().setResponseCode(404);
+  }
+
+  // caps bandwidth by sending / receiving <bytesPerSecond / 10> bytes each 100ms
+  private MockResponse throttle(MockResponse response) {
+    return bytesPerSecond > 0 ? response.throttleBody(Math.max(1, bytesPerSecond / 10), 100, TimeUnit.MILLISECONDS) : response;
+  }
+
+  private static MockResponse json(MockResponse response, String body) {
+    return response.setHeader("Content-Type", "application/json").setBody(body);
+  }
+}
@@ -0,0 +1,225 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkedUploadTest {
+  private static final int chunkSize = 10000;
+  private static final MediaType JSON = MediaType.parse("application/json");
+
+  private MockWebServer server;
+  // chunks stored by the server
+  private final Map<Integer, byte[]> chunks = new ConcurrentHashMap<>();
+  private final Map<Integer, String> ranges = new ConcurrentHashMap<>();
+  // PUT requests received for each chunk, including the failed ones
+  private final Map<Integer, AtomicInteger> puts = new ConcurrentHashMap<>();
+  // chunk index => how many times it should fail, chunk the server "loses" before the status request
+  private final Map<Integer, Integer> failures = new ConcurrentHashMap<>();
+  private volatile int lostChunk = -1;
+  private final AtomicInteger statusRequests = new AtomicInteger();
+  private final AtomicInteger finalizeRequests = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath();
+
+        if (path.equals("/verify/face/session")) {
+          return json("{\"success\":true,\"sessionToken\":\"token\",\"capabilities\":{\"chunkedUpload\":{\"chunkSize\":" + chunkSize + "}}}");
+        }
+
+        if (path.equals("/verify/face/enrollment/upload")) {
+          return json("{\"success\":true,\"uploadId\":\"upload\",\"received\":[]}");
+        }
+
+        if (path.equals("/verify/face/enrollment/upload/upload")) {
+          statusRequests.incrementAndGet();
+
+          if (lostChunk >= 0) {
+            chunks.remove(lostChunk);
+          }
+
+          return json("{\"success\":true,\"uploadId\":\"upload\",\"received\":" + new TreeSet<>(chunks.keySet()) + "}");
+        }
+
+        if (path.equals("/verify/face/enrollment/upload/upload/finalize")) {
+          finalizeRequests.incrementAndGet();
+          return json("{\"success\":true,\"enrollmentResult\":{\"isEnrolled\":true,\"resultBlob\":\"blob\"}}");
+        }
+
+        int index = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+        Integer remainingFailures = failures.get(index);
+
+        puts.get(index).incrementAndGet();
+
+        // business error, isn't retried by the transport so the upload has to resume
+        if ((remainingFailures != null) && (remainingFailures > 0)) {
+          failures.put(index, remainingFailures - 1);
+          return new MockResponse().setResponseCode(500).setBody("{\"success\":false,\"error\":\"Chunk is corrupted\"}");
+        }
+
+        chunks.put(index, request.getBody().readByteArray());
+        ranges.put(index, request.getHeader("Content-Range"));
+        return json("{\"success\":true}");
+      }
+    });
+    server.start();
+
+    for (int index = 0; index < 10; index++) {
+      puts.put(index, new AtomicInteger());
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void sendsPayloadInChunks() throws Exception {
+    byte[] payload = randomBytes(5 * chunkSize + 123);
+
+    upload(RequestBody.create(JSON, payload)).awaitSuccess();
+    assertEquals(6, chunks.size());
+    assertArrayEquals(payload, assemble(payload.length));
+    assertEquals("bytes 0-9999/50123", ranges.get(0));
+    assertEquals("bytes 50000-50122/50123", ranges.get(5));
+    assertEquals(0, statusRequests.get());
+  }
+
+  @Test
+  public void resendsOnlyMissingChunksOnResume() throws Exception {
+    byte[] payload = randomBytes(6 * chunkSize);
+
+    failures.put(2, 1);
+    lostChunk = 0;
+
+    assertEquals("blob", upload(RequestBody.create(JSON, payload)).awaitSuccess().getEnrollmentResult().getResultBlob());
+    assertEquals(1, statusRequests.get());
+    assertEquals(1, finalizeRequests.get());
+    assertArrayEquals(payload, assemble(payload.length));
+
+    // failed and lost chunks are sent twice, the ones the server has reported as received - only once
+    for (int index = 0; index < 6; index++) {
+      assertEquals("chunk " + index, (index == 0) || (index == 2) ? 2 : 1, puts.get(index).get());
+    }
+  }
+
+  @Test
+  public void givesUpAfterMaxResumes() throws Exception {
+    failures.put(1, Integer.MAX_VALUE);
+
+    FaceVerification.APIException exception = upload(RequestBody.create(JSON, randomBytes(4 * chunkSize))).awaitFailure();
+
+    assertEquals("Chunk is corrupted", exception.getMessage());
+    // first attempt and two resumes
+    assertEquals(3, puts.get(1).get());
+    assertEquals(2, statusRequests.get());
+    assertEquals(0, finalizeRequests.get());
+  }
+
+  @Test
+  public void serializesPayloadOnce() throws Exception {
+    final int[] writes = { 0 };
+    final int[] written = { 0 };
+    final byte[] payload = randomBytes(4 * chunkSize + 500);
+
+    // written in uneven pieces, like JSON / multipart bodies are doing
+    RequestBody body = new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return JSON;
+      }
+
+      @Override
+      public void writeTo(BufferedSink sink) throws IOException {
+        writes[0] += 1;
+
+        for (int offset = 0; offset < payload.length; offset += 777) {
+          int length = Math.min(777, payload.length - offset);
+
+          sink.write(payload, offset, length);
+          written[0] += length;
+        }
+      }
+    };
+
+    // chunk re-sent after resume is sliced from the same snapshot too
+    failures.put(3, 1);
+
+    upload(body).awaitSuccess();
+    assertEquals(1, writes[0]);
+    assertEquals(payload.length, written[0]);
+    assertEquals(5, chunks.size());
+    assertArrayEquals(payload, assemble(payload.length));
+  }
+
+  private AwaitingCallback<EnrollmentResponse> upload(RequestBody payload) throws InterruptedException {
+    FaceVerificationClient client = new FaceVerificationClient(serverURL(), "jwt");
+    AwaitingCallback<APIResponse> tokenCallback = new AwaitingCallback<>();
+    AwaitingCallback<EnrollmentResponse> callback = new AwaitingCallback<>();
+
+    client.getSessionToken(tokenCallback);
+    tokenCallback.awaitSessionToken();
+
+    client.enrollInChunks("enrollment", payload, new ProgressRequestBody.Listener() {
+      @Override
+      public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
+      }
+    }, null, null, callback);
+
+    return callback;
+  }
+
+  private byte[] assemble(int size) {
+    Buffer assembled = new Buffer();
+    Set<Integer> indexes = new TreeSet<>(chunks.keySet());
+
+    for (int index : indexes) {
+      assembled.write(chunks.get(index));
+    }
+
+    assertEquals(size, assembled.size());
+    return assembled.readByteArray();
+  }
+
+  private String serverURL() {
+    String url = server.url("/").toString();
+
+    return url.substring(0, url.length() - 1);
+  }
+
+  private static MockResponse json(String body) {
+    return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+}
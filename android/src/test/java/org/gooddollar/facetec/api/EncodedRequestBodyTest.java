@@ -0,0 +1,188 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.ByteString;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EncodedRequestBodyTest {
+  private MockWebServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void gzipsSourceBody() throws IOException {
+    JSONRequestBody payload = createPayload();
+    EncodedRequestBody body = new EncodedRequestBody(payload, RequestCodec.GZIP);
+    Buffer encoded = new Buffer();
+
+    body.writeTo(encoded);
+
+    assertEquals("gzip", body.encoding());
+    assertEquals(-1, body.contentLength());
+    assertEquals(payload.contentType(), body.contentType());
+    assertSame(payload, body.getSource());
+    assertTrue(encoded.size() < payload.contentLength());
+    assertEquals(write(payload), gunzip(encoded));
+  }
+
+  @Test
+  public void couldBeWrittenMoreThanOnce() throws IOException {
+    EncodedRequestBody body = new EncodedRequestBody(createPayload(), RequestCodec.GZIP);
+    Buffer first = new Buffer();
+    Buffer second = new Buffer();
+
+    body.writeTo(first);
+    body.writeTo(second);
+    assertEquals(gunzip(first), gunzip(second));
+  }
+
+  @Test
+  public void sendsPlainBodyIfServerRefusesEncoding() throws Exception {
+    FaceVerificationClient client = new FaceVerificationClient(serverURL(), "jwt");
+    AwaitingCallback<APIResponse> tokenCallback = new AwaitingCallback<>();
+    AwaitingCallback<EnrollmentResponse> enrollmentCallback = new AwaitingCallback<>();
+    JSONRequestBody payload = createPayload();
+
+    server.enqueue(json("{\"success\":true,\"sessionToken\":\"token\",\"capabilities\":{\"requestEncodings\":[\"gzip\"]}}"));
+    server.enqueue(new MockResponse().setResponseCode(415));
+    server.enqueue(json("{\"success\":true,\"enrollmentResult\":{\"isEnrolled\":true,\"resultBlob\":\"blob\"}}"));
+
+    client.getSessionToken(tokenCallback);
+    assertEquals("token", tokenCallback.awaitSessionToken());
+    assertEquals(Collections.singletonList("gzip"), client.getCapabilities().getRequestEncodings());
+
+    client.enroll("enrollment", payload, enrollmentCallback);
+    assertEquals("blob", enrollmentCallback.awaitSuccess().getEnrollmentResult().getResultBlob());
+
+    RecordedRequest tokenRequest = server.takeRequest();
+    RecordedRequest encodedRequest = server.takeRequest();
+    RecordedRequest plainRequest = server.takeRequest();
+
+    assertEquals("/verify/face/session", tokenRequest.getPath());
+    assertEquals("gzip", encodedRequest.getHeader("Content-Encoding"));
+    assertEquals(write(payload), gunzip(encodedRequest.getBody()));
+    assertNull(plainRequest.getHeader("Content-Encoding"));
+    assertEquals(write(payload), plainRequest.getBody().readUtf8());
+    // the same enrollment, so server could deduplicate it
+    assertEquals(encodedRequest.getHeader("Idempotency-Key"), plainRequest.getHeader("Idempotency-Key"));
+    // encoding is disabled for the next requests
+    assertTrue(client.getCapabilities().getRequestEncodings().isEmpty());
+  }
+
+  @Test
+  public void sendsLessBytesOnTheWire() throws Exception {
+    JSONRequestBody payload = createEnrollmentPayload();
+    RecordedRequest plainRequest = sendEnrollment(payload, "{\"success\":true,\"sessionToken\":\"token\"}");
+    RecordedRequest encodedRequest = sendEnrollment(payload,
+      "{\"success\":true,\"sessionToken\":\"token\",\"capabilities\":{\"requestEncodings\":[\"gzip\"]}}");
+    double ratio = (double) encodedRequest.getBodySize() / plainRequest.getBodySize();
+
+    System.out.println(String.format(Locale.US, "enrollment payload on the wire: plain %d bytes, gzip %d bytes (%.3f)",
+      plainRequest.getBodySize(), encodedRequest.getBodySize(), ratio));
+
+    assertNull(plainRequest.getHeader("Content-Encoding"));
+    assertEquals(payload.contentLength(), plainRequest.getBodySize());
+    assertEquals("gzip", encodedRequest.getHeader("Content-Encoding"));
+    assertEquals(write(payload), gunzip(encodedRequest.getBody()));
+    // scan & images are compressed binaries, so gzip could save only the base64 overhead (6 of 8 bits are used)
+    assertTrue(ratio < 0.8);
+  }
+
+  // fetches session token (with the capabilities given) and uploads the payload, returns the enrollment request
+  private RecordedRequest sendEnrollment(JSONRequestBody payload, String sessionResponse) throws Exception {
+    FaceVerificationClient client = new FaceVerificationClient(serverURL(), "jwt");
+    AwaitingCallback<APIResponse> tokenCallback = new AwaitingCallback<>();
+    AwaitingCallback<EnrollmentResponse> enrollmentCallback = new AwaitingCallback<>();
+
+    server.enqueue(json(sessionResponse));
+    server.enqueue(json("{\"success\":true,\"enrollmentResult\":{\"isEnrolled\":true,\"resultBlob\":\"blob\"}}"));
+
+    client.getSessionToken(tokenCallback);
+    assertEquals("token", tokenCallback.awaitSessionToken());
+    client.enroll("enrollment", payload, enrollmentCallback);
+    assertEquals("blob", enrollmentCallback.awaitSuccess().getEnrollmentResult().getResultBlob());
+
+    server.takeRequest();
+    return server.takeRequest();
+  }
+
+  private String serverURL() {
+    String url = server.url("/").toString();
+
+    return url.substring(0, url.length() - 1);
+  }
+
+  private static MockResponse json(String body) {
+    return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+  }
+
+  private static JSONRequestBody createPayload() {
+    StringBuilder faceScan = new StringBuilder();
+
+    for (int index = 0; index < 4096; index++) {
+      faceScan.append("QUJDRA==");
+    }
+
+    return new JSONRequestBody()
+      .put("faceScan", faceScan.toString())
+      .put("sessionId", "session")
+      .put("fvSigner", "signer");
+  }
+
+  // the same shape and sizes FaceTec SDK produces: encrypted face scan and jpeg images, all base64-encoded
+  private static JSONRequestBody createEnrollmentPayload() {
+    Random random = new Random(42);
+
+    return new JSONRequestBody()
+      .put("faceScan", randomBase64(random, 280 * 1024))
+      .put("auditTrailImage", randomBase64(random, 60 * 1024))
+      .put("lowQualityAuditTrailImage", randomBase64(random, 12 * 1024))
+      .put("sessionId", "8c5e3a5c-4b3e-4c5b-9d38-0d8d0f6a3d27")
+      .put("fvSigner", "0x5b1F3b2a6bE0a0d9a4c9B1c6f0C1c5B4a2e8D9f1")
+      .put("chainId", 122);
+  }
+
+  private static String randomBase64(Random random, int size) {
+    byte[] bytes = new byte[size];
+
+    random.nextBytes(bytes);
+    return ByteString.of(bytes).base64();
+  }
+
+  private static String write(JSONRequestBody body) throws IOException {
+    Buffer buffer = new Buffer();
+
+    body.writeTo(buffer);
+    return buffer.readUtf8();
+  }
+
+  private static String gunzip(Buffer encoded) throws IOException {
+    return Okio.buffer(new GzipSource(encoded)).readUtf8();
+  }
+}
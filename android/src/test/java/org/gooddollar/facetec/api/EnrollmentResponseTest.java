@@ -0,0 +1,52 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.google.gson.stream.JsonReader;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class EnrollmentResponseTest {
+  @Test
+  public void readsEnrollmentResult() throws IOException {
+    EnrollmentResponse.EnrollmentResult result = read(
+      "{\"success\":false,\"error\":\"Duplicate\",\"enrollmentResult\":"
+        + "{\"isDuplicate\":true,\"isNotMatch\":true,\"isEnrolled\":false,\"isLive\":false,\"resultBlob\":\"blob\",\"extra\":[1]}}"
+    ).getEnrollmentResult();
+
+    assertTrue(result.isDuplicate());
+    assertTrue(result.isNotMatch());
+    assertFalse(result.isEnrolled());
+    assertFalse(result.isLive());
+    assertEquals("blob", result.getResultBlob());
+  }
+
+  @Test
+  public void defaultsToTheOldOptValues() throws IOException {
+    String[] responses = {
+      "{\"success\":true}",
+      "{\"success\":true,\"enrollmentResult\":{}}",
+      "{\"success\":true,\"enrollmentResult\":{\"resultBlob\":null,\"isLive\":null}}"
+    };
+
+    for (String json : responses) {
+      EnrollmentResponse.EnrollmentResult result = read(json).getEnrollmentResult();
+
+      assertEquals(json, "", result.getResultBlob());
+      assertTrue(json, result.isLive());
+      assertFalse(json, result.isDuplicate() || result.isNotMatch() || result.isEnrolled());
+    }
+
+    // the way the blob was read from JSONObject response before
+    assertEquals("", new JSONObject().optString("resultBlob"));
+  }
+
+  private static EnrollmentResponse read(String json) throws IOException {
+    return EnrollmentResponse.ADAPTER.read(new JsonReader(new StringReader(json)));
+  }
+}
@@ -0,0 +1,170 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.gooddollar.facetec.util.ExtendedSessionStatus;
+
+public class EnrollmentStatusCheckTest {
+  private MockWebServer server;
+  private FaceVerificationClient client;
+  private final CallGroup calls = new CallGroup();
+
+  // records how the check has finished, status is the one session would be rejected with
+  private static final class Outcome implements EnrollmentStatusCheck.Listener {
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile String sessionToken = null;
+    volatile ExtendedSessionStatus status = null;
+
+    @Override
+    public void onProceed(String sessionToken) {
+      this.sessionToken = sessionToken;
+      done.countDown();
+    }
+
+    @Override
+    public void onAlreadyEnrolled() {
+      status = ExtendedSessionStatus.ALREADY_ENROLLED;
+      done.countDown();
+    }
+
+    @Override
+    public void onDuplicateEnrollment() {
+      status = ExtendedSessionStatus.DUPLICATE_ENROLLMENT;
+      done.countDown();
+    }
+
+    boolean await() throws InterruptedException {
+      return done.await(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+
+    String url = server.url("/").toString();
+
+    // fresh client: no session token has been received, so server capabilities are unknown
+    client = new FaceVerificationClient(url.substring(0, url.length() - 1), "jwt");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void finishesAsAlreadyEnrolled() throws Exception {
+    Outcome outcome = check("{\"success\":true,\"isEnrolled\":true}");
+
+    assertTrue(outcome.await());
+    assertEquals(102, outcome.status.code());
+    assertTrue(calls.isCancelled());
+    assertStatusRequested();
+  }
+
+  @Test
+  public void finishesAsDuplicate() throws Exception {
+    Outcome outcome = check("{\"success\":true,\"isEnrolled\":false,\"isDuplicate\":true}");
+
+    assertTrue(outcome.await());
+    assertEquals(103, outcome.status.code());
+    assertTrue(calls.isCancelled());
+  }
+
+  @Test
+  public void doesNotLaunchSessionOnceRejected() throws Exception {
+    Outcome outcome = new Outcome();
+    EnrollmentStatusCheck statusCheck = new EnrollmentStatusCheck(client, calls, outcome);
+
+    server.enqueue(json("{\"success\":true,\"isEnrolled\":true}"));
+    statusCheck.start("enrollment", null);
+
+    assertTrue(outcome.await());
+    // token fetch has been cancelled, but even if token arrives it should be dropped
+    statusCheck.onSessionTokenReceived("token");
+    assertNull(outcome.sessionToken);
+  }
+
+  @Test
+  public void holdsTokenUntilStatusIsKnown() throws Exception {
+    Outcome outcome = new Outcome();
+    EnrollmentStatusCheck statusCheck = new EnrollmentStatusCheck(client, calls, outcome);
+
+    server.enqueue(json("{\"success\":true,\"isEnrolled\":false,\"isDuplicate\":false}").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+    statusCheck.start("enrollment", null);
+    // token fetched in parallel has arrived first
+    statusCheck.onSessionTokenReceived("token");
+
+    assertFalse(outcome.done.await(100, TimeUnit.MILLISECONDS));
+    assertTrue(outcome.await());
+    assertEquals("token", outcome.sessionToken);
+    assertNull(outcome.status);
+    assertFalse(calls.isCancelled());
+  }
+
+  @Test
+  public void fallsThroughIfServerDoesNotSupportIt() throws Exception {
+    Outcome outcome = new Outcome();
+    EnrollmentStatusCheck statusCheck = new EnrollmentStatusCheck(client, calls, outcome);
+
+    server.enqueue(new MockResponse().setResponseCode(404).setBody("Cannot GET /verify/face/enrollment/status"));
+    statusCheck.start("enrollment", null);
+    assertStatusRequested();
+
+    statusCheck.onSessionTokenReceived("token");
+    assertTrue(outcome.await());
+    assertEquals("token", outcome.sessionToken);
+    assertNull(outcome.status);
+  }
+
+  @Test
+  public void fallsThroughIfCheckFails() throws Exception {
+    Outcome outcome = new Outcome();
+    EnrollmentStatusCheck statusCheck = new EnrollmentStatusCheck(client, calls, outcome);
+
+    server.enqueue(json("{\"success\":false,\"error\":\"Internal error\"}").setResponseCode(500));
+    statusCheck.start("enrollment", null);
+    assertStatusRequested();
+
+    statusCheck.onSessionTokenReceived("token");
+    assertTrue(outcome.await());
+    assertEquals("token", outcome.sessionToken);
+    assertFalse(calls.isCancelled());
+  }
+
+  // starts check with the status response specified, token fetch is still in flight
+  private Outcome check(String statusResponse) {
+    Outcome outcome = new Outcome();
+
+    server.enqueue(json(statusResponse));
+    new EnrollmentStatusCheck(client, calls, outcome).start("enrollment", null);
+    return outcome;
+  }
+
+  private void assertStatusRequested() throws InterruptedException {
+    RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+
+    assertEquals("GET", request.getMethod());
+    assertEquals("/verify/face/enrollment/status", request.getPath());
+  }
+
+  private static MockResponse json(String body) {
+    return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+  }
+}
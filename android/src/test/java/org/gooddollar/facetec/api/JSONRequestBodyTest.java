@@ -0,0 +1,256 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class JSONRequestBodyTest {
+  private static final String base64Alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+  @Test
+  public void writesTheSameBytesAsGson() throws IOException {
+    Map<String, Object> fields = new LinkedHashMap<>();
+
+    fields.put("faceScan", randomBase64(256 * 1024 + 3));
+    fields.put("auditTrailImage", randomBase64(64 * 1024 + 1));
+    fields.put("lowQualityAuditTrailImage", randomBase64(16 * 1024));
+    fields.put("sessionId", "8c5e3a5c-4b3e-4c5b-9d38-0d8d0f6a3d27");
+    fields.put("fvSigner", "0x5b1F3b2a6bE0a0d9a4c9B1c6f0C1c5B4a2e8D9f1");
+    fields.put("chainId", 122);
+    fields.put("score", 0.5);
+    fields.put("isLive", true);
+    fields.put("reason", null);
+
+    assertEquals(gsonStringify(fields), write(createBody(fields)).readUtf8());
+  }
+
+  @Test
+  public void escapesStringsTheSameWayAsJSONObject() throws Exception {
+    Map<String, Object> fields = new LinkedHashMap<>();
+
+    fields.put("quotes", "say \"hi\" \\ bye");
+    fields.put("whitespace", "line\nnext\rreturn\ttab\bback\fform");
+    fields.put("control", "\u0000\u0001\u001f\u007f");
+    fields.put("unicode", "caf\u00e9 \u4e2d\u6587 \ud83e\udd84 \u2028\u2029");
+    fields.put("slashes", "a/b</script>");
+    fields.put("key \"with\" quotes", "value");
+
+    String written = write(createBody(fields)).readUtf8();
+    JsonParser parser = new JsonParser();
+
+    // old payload was made with JSONObject.toString(), it escapes '/' so only the values are compared
+    assertEquals(parser.parse(new JSONObject(fields).toString()), parser.parse(written));
+    assertEquals(parser.parse(gsonStringify(fields)), parser.parse(written));
+    assertEquals(fields.get("unicode"), new JSONObject(written).getString("unicode"));
+  }
+
+  @Test
+  public void doesNotEscapeSlashes() throws IOException {
+    JSONRequestBody body = new JSONRequestBody().put("faceScan", "ab/cd+ef==");
+
+    assertEquals("{\"faceScan\":\"ab/cd+ef==\"}", write(body).readUtf8());
+  }
+
+  @Test
+  public void contentLengthMatchesBytesWritten() throws IOException {
+    JSONRequestBody body = new JSONRequestBody()
+      .put("ascii", randomBase64(1000))
+      .put("escaped", "\"\\\n\u0001")
+      .put("twoBytes", "\u00e9\u00fc")
+      .put("threeBytes", "\u4e2d\u2028")
+      .put("pair", "\ud83e\udd84")
+      .put("loneSurrogate", "a\ud800b")
+      .put("number", 42)
+      .put("empty", "")
+      .put("nothing", null);
+
+    assertEquals(write(body).size(), body.contentLength());
+    assertEquals(2, new JSONRequestBody().contentLength());
+  }
+
+  @Test
+  public void couldBeWrittenMoreThanOnce() throws IOException {
+    JSONRequestBody body = new JSONRequestBody().put("faceScan", randomBase64(100000)).put("chainId", 42);
+
+    assertEquals(write(body).readUtf8(), write(body).readUtf8());
+  }
+
+  @Test
+  public void keepsSurrogatePairOnSliceBoundary() throws Exception {
+    // pair's high surrogate is the last char of the first 8192 chars slice
+    String value = randomBase64(8189) + "\ud83e\udd84" + randomBase64(100);
+    JSONRequestBody body = new JSONRequestBody().put("value", value);
+
+    assertEquals(value, new JSONObject(write(body).readUtf8()).getString("value"));
+    assertEquals(write(body).size(), body.contentLength());
+  }
+
+  @Test
+  public void contentLengthIsUpdatedOnPut() throws IOException {
+    JSONRequestBody body = new JSONRequestBody().put("a", "b");
+    long length = body.contentLength();
+
+    body.put("c", "d");
+    assertFalse(length == body.contentLength());
+    assertEquals(write(body).size(), body.contentLength());
+  }
+
+  @Test
+  public void rejectsUnsupportedValues() {
+    JSONRequestBody body = new JSONRequestBody();
+
+    try {
+      body.put("object", new Object());
+      fail("object value is accepted");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    try {
+      body.put("nan", Double.NaN);
+      fail("NaN value is accepted");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void allocatesLessThanJSONObject() throws Exception {
+    final Map<String, Object> fields = new LinkedHashMap<>();
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+
+    fields.put("faceScan", randomBase64(4 * 1024 * 1024));
+    fields.put("auditTrailImage", randomBase64(1024 * 1024));
+    fields.put("lowQualityAuditTrailImage", randomBase64(256 * 1024));
+    fields.put("sessionId", "8c5e3a5c-4b3e-4c5b-9d38-0d8d0f6a3d27");
+    fields.put("chainId", 122);
+
+    // old way: JSONObject + jsonStringify(), the same payload built and written to the network sink
+    Runnable jsonObject = new Runnable() {
+      @Override
+      public void run() {
+        writeToNetwork(FaceVerification.jsonStringify(new JSONObject(fields)));
+      }
+    };
+
+    Runnable jsonRequestBody = new Runnable() {
+      @Override
+      public void run() {
+        writeToNetwork(createBody(fields));
+      }
+    };
+
+    long jsonObjectBytes = allocatedBytes(threads, jsonObject);
+    long jsonRequestBodyBytes = allocatedBytes(threads, jsonRequestBody);
+
+    System.out.println(String.format(Locale.US,
+      "payload of %.1f MB: JSONObject + jsonStringify() allocates %.1f MB, JSONRequestBody - %.1f KB",
+      createBody(fields).contentLength() / 1048576.0, jsonObjectBytes / 1048576.0, jsonRequestBodyBytes / 1024.0
+    ));
+
+    // old way keeps at least the serialized string and its UTF-8 bytes, on top of the values themselves
+    assertTrue(jsonObjectBytes > 2 * createBody(fields).contentLength());
+    assertTrue(jsonRequestBodyBytes * 100 < jsonObjectBytes);
+  }
+
+  private static JSONRequestBody createBody(Map<String, Object> fields) {
+    JSONRequestBody body = new JSONRequestBody();
+
+    for (Map.Entry<String, Object> field : fields.entrySet()) {
+      body.put(field.getKey(), field.getValue());
+    }
+
+    return body;
+  }
+
+  private static Buffer write(JSONRequestBody body) throws IOException {
+    Buffer buffer = new Buffer();
+
+    body.writeTo(buffer);
+    return buffer;
+  }
+
+  // writes body into the sink dropping the bytes, like the socket does
+  private static void writeToNetwork(RequestBody body) {
+    BufferedSink sink = Okio.buffer(Okio.blackhole());
+
+    try {
+      body.writeTo(sink);
+      sink.close();
+    } catch (IOException exception) {
+      throw new AssertionError(exception);
+    }
+  }
+
+  // bytes allocated by the current thread while running the task. warmed up first, so class loading isn't counted
+  private static long allocatedBytes(com.sun.management.ThreadMXBean threads, Runnable task) {
+    long threadId = Thread.currentThread().getId();
+
+    task.run();
+
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+
+    task.run();
+    return threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+  }
+
+  // the same compact output GoodServer receives from the web client (no HTML escaping)
+  private static String gsonStringify(Map<String, Object> fields) throws IOException {
+    StringWriter output = new StringWriter();
+    JsonWriter writer = new JsonWriter(output);
+
+    writer.setHtmlSafe(false);
+    writer.setSerializeNulls(true);
+    writer.beginObject();
+
+    for (Map.Entry<String, Object> field : fields.entrySet()) {
+      Object value = field.getValue();
+
+      writer.name(field.getKey());
+
+      if (value instanceof String) {
+        writer.value((String) value);
+      } else if (value instanceof Number) {
+        writer.value((Number) value);
+      } else if (value instanceof Boolean) {
+        writer.value((Boolean) value);
+      } else {
+        writer.nullValue();
+      }
+    }
+
+    writer.endObject();
+    writer.close();
+    return output.toString();
+  }
+
+  private static String randomBase64(int length) {
+    Random random = new Random(length);
+    StringBuilder value = new StringBuilder(length + 2);
+
+    for (int index = 0; index < length; index++) {
+      value.append(base64Alphabet.charAt(random.nextInt(base64Alphabet.length())));
+    }
+
+    return value.append("==").toString();
+  }
+}
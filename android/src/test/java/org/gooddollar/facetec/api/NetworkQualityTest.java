@@ -0,0 +1,69 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.BufferedSink;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NetworkQualityTest {
+  private MockWebServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void excludesBodySerializationTime() throws Exception {
+    final byte[] piece = new byte[64 * 1024];
+    AwaitingCallback<EnrollmentResponse> callback = new AwaitingCallback<>();
+    String url = server.url("/").toString();
+
+    // 512KB body, slowly generated: 800ms in total. loopback itself sends it in a few millis
+    RequestBody slowBody = new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return MediaType.parse("application/json");
+      }
+
+      @Override
+      public void writeTo(BufferedSink sink) throws IOException {
+        for (int index = 0; index < 8; index++) {
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException exception) {
+            throw new IOException(exception);
+          }
+
+          sink.write(piece);
+        }
+      }
+    };
+
+    server.enqueue(new MockResponse()
+      .setHeader("Content-Type", "application/json")
+      .setBody("{\"success\":true,\"enrollmentResult\":{\"isEnrolled\":true}}"));
+
+    new FaceVerificationClient(url.substring(0, url.length() - 1), "jwt").enroll("enrollment", slowBody, null, callback);
+    callback.awaitSuccess();
+
+    long bytesPerSecond = NetworkQuality.estimate().bytesPerSecond;
+
+    // with the serialization time counted it would be ~640KB/s
+    assertTrue("throughput " + bytesPerSecond, bytesPerSecond > 4 * 1024 * 1024);
+  }
+}
@@ -0,0 +1,202 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLHandshakeException;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.internal.http2.ErrorCode;
+import okhttp3.internal.http2.StreamResetException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+  private static final String enrollmentSuccess = "{\"success\":true,\"enrollmentResult\":{\"isEnrolled\":true,\"resultBlob\":\"blob\"}}";
+
+  private MockWebServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    RetryPolicy.resetBudget();
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    RetryPolicy.resetBudget();
+    server.shutdown();
+  }
+
+  @Test
+  public void retriesTransientErrorsOnly() {
+    assertTrue(RetryPolicy.isTransient(new ConnectException("Failed to connect")));
+    assertTrue(RetryPolicy.isTransient(new SocketTimeoutException("timeout")));
+    assertTrue(RetryPolicy.isTransient(new UnknownHostException("goodserver")));
+    assertTrue(RetryPolicy.isTransient(new EOFException()));
+    assertTrue(RetryPolicy.isTransient(new IOException("unexpected end of stream")));
+    assertTrue(RetryPolicy.isTransient(new StreamResetException(ErrorCode.REFUSED_STREAM)));
+    assertTrue(RetryPolicy.isTransient(new IOException("stream was reset: CANCEL")));
+
+    assertFalse(RetryPolicy.isTransient(new IOException("Canceled")));
+    assertFalse(RetryPolicy.isTransient(new SSLHandshakeException("certificate")));
+    assertFalse(RetryPolicy.isTransient(new ProtocolException("Too many follow-up requests")));
+  }
+
+  @Test
+  public void retriesGatewayStatusesOnly() {
+    assertTrue(RetryPolicy.isRetryableStatus(502));
+    assertTrue(RetryPolicy.isRetryableStatus(503));
+    assertTrue(RetryPolicy.isRetryableStatus(504));
+
+    assertFalse(RetryPolicy.isRetryableStatus(400));
+    assertFalse(RetryPolicy.isRetryableStatus(429));
+    assertFalse(RetryPolicy.isRetryableStatus(500));
+  }
+
+  @Test
+  public void limitsAttempts() {
+    RetryPolicy policy = new RetryPolicy(3, 100, 150);
+
+    for (int attempt = 0; attempt < 2; attempt++) {
+      long delay = policy.nextDelay(attempt, null, null);
+
+      assertTrue(delay >= 0 && delay <= 150);
+    }
+
+    assertEquals(-1, policy.nextDelay(2, null, null));
+  }
+
+  @Test
+  public void respectsRetryAfter() {
+    RetryPolicy policy = new RetryPolicy(3, 100, 150);
+
+    assertEquals(2000, policy.nextDelay(0, response(503, "2"), null));
+    // server won't be back soon
+    assertEquals(-1, policy.nextDelay(0, response(503, "120"), null));
+    // next attempt would be after the deadline
+    assertEquals(-1, policy.nextDelay(0, response(503, "2"), Deadline.after(1, TimeUnit.SECONDS)));
+  }
+
+  @Test
+  public void limitsRetriesWithBudget() {
+    RetryPolicy policy = new RetryPolicy(3, 0, 0);
+
+    for (int retry = 0; retry < 10; retry++) {
+      assertEquals(0, policy.nextDelay(0, null, null));
+    }
+
+    assertEquals(-1, policy.nextDelay(0, null, null));
+
+    // each request deposits 0.2 of the retry
+    for (int request = 0; request < 5; request++) {
+      RetryPolicy.onRequest();
+    }
+
+    assertEquals(0, policy.nextDelay(0, null, null));
+    assertEquals(-1, policy.nextDelay(0, null, null));
+  }
+
+  @Test
+  public void reusesIdempotencyKeyOnRetries() throws Exception {
+    AwaitingCallback<EnrollmentResponse> callback = new AwaitingCallback<>();
+
+    server.enqueue(new MockResponse().setResponseCode(503));
+    server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+    server.enqueue(json(enrollmentSuccess));
+
+    createClient().enroll("enrollment", new org.json.JSONObject().put("sessionId", "session"), null, callback);
+    assertEquals("blob", callback.awaitSuccess().getEnrollmentResult().getResultBlob());
+    assertEquals(3, server.getRequestCount());
+
+    String idempotencyKey = server.takeRequest().getHeader("Idempotency-Key");
+
+    assertNotNull(idempotencyKey);
+
+    for (int attempt = 1; attempt < 3; attempt++) {
+      RecordedRequest retry = server.takeRequest();
+
+      assertEquals(idempotencyKey, retry.getHeader("Idempotency-Key"));
+      assertEquals("{\"sessionId\":\"session\"}", retry.getBody().readUtf8());
+    }
+  }
+
+  @Test
+  public void usesNewIdempotencyKeyPerEnrollment() throws Exception {
+    FaceVerificationClient client = createClient();
+
+    for (int enrollment = 0; enrollment < 2; enrollment++) {
+      AwaitingCallback<EnrollmentResponse> callback = new AwaitingCallback<>();
+
+      server.enqueue(json(enrollmentSuccess));
+      client.enroll("enrollment", new org.json.JSONObject(), null, callback);
+      callback.awaitSuccess();
+    }
+
+    String firstKey = server.takeRequest().getHeader("Idempotency-Key");
+
+    assertFalse(firstKey.equals(server.takeRequest().getHeader("Idempotency-Key")));
+  }
+
+  @Test
+  public void doesNotRetryBusinessErrors() throws Exception {
+    AwaitingCallback<EnrollmentResponse> callback = new AwaitingCallback<>();
+
+    server.enqueue(json("{\"success\":false,\"error\":\"Duplicate\"}").setResponseCode(400));
+    server.enqueue(json(enrollmentSuccess));
+
+    createClient().enroll("enrollment", new org.json.JSONObject(), null, callback);
+    assertEquals("Duplicate", callback.awaitFailure().getMessage());
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void givesUpAfterMaxAttempts() throws Exception {
+    AwaitingCallback<EnrollmentResponse> callback = new AwaitingCallback<>();
+
+    for (int attempt = 0; attempt < 4; attempt++) {
+      server.enqueue(new MockResponse().setResponseCode(503));
+    }
+
+    createClient().enroll("enrollment", new org.json.JSONObject(), null, callback);
+    callback.awaitFailure();
+    assertEquals(3, server.getRequestCount());
+  }
+
+  private FaceVerificationClient createClient() {
+    String url = server.url("/").toString();
+
+    return new FaceVerificationClient(url.substring(0, url.length() - 1), "jwt");
+  }
+
+  private static Response response(int code, String retryAfter) {
+    return new Response.Builder()
+      .request(new Request.Builder().url("http://localhost/").build())
+      .protocol(Protocol.HTTP_1_1)
+      .code(code)
+      .message("")
+      .header("Retry-After", retryAfter)
+      .build();
+  }
+
+  private static MockResponse json(String body) {
+    return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+  }
+}
@@ -0,0 +1,131 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Random;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+import okio.Source;
+import org.junit.Test;
+
+public class SegmentedCipherTest {
+  private static final int segmentSize = 64 * 1024;
+  private static final int tagSize = 16;
+  private static final int prefixSize = 7;
+
+  @Test
+  public void decryptsWhatHasBeenEncrypted() throws IOException {
+    byte[] key = SegmentedCipher.generateKey();
+    int[] sizes = { 0, 1, segmentSize - 1, segmentSize, segmentSize + 1, 3 * segmentSize, 5 * segmentSize + 123 };
+
+    for (int size : sizes) {
+      byte[] payload = randomBytes(size);
+
+      assertArrayEquals("payload of " + size + " bytes", payload, decrypt(key, encrypt(key, payload)).readByteArray());
+    }
+  }
+
+  @Test
+  public void sealsEachSegment() throws IOException {
+    byte[] key = SegmentedCipher.generateKey();
+
+    assertEquals(prefixSize + tagSize, encrypt(key, new byte[0]).size());
+    assertEquals(prefixSize + segmentSize + tagSize, encrypt(key, new byte[segmentSize]).size());
+    assertEquals(prefixSize + 2 * (segmentSize + tagSize) + 1 + tagSize, encrypt(key, new byte[2 * segmentSize + 1]).size());
+  }
+
+  @Test
+  public void decryptsStreaming() throws IOException {
+    byte[] key = SegmentedCipher.generateKey();
+    byte[] payload = randomBytes(4 * segmentSize);
+    Buffer encrypted = encrypt(key, payload);
+    long encryptedSize = encrypted.size();
+    Source source = SegmentedCipher.decrypt(key, encrypted);
+    Buffer decrypted = new Buffer();
+
+    // the first segment is available before the rest is read from the file
+    assertTrue(source.read(decrypted, 1) > 0);
+    assertTrue(encryptedSize - encrypted.size() <= prefixSize + 2 * (segmentSize + tagSize) + 1);
+  }
+
+  @Test
+  public void failsOnTamperedSegment() throws IOException {
+    byte[] key = SegmentedCipher.generateKey();
+    byte[] encrypted = encrypt(key, randomBytes(2 * segmentSize)).readByteArray();
+
+    encrypted[prefixSize + segmentSize + tagSize + 10] ^= 1;
+    assertCorrupted(key, encrypted);
+  }
+
+  @Test
+  public void failsOnTruncatedPayload() throws IOException {
+    byte[] key = SegmentedCipher.generateKey();
+    ByteString encrypted = encrypt(key, randomBytes(3 * segmentSize)).readByteString();
+
+    // dropped the last segment: the previous one becomes the last, but it isn't flagged so
+    assertCorrupted(key, encrypted.substring(0, prefixSize + 2 * (segmentSize + tagSize)).toByteArray());
+    // cut in the middle of the segment
+    assertCorrupted(key, encrypted.substring(0, encrypted.size() - 100).toByteArray());
+  }
+
+  @Test
+  public void failsOnReorderedSegments() throws IOException {
+    byte[] key = SegmentedCipher.generateKey();
+    ByteString encrypted = encrypt(key, randomBytes(3 * segmentSize)).readByteString();
+    int sealedSize = segmentSize + tagSize;
+    Buffer reordered = new Buffer()
+      .write(encrypted.substring(0, prefixSize))
+      .write(encrypted.substring(prefixSize + sealedSize, prefixSize + 2 * sealedSize))
+      .write(encrypted.substring(prefixSize, prefixSize + sealedSize))
+      .write(encrypted.substring(prefixSize + 2 * sealedSize));
+
+    assertCorrupted(key, reordered.readByteArray());
+  }
+
+  @Test
+  public void failsWithAnotherKey() throws IOException {
+    assertCorrupted(SegmentedCipher.generateKey(), encrypt(SegmentedCipher.generateKey(), randomBytes(100)).readByteArray());
+  }
+
+  private static Buffer encrypt(byte[] key, byte[] payload) throws IOException {
+    Buffer encrypted = new Buffer();
+    BufferedSink sink = Okio.buffer(SegmentedCipher.encrypt(key, encrypted));
+
+    // written in uneven pieces, the same way the request bodies are doing it
+    for (int offset = 0; offset < payload.length; offset += 1000) {
+      sink.write(payload, offset, Math.min(1000, payload.length - offset));
+    }
+
+    sink.close();
+    return encrypted;
+  }
+
+  private static Buffer decrypt(byte[] key, Buffer encrypted) throws IOException {
+    Buffer decrypted = new Buffer();
+
+    Okio.buffer(SegmentedCipher.decrypt(key, encrypted)).readAll(decrypted);
+    return decrypted;
+  }
+
+  private static void assertCorrupted(byte[] key, byte[] encrypted) {
+    try {
+      decrypt(key, new Buffer().write(encrypted));
+      fail("corrupted payload has been decrypted");
+    } catch (IOException expected) {
+    }
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+}
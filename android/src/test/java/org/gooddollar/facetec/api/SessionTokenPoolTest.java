@@ -0,0 +1,170 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.gooddollar.facetec.api.FaceVerification.APIException;
+import org.gooddollar.facetec.api.FaceVerification.DeadlineExceededException;
+
+public class SessionTokenPoolTest {
+  // SessionTokenPool.minRemainingTTL
+  private static final long minRemainingTTL = TimeUnit.SECONDS.toMillis(5);
+
+  private MockWebServer server;
+  private SessionTokenPool pool;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+
+    String url = server.url("/").toString();
+
+    pool = new FaceVerificationClient(url.substring(0, url.length() - 1), "jwt").getSessionTokenPool();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    SessionTokenPool.configure(1, TimeUnit.MINUTES.toMillis(1));
+    server.shutdown();
+  }
+
+  @Test
+  public void returnsPrefetchedToken() throws Exception {
+    server.enqueue(token("first"));
+    pool.prefetch();
+    awaitPooled(1);
+
+    assertEquals("first", acquire(null).awaitSessionToken());
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void mergesConcurrentFetches() throws Exception {
+    server.enqueue(token("first").setBodyDelay(300, TimeUnit.MILLISECONDS));
+    server.enqueue(token("second"));
+
+    pool.prefetch();
+
+    AwaitingCallback<APIResponse> first = acquire(null);
+    AwaitingCallback<APIResponse> second = acquire(null);
+
+    // single-use tokens: the second caller gets the one fetched after the merged request
+    assertEquals("first", first.awaitSessionToken());
+    assertEquals("second", second.awaitSessionToken());
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void dropsExpiredTokens() throws Exception {
+    SessionTokenPool.configure(1, minRemainingTTL + 300);
+    server.enqueue(token("stale"));
+    server.enqueue(token("fresh"));
+
+    pool.prefetch();
+    awaitPooled(1);
+    Thread.sleep(400);
+
+    assertEquals("fresh", acquire(null).awaitSessionToken());
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void usesServerTokenLifetime() throws Exception {
+    // server lifetime (6s) wins over the configured one, so token is stale after a second
+    SessionTokenPool.configure(1, TimeUnit.MINUTES.toMillis(10));
+    server.enqueue(token("stale").setBody("{\"success\":true,\"sessionToken\":\"stale\",\"expiresIn\":6}"));
+    server.enqueue(token("fresh"));
+
+    pool.prefetch();
+    awaitPooled(1);
+    Thread.sleep(1100);
+
+    assertEquals("fresh", acquire(null).awaitSessionToken());
+  }
+
+  @Test
+  public void failsFastIfDeadlineIsExpired() throws Exception {
+    server.enqueue(token("warm"));
+    pool.prefetch();
+    awaitPooled(1);
+
+    APIException exception = acquire(Deadline.after(0, TimeUnit.MILLISECONDS)).awaitFailure();
+
+    assertTrue(exception instanceof DeadlineExceededException);
+    // warm token is kept for the next session
+    assertEquals("warm", acquire(null).awaitSessionToken());
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void appliesCallerDeadlineToFetchInFlight() throws Exception {
+    server.enqueue(token("late").setBodyDelay(1, TimeUnit.SECONDS));
+    pool.prefetch();
+
+    long startedAt = System.nanoTime();
+    AwaitingCallback<APIResponse> waiter = acquire(Deadline.after(200, TimeUnit.MILLISECONDS));
+    AwaitingCallback<APIResponse> patientWaiter = acquire(null);
+    APIException exception = waiter.awaitFailure();
+
+    assertTrue(exception instanceof DeadlineExceededException);
+    assertTrue(System.nanoTime() - startedAt < TimeUnit.MILLISECONDS.toNanos(900));
+    // the others are still waiting for the same fetch
+    assertEquals("late", patientWaiter.awaitSessionToken());
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void poolsTokenReceivedAfterDeadline() throws Exception {
+    server.enqueue(token("late").setBodyDelay(500, TimeUnit.MILLISECONDS));
+
+    assertTrue(acquire(Deadline.after(100, TimeUnit.MILLISECONDS)).awaitFailure() instanceof DeadlineExceededException);
+    awaitPooled(1);
+    Thread.sleep(600);
+
+    assertEquals("late", acquire(Deadline.after(1, TimeUnit.SECONDS)).awaitSessionToken());
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void failsAllWaitersOnFetchError() throws Exception {
+    server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("{\"success\":false,\"error\":\"nope\"}"));
+
+    AwaitingCallback<APIResponse> first = acquire(Deadline.after(5, TimeUnit.SECONDS));
+    AwaitingCallback<APIResponse> second = acquire(null);
+
+    assertEquals("nope", first.awaitFailure().getMessage());
+    assertEquals("nope", second.awaitFailure().getMessage());
+  }
+
+  private AwaitingCallback<APIResponse> acquire(Deadline deadline) {
+    AwaitingCallback<APIResponse> callback = new AwaitingCallback<>();
+
+    pool.acquire(deadline, callback);
+    return callback;
+  }
+
+  // waits until the server has responded, the token is pooled right after that
+  private void awaitPooled(int requestCount) throws InterruptedException {
+    for (int index = 0; index < requestCount; index++) {
+      server.takeRequest(5, TimeUnit.SECONDS);
+    }
+
+    Thread.sleep(100);
+  }
+
+  private static MockResponse token(String sessionToken) {
+    return new MockResponse()
+      .setHeader("Content-Type", "application/json")
+      .setBody("{\"success\":true,\"sessionToken\":\"" + sessionToken + "\"}");
+  }
+}
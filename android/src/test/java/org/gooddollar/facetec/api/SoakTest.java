@@ -0,0 +1,315 @@
+package org.gooddollar.facetec.api;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.ByteString;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.gooddollar.facetec.api.FaceVerification.APICallback;
+import org.gooddollar.facetec.api.FaceVerification.APIException;
+import org.gooddollar.facetec.api.FaceVerification.SessionTokenCallback;
+
+/*
+ * Load / soak harness running the real API client against the in-process GoodServer stand-in
+ *
+ * Disabled by default, run with -Dfacetec.soak=true (./gradlew test -Pfacetec.soak=true).
+ * Load and injected faults are configured with facetec.soak.* system properties, see below.
+ *
+ * Reports p50 / p95 / p99 latency, error rate, thread count and heap growth for each scenario.
+ * Run fails if some call has stalled or calls are left in the dispatcher (dispatcher starvation),
+ * connections are left allocated in the pool or okhttp has reported leaked response
+ * (connection pool leak), error rate, thread count or heap growth exceed the limits
+ */
+public class SoakTest {
+  private static final boolean isEnabled = Boolean.getBoolean("facetec.soak");
+
+  // load
+  private static final int sessions = Integer.getInteger("facetec.soak.sessions", 2000);
+  private static final int concurrency = Integer.getInteger("facetec.soak.concurrency", 16);
+  private static final int tokenFetches = Integer.getInteger("facetec.soak.tokenFetches", 2000);
+  private static final int payloadSize = Integer.getInteger("facetec.soak.payloadSize", 64 * 1024);
+  // injected faults
+  private static final long latency = Long.getLong("facetec.soak.latency", 20);
+  private static final long bandwidth = Long.getLong("facetec.soak.bandwidth", 0);
+  private static final double resetRate = doubleProperty("facetec.soak.resetRate", 0.01);
+  private static final double errorRate = doubleProperty("facetec.soak.errorRate", 0.01);
+  private static final int errorBurst = Integer.getInteger("facetec.soak.errorBurst", 3);
+  // limits
+  private static final long stallTimeout = Long.getLong("facetec.soak.stallTimeout", 30);
+  private static final double maxErrorRate = doubleProperty("facetec.soak.maxErrorRate", 0.05);
+  private static final int maxThreadGrowth = Integer.getInteger("facetec.soak.maxThreadGrowth", 32);
+  private static final long maxHeapGrowth = Long.getLong("facetec.soak.maxHeapGrowthMb", 64);
+
+  private MockWebServer server;
+  private ChaosDispatcher chaos;
+  private FaceVerificationClient client;
+  private final List<String> leaks = Collections.synchronizedList(new ArrayList<String>());
+
+  // okhttp reports responses which haven't been closed to its logger
+  private final Handler leakHandler = new Handler() {
+    @Override
+    public void publish(LogRecord record) {
+      if ((record.getMessage() != null) && record.getMessage().contains("leaked")) {
+        leaks.add(record.getMessage());
+      }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  // latencies (in nanos) and failures of the scenario calls
+  private static final class Stats {
+    final List<Long> latencies = new ArrayList<>();
+    int failures = 0;
+
+    synchronized void record(long elapsed, boolean isSuccess) {
+      latencies.add(elapsed);
+
+      if (!isSuccess) {
+        failures += 1;
+      }
+    }
+
+    synchronized double percentile(double percentile) {
+      List<Long> sorted = new ArrayList<>(latencies);
+
+      Collections.sort(sorted);
+      return sorted.isEmpty() ? 0 : sorted.get((int) Math.ceil(percentile * sorted.size()) - 1) / 1e6;
+    }
+
+    synchronized double errorRate() {
+      return latencies.isEmpty() ? 0 : (double) failures / latencies.size();
+    }
+  }
+
+  // waits for the call result, fails as stalled if it hasn't been received in time
+  private static final class Outcome<T extends APIResponse> implements APICallback<T>, SessionTokenCallback {
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private volatile boolean isSuccess = false;
+
+    @Override
+    public void onSuccess(T response) {
+      isSuccess = true;
+      latch.countDown();
+    }
+
+    @Override
+    public void onSessionTokenReceived(String sessionToken) {
+      isSuccess = true;
+      latch.countDown();
+    }
+
+    @Override
+    public void onFailure(APIException exception) {
+      latch.countDown();
+    }
+
+    boolean await(String call) throws InterruptedException {
+      if (!latch.await(stallTimeout, TimeUnit.SECONDS)) {
+        fail("Dispatcher starvation: " + call + " hasn't completed in " + stallTimeout + " seconds");
+      }
+
+      return isSuccess;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    Assume.assumeTrue("load / soak harness is disabled, run with -Dfacetec.soak=true", isEnabled);
+
+    chaos = new ChaosDispatcher(latency, bandwidth, resetRate, errorRate, errorBurst);
+    server = new MockWebServer();
+    server.setDispatcher(chaos);
+    server.start();
+
+    String url = server.url("/").toString();
+
+    client = new FaceVerificationClient(url.substring(0, url.length() - 1), "jwt");
+    RetryPolicy.resetBudget();
+    Logger.getLogger(OkHttpClient.class.getName()).addHandler(leakHandler);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (server == null) {
+      return;
+    }
+
+    Logger.getLogger(OkHttpClient.class.getName()).removeHandler(leakHandler);
+    server.shutdown();
+  }
+
+  @Test
+  public void sequentialSessions() throws Exception {
+    String faceScan = randomBase64(payloadSize);
+    Stats stats = new Stats();
+    int threadsBefore = threadCount();
+    long heapBefore = usedHeap();
+
+    for (int session = 0; session < sessions; session++) {
+      long startedAt = System.nanoTime();
+      Outcome<APIResponse> token = new Outcome<>();
+      boolean isSuccess;
+
+      client.getSessionToken(token);
+      isSuccess = token.await("session token fetch");
+
+      if (isSuccess) {
+        Outcome<EnrollmentResponse> enrollment = new Outcome<>();
+        JSONRequestBody payload = new JSONRequestBody()
+          .put("faceScan", faceScan)
+          .put("sessionId", "session-" + session)
+          .put("fvSigner", "0x5b1F3b2a6bE0a0d9a4c9B1c6f0C1c5B4a2e8D9f1");
+
+        client.enroll("enrollment-" + session, payload, null, enrollment);
+        isSuccess = enrollment.await("enrollment upload");
+      }
+
+      stats.record(System.nanoTime() - startedAt, isSuccess);
+      drainRecordedRequests();
+    }
+
+    verify("sequential sessions", stats, threadsBefore, heapBefore);
+  }
+
+  @Test
+  public void concurrentTokenFetches() throws Exception {
+    final Stats stats = new Stats();
+    final CountDownLatch finished = new CountDownLatch(concurrency);
+    ExecutorService callers = Executors.newFixedThreadPool(concurrency);
+    int threadsBefore = threadCount();
+    long heapBefore = usedHeap();
+
+    for (int caller = 0; caller < concurrency; caller++) {
+      callers.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int fetch = 0; fetch < tokenFetches / concurrency; fetch++) {
+              long startedAt = System.nanoTime();
+              Outcome<APIResponse> token = new Outcome<>();
+
+              client.getSessionToken(token);
+
+              boolean isSuccess = token.await("session token fetch");
+
+              stats.record(System.nanoTime() - startedAt, isSuccess);
+            }
+          } catch (Throwable exception) {
+            stats.record(TimeUnit.SECONDS.toNanos(stallTimeout), false);
+          } finally {
+            finished.countDown();
+          }
+        }
+      });
+    }
+
+    boolean isFinished = finished.await(stallTimeout * Math.max(1, tokenFetches / concurrency), TimeUnit.SECONDS);
+
+    callers.shutdownNow();
+    callers.awaitTermination(stallTimeout, TimeUnit.SECONDS);
+    assertTrue("Dispatcher starvation: concurrent token fetches haven't completed", isFinished);
+    verify("concurrent token fetches", stats, threadsBefore, heapBefore);
+  }
+
+  private void verify(String scenario, Stats stats, int threadsBefore, long heapBefore) throws InterruptedException {
+    Dispatcher dispatcher = NetworkingHelpers.getApiClient().dispatcher();
+    ConnectionStats.Snapshot connections = ConnectionStats.snapshot();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+    // responses are closed and connections released right after the callbacks, give them a moment
+    while (System.nanoTime() < deadline) {
+      connections = ConnectionStats.snapshot();
+
+      if ((dispatcher.runningCallsCount() == 0) && (dispatcher.queuedCallsCount() == 0)
+        && (connections.pooledConnections == connections.idleConnections)) {
+        break;
+      }
+
+      Thread.sleep(100);
+    }
+
+    drainRecordedRequests();
+
+    int threadsAfter = threadCount();
+    long heapAfter = usedHeap();
+
+    System.out.println(String.format(Locale.US,
+      "%s: %d calls, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, errors %.2f%%, threads %d -> %d, heap %+.1f MB, "
+        + "connections %d new / %d reused, server %d requests / %d resets / %d 5xx",
+      scenario, stats.latencies.size(), stats.percentile(0.5), stats.percentile(0.95), stats.percentile(0.99),
+      100 * stats.errorRate(), threadsBefore, threadsAfter, (heapAfter - heapBefore) / 1048576.0,
+      connections.newConnections, connections.reusedConnections,
+      chaos.requests.get(), chaos.resets.get(), chaos.errors.get()
+    ));
+
+    assertTrue("Dispatcher starvation: " + dispatcher.runningCallsCount() + " running and "
+      + dispatcher.queuedCallsCount() + " queued calls left", (dispatcher.runningCallsCount() == 0) && (dispatcher.queuedCallsCount() == 0));
+    assertTrue("Connection pool leak: " + (connections.pooledConnections - connections.idleConnections)
+      + " connections are still allocated", connections.pooledConnections == connections.idleConnections);
+    assertTrue("Connection pool leak: " + leaks, leaks.isEmpty());
+    assertTrue("Error rate " + stats.errorRate() + " exceeds " + maxErrorRate, stats.errorRate() <= maxErrorRate);
+    assertTrue("Thread count has grown from " + threadsBefore + " to " + threadsAfter, threadsAfter - threadsBefore <= maxThreadGrowth);
+    assertTrue("Heap has grown by " + (heapAfter - heapBefore) / 1048576 + " MB", heapAfter - heapBefore <= maxHeapGrowth * 1048576);
+  }
+
+  // MockWebServer keeps each request (with its body) until it's taken
+  private void drainRecordedRequests() throws InterruptedException {
+    while (server.takeRequest(0, TimeUnit.MILLISECONDS) != null) {
+    }
+  }
+
+  private static int threadCount() {
+    return ManagementFactory.getThreadMXBean().getThreadCount();
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+
+    System.gc();
+    Thread.sleep(100);
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static String randomBase64(int length) {
+    byte[] bytes = new byte[length / 4 * 3];
+
+    new Random(length).nextBytes(bytes);
+    return ByteString.of(bytes).base64();
+  }
+
+  private static double doubleProperty(String name, double defaultValue) {
+    String value = System.getProperty(name);
+
+    return value != null ? Double.parseDouble(value) : defaultValue;
+  }
+}
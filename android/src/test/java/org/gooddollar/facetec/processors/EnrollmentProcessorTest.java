@@ -0,0 +1,121 @@
+package org.gooddollar.facetec.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.modules.core.PermissionAwareActivity;
+import com.facetec.sdk.FaceTecFaceScanResultCallback;
+import com.facetec.sdk.FaceTecSessionResult;
+import com.facetec.sdk.FaceTecSessionStatus;
+
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.gooddollar.facetec.api.Deadline;
+import org.gooddollar.facetec.api.FaceVerificationClient;
+import org.gooddollar.facetec.util.SessionExecutors;
+import org.gooddollar.facetec.util.SessionMetrics;
+
+public class EnrollmentProcessorTest {
+  // main thread budget for the FaceTec callback: it shouldn't take more than a couple of frames
+  private static final long maxMainThreadTime = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private MockWebServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void buildsPayloadOffTheCallingThread() throws Exception {
+    final CountDownLatch isPayloadThreadBusy = new CountDownLatch(1);
+    final CountDownLatch releasePayloadThread = new CountDownLatch(1);
+    final String[] buildThread = { null };
+    SessionMetrics metrics = new SessionMetrics();
+    Activity activity = mock(Activity.class, withSettings().extraInterfaces(PermissionAwareActivity.class));
+    FaceTecSessionResult sessionResult = mock(FaceTecSessionResult.class);
+    FaceTecFaceScanResultCallback resultCallback = mock(FaceTecFaceScanResultCallback.class);
+
+    when(activity.getApplicationContext()).thenReturn(mock(Context.class));
+    when(sessionResult.getStatus()).thenReturn(FaceTecSessionStatus.SESSION_COMPLETED_SUCCESSFULLY);
+    when(sessionResult.getAuditTrailCompressedBase64()).thenReturn(new String[] { "audit" });
+    when(sessionResult.getLowQualityAuditTrailCompressedBase64()).thenReturn(new String[] { "lowQuality" });
+    when(sessionResult.getSessionId()).thenReturn("session");
+    when(sessionResult.getFaceScanBase64()).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        buildThread[0] = Thread.currentThread().getName();
+        return "faceScan";
+      }
+    });
+
+    // upload is refused: uploading progress is reported to JS, which needs RN native library
+    String url = server.url("/").toString();
+
+    server.shutdown();
+
+    EnrollmentProcessor processor = new EnrollmentProcessor(
+      activity, new ProcessingSubscriber(mock(Promise.class), metrics),
+      new FaceVerificationClient(url.substring(0, url.length() - 1), "jwt")
+    );
+
+    // payload thread is busy (e.g. with the previous session's payload)
+    SessionExecutors.payload().execute(new Runnable() {
+      @Override
+      public void run() {
+        isPayloadThreadBusy.countDown();
+
+        try {
+          releasePayloadThread.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+
+    assertTrue(isPayloadThreadBusy.await(5, TimeUnit.SECONDS));
+    processor.enroll("enrollment", "0x5b1F3b2a6bE0a0d9a4c9B1c6f0C1c5B4a2e8D9f1", null, null, Deadline.after(3, TimeUnit.SECONDS));
+
+    long startedAt = System.nanoTime();
+
+    processor.processSessionWhileFaceTecSDKWaits(sessionResult, resultCallback);
+
+    long elapsed = System.nanoTime() - startedAt;
+
+    // returned right away, scan data hasn't been touched yet
+    assertTrue("callback took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms", elapsed < maxMainThreadTime);
+    verify(sessionResult, never()).getFaceScanBase64();
+    verify(resultCallback).uploadProgress(0);
+
+    releasePayloadThread.countDown();
+
+    // payload is built once the payload thread is free
+    verify(sessionResult, timeout(5000)).getFaceScanBase64();
+    assertEquals("FaceTec-Payload", buildThread[0]);
+  }
+}
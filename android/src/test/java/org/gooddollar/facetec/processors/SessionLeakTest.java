@@ -0,0 +1,205 @@
+package org.gooddollar.facetec.processors;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.modules.core.PermissionAwareActivity;
+import com.facetec.sdk.FaceTecFaceScanResultCallback;
+import com.facetec.sdk.FaceTecSessionResult;
+import com.facetec.sdk.FaceTecSessionStatus;
+
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.gooddollar.facetec.api.Deadline;
+import org.gooddollar.facetec.api.EnrollmentResponse;
+import org.gooddollar.facetec.api.FaceVerification;
+import org.gooddollar.facetec.api.FaceVerificationClient;
+import org.gooddollar.facetec.api.JSONRequestBody;
+import org.gooddollar.facetec.util.SessionExecutors;
+import org.gooddollar.facetec.util.SessionMetrics;
+
+/*
+ * Checks the finished session doesn't leave the scan data, payload or activity referenced
+ *
+ * Only weak references are kept by the test once session has been driven through, so
+ * anything still reachable after GC is retained by the module / API layer
+ */
+public class SessionLeakTest {
+  private static final int faceScanSize = 4 * 1024 * 1024;
+
+  private MockWebServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void releasesFinishedSession() throws Exception {
+    SessionMetrics metrics = new SessionMetrics();
+    Activity activity = mock(Activity.class, withSettings().extraInterfaces(PermissionAwareActivity.class));
+    FaceTecSessionResult sessionResult = mock(FaceTecSessionResult.class);
+    String faceScan = base64(faceScanSize, 'f');
+
+    when(activity.getApplicationContext()).thenReturn(mock(Context.class));
+    when(sessionResult.getStatus()).thenReturn(FaceTecSessionStatus.SESSION_COMPLETED_SUCCESSFULLY);
+    when(sessionResult.getFaceScanBase64()).thenReturn(faceScan);
+    when(sessionResult.getAuditTrailCompressedBase64()).thenReturn(new String[] { base64(256 * 1024, 'a') });
+    when(sessionResult.getLowQualityAuditTrailCompressedBase64()).thenReturn(new String[] { base64(64 * 1024, 'l') });
+    when(sessionResult.getSessionId()).thenReturn("session");
+
+    // the upload fails (after retries): uploading progress is reported to JS, which needs RN native library
+    String url = server.url("/").toString();
+
+    server.shutdown();
+
+    EnrollmentProcessor processor = new EnrollmentProcessor(
+      activity, new ProcessingSubscriber(mock(Promise.class), metrics),
+      new FaceVerificationClient(url.substring(0, url.length() - 1), "jwt")
+    );
+
+    processor.enroll("enrollment", "0x5b1F3b2a6bE0a0d9a4c9B1c6f0C1c5B4a2e8D9f1", null, null, deadline());
+    processor.processSessionWhileFaceTecSDKWaits(sessionResult, mock(FaceTecFaceScanResultCallback.class));
+    awaitMark(metrics, SessionMetrics.Mark.RESPONSE_RECEIVED);
+
+    // session is finished and released by the module, only weak references are kept
+    WeakReference<?>[] references = {
+      new WeakReference<>(processor),
+      new WeakReference<>(sessionResult),
+      new WeakReference<>(faceScan),
+      new WeakReference<>(activity)
+    };
+
+    processor = null;
+    sessionResult = null;
+    faceScan = null;
+    activity = null;
+    forgetMockInvocations();
+
+    assertCollected(references, "processor", "session result", "face scan", "activity");
+  }
+
+  @Test
+  public void releasesUploadedPayload() throws Exception {
+    final CountDownLatch uploaded = new CountDownLatch(1);
+    String url = server.url("/").toString();
+    String faceScan = base64(faceScanSize, 'f');
+    RequestBody payload = new JSONRequestBody().put("faceScan", faceScan).put("sessionId", "session");
+
+    // transient failure first, so the retry path is covered too
+    server.enqueue(new MockResponse().setResponseCode(503));
+    server.enqueue(new MockResponse()
+      .setHeader("Content-Type", "application/json")
+      .setBody("{\"success\":true,\"enrollmentResult\":{\"isEnrolled\":true,\"resultBlob\":\"blob\"}}"));
+
+    new FaceVerificationClient(url.substring(0, url.length() - 1), "jwt").enroll("enrollment", payload, deadline(),
+      new FaceVerification.APICallback<EnrollmentResponse>() {
+        @Override
+        public void onSuccess(EnrollmentResponse response) {
+          uploaded.countDown();
+        }
+
+        @Override
+        public void onFailure(FaceVerification.APIException exception) {
+        }
+      });
+
+    assertTrue("payload hasn't been uploaded", uploaded.await(10, TimeUnit.SECONDS));
+    server.takeRequest();
+    server.takeRequest();
+
+    WeakReference<?>[] references = { new WeakReference<>(payload), new WeakReference<>(faceScan) };
+
+    payload = null;
+    faceScan = null;
+
+    assertCollected(references, "payload", "face scan");
+  }
+
+  // okio watchdog keeps the last call it has been waiting for on its stack until the call's timeout
+  // elapses (even if the call is done), so the short session deadline is set: client's call timeout is a minute
+  private static Deadline deadline() {
+    return Deadline.after(3, TimeUnit.SECONDS);
+  }
+
+  private static void awaitMark(SessionMetrics metrics, SessionMetrics.Mark mark) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+    while (!metrics.hasReached(mark)) {
+      assertTrue(mark + " hasn't been reached", System.nanoTime() < deadline);
+      Thread.sleep(50);
+    }
+  }
+
+  // mockito keeps the last mock invocation of each thread, referencing the mock and its stubbed values.
+  // inline mock maker keeps the stubbed values until the collected mocks are expunged from its map
+  private static void forgetMockInvocations() throws InterruptedException {
+    final Runnable invocation = mock(Runnable.class);
+    final CountDownLatch done = new CountDownLatch(1);
+
+    invocation.run();
+    SessionExecutors.payload().execute(new Runnable() {
+      @Override
+      public void run() {
+        invocation.run();
+        done.countDown();
+      }
+    });
+
+    done.await(5, TimeUnit.SECONDS);
+    Mockito.framework().clearInlineMocks();
+  }
+
+  private static void assertCollected(WeakReference<?>[] references, String... names) throws InterruptedException {
+    for (int attempt = 0; attempt < 100; attempt++) {
+      boolean isCollected = true;
+
+      for (WeakReference<?> reference : references) {
+        isCollected = isCollected && (reference.get() == null);
+      }
+
+      if (isCollected) {
+        return;
+      }
+
+      System.gc();
+      Thread.sleep(50);
+    }
+
+    for (int index = 0; index < references.length; index++) {
+      assertTrue(names[index] + " is still referenced", references[index].get() == null);
+    }
+  }
+
+  // unique string of the size given, so it isn't interned / shared with anything else
+  private static String base64(int size, char symbol) {
+    char[] chars = new char[size];
+
+    Arrays.fill(chars, symbol);
+    return new String(chars);
+  }
+}
@@ -1,6 +1,5 @@
-import { NativeModules } from 'react-native'
-
-const { FaceTecModule } = NativeModules
+import NativeFaceTecModule from './NativeFaceTecModule'
 
 // export JS interface to the native code (iOS & Android)
-export default FaceTecModule
+// TurboModule if app is built with the New Architecture, legacy native module otherwise
+export default NativeFaceTecModule
@@ -1,10 +1,17 @@
-import { NativeEventEmitter } from 'react-native'
+import { NativeEventEmitter, processColor } from 'react-native'
 
 import { FaceTecUxEvent } from './FaceTecPublicApi'
 
+// native code could send events batched (one bridge call per frame) as [{ event, data }]
+const EVENT_BATCH = 'onEventBatch'
+
+// theme keys should be converted to the native (ARGB integer) colors
+const THEME_COLORS = ['primaryColor', 'foregroundColor', 'backgroundColor', 'overlayColor', 'successColor', 'progressTrackColor']
+
 // sdk class wrapper
 export class FaceTecSDK {
   _subscriptions = {}
+  _batchListeners = {}
 
   // receives ref to the native code interface as the single argument
   constructor(module) {
@@ -13,11 +20,21 @@ export class FaceTecSDK {
     this.module = module
     this.eventEmitter = new NativeEventEmitter(module)
 
+    // dispatch batched events to the listeners subscribed to each event
+    this.eventEmitter.addListener(EVENT_BATCH, batch => batch.forEach(({ event, data }) => {
+      const listeners = this._batchListeners[event]
+
+      if (listeners) {
+        // copy, as listener could unsubscribe while being called
+        Array.from(listeners).forEach(listener => listener(data))
+      }
+    }))
+
     // wrap methods to correctly throw JS errors
     wrapMethods.forEach(method => this[method] = async (...args) => {
       try {
         return await FaceTecSDK.prototype[method].apply(this, args)
-      } catch ({ code, message }) {
+      } catch ({ code, message, userInfo }) {
         // RCTBridge doesn't returns/rejects with JS Error object
         // it returns just object literal with the Error-like shape
         // also, codes are returning as strings (but actually FaceTec statuses are numbers)
@@ -26,6 +43,12 @@ export class FaceTecSDK {
         const exception = new Error(message)
 
         exception.code = Number(code)
+
+        // session phases timing (if native code has sent it)
+        if (userInfo && userInfo.metrics) {
+          exception.metrics = userInfo.metrics
+        }
+
         throw exception
       }
     })
@@ -51,20 +74,170 @@ export class FaceTecSDK {
     return module.initializeSDK(baseUrl, jsonWebToken, licenseKey, encryptionKey, licenseText)
   }
 
+  // Returns current SDK status (one of FaceTecSDKStatus) synchronously
+  // or null if native code doesn't support it
+  getStatus() {
+    const { module } = this
+
+    if ('function' !== typeof module.getSDKStatus) {
+      return null
+    }
+
+    return module.getSDKStatus()
+  }
+
   // Runs face verification flow
   //   - enrollmentIdentifier, v1Identifier - face ids generated for user account (wallet address)
   //   - chainId - fuse or celo id
   //   - maxRetries - retry attempts if enrollment failed before show 'switch to another device'
   //   - timeout - enrollment HTTP request to GoodServer timeout (as millis)
-  async enroll(enrollmentIdentifier, v1Identifier, chainId = null, maxRetries = -1, timeout = -1) {
+  //   - deadline - the whole session deadline (as millis). session token & enrollment calls to GoodServer
+  //   share this budget, once it's used up session fails with FaceTecSessionStatus.DeadlineExceeded (Android only)
+  // if server supports it, enrollment status is checked before the camera is opened. if user is already enrolled
+  // (or the face is known as duplicate) session fails with FaceTecSessionStatus.AlreadyEnrolled (DuplicateEnrollment)
+  // resolves with { message, metrics } - session message and its metrics (see onMetrics below, null if native code
+  // doesn't send them). on failure metrics are set as error.metrics
+  async enroll(enrollmentIdentifier, v1Identifier, chainId = null, maxRetries = -1, timeout = -1, deadline = -1) {
     const { module } = this
     const chain = String(chainId || '')
+    let metrics = null
+    let subscription = null
+
+    // native code (if supports it) sends this session's metrics event right before the result
+    if (FaceTecUxEvent.METRICS) {
+      subscription = this.subscribeTo(FaceTecUxEvent.METRICS, eventData => {
+        const { enrollmentIdentifier: sessionIdentifier, ...sessionMetrics } = eventData || {}
+
+        if (sessionIdentifier === enrollmentIdentifier) {
+          metrics = sessionMetrics
+        }
+      })
+    }
+
+    try {
+      const message = await module.faceVerification(enrollmentIdentifier, v1Identifier, chain, maxRetries, timeout, deadline)
+
+      return { message, metrics }
+    } finally {
+      if (subscription) {
+        subscription.remove()
+      }
+    }
+  }
+
+  // Passes refreshed JWT to the native code, call it in response to "onAccessTokenRequired" event
+  // sessions in progress will use it for the next GoodServer calls. No-op if native code doesn't support it
+  updateAccessToken(jsonWebToken) {
+    const { module } = this
+
+    if ('function' === typeof module.updateAccessToken) {
+      module.updateAccessToken(jsonWebToken)
+    }
+  }
+
+  // Customizes FaceTec UI. Theme is compiled by the native code in background and cached,
+  // so switching between the same themes (e.g. light / dark) is cheap
+  //   - theme - { primaryColor, foregroundColor, backgroundColor, overlayColor, successColor, progressTrackColor,
+  //   fontFamily, cornerRadius, buttonCornerRadius }, colors are any RN color values. missing keys are defaulted
+  // resolves with false if theme is the same as the current one or null if native code doesn't support it
+  async setTheme(theme = null) {
+    const { module } = this
+
+    if ('function' !== typeof module.setTheme) {
+      return null
+    }
+
+    const nativeTheme = theme ? { ...theme } : null
+
+    if (nativeTheme) {
+      THEME_COLORS
+        .filter(key => null != nativeTheme[key])
+        .forEach(key => nativeTheme[key] = processColor(nativeTheme[key]))
+    }
+
+    return module.setTheme(nativeTheme)
+  }
+
+  // Hints native code that verification is coming soon (e.g. FV screen is shown)
+  // to fetch session token ahead of time. No-op if native code doesn't support it
+  prefetch() {
+    const { module } = this
+
+    if ('function' === typeof module.prefetchSessionToken) {
+      module.prefetchSessionToken()
+    }
+  }
+
+  // Returns API connection reuse stats (for diagnostics)
+  // { calls, newConnections, reusedConnections, failedCalls, pooledConnections, idleConnections }
+  // or null if native code doesn't support it
+  async getConnectionStats() {
+    const { module } = this
+
+    if ('function' !== typeof module.getConnectionStats) {
+      return null
+    }
+
+    return module.getConnectionStats()
+  }
+
+  // Returns timing breakdown (millis, -1 if phase didn't happen) of the last API calls, the oldest first
+  // [{ method, endpoint, dns, connect, tls, requestBody, timeToFirstByte, responseBody, total,
+  // connectionReused, protocol, bytesSent, bytesReceived, statusCode, failed }]
+  // endpoint has ids replaced with placeholder (e.g. '/verify/face/:id'). null if native code doesn't support it
+  async getCallTimings() {
+    const { module } = this
+
+    if ('function' !== typeof module.getCallTimings) {
+      return null
+    }
+
+    return module.getCallTimings()
+  }
+
+  // Returns native => JS events channel counters (for diagnostics)
+  // { dispatched, batches, coalesced (superseded progress updates), dropped (queue overflow) }
+  // or null if native code doesn't support it
+  async getEventStats() {
+    const { module } = this
+
+    if ('function' !== typeof module.getEventStats) {
+      return null
+    }
 
-    return module.faceVerification(enrollmentIdentifier, v1Identifier, chain, maxRetries, timeout)
+    return module.getEventStats()
+  }
+
+  // Returns network quality estimate, so app could warn user about slow link before capture
+  // { quality: 'unknown' | 'poor' | 'moderate' | 'good', bytesPerSecond, roundTripTime (ms) }
+  // (-1 if not measured yet) or null if native code doesn't support it
+  //   - probe - ping the server first to measure round trip time
+  async getNetworkQuality(probe = false) {
+    const { module } = this
+
+    if ('function' !== typeof module.getNetworkQuality) {
+      return null
+    }
+
+    return module.getNetworkQuality(probe)
   }
 
   // Subscribes to event (for analytics)
-  //   - event = "onUIReady" | "onCaptureDone" | "onRetry"
+  //   - event = "onUIReady" | "onCaptureDone" | "onRetry" | "onUploadProgress" | "onDeferredEnrollment" | "onMetrics"
+  //   | "onAccessTokenRequired"
+  //   - onMetrics is sent once session finished with { phases: { permissions, sessionToken, launch, capture, payload,
+  //   upload, processing, resultScreen, total }, marks: { STARTED, PERMISSIONS_GRANTED, ..., COMPLETED } } (millis)
+  //   and memory: { baseline, peak, retained } (used heap bytes, peak & retained are relative to baseline; baseline
+  //   and retained are sampled after GC, retained - once the finished session has been released) and enrollmentIdentifier
+  //   the same object (without enrollmentIdentifier) is set as enroll() result metrics or error.metrics if it rejects
+  //   - onUploadProgress receives { bytesSent, totalBytes, bytesPerSecond, eta (ms) }, throttled to 2 per second
+  //   bytesPerSecond and eta are -1 until estimated
+  //   - onDeferredEnrollment receives { enrollmentIdentifier, success, reason? (error message) } once enrollment saved while
+  //   device was offline (enroll() rejected with FaceTecSessionStatus.EnrollmentDeferred) has been uploaded, rejected
+  //   or expired (deferred enrollment is kept up to 1 hour, but not longer than JWT session was started with is valid)
+  //   - onAccessTokenRequired receives { expiresAt } (current JWT expiry, unix millis or -1) once JWT is about to
+  //   expire during the session. app should refresh it and call updateAccessToken() within 15 seconds, otherwise
+  //   session fails instead of uploading enrollment which will be rejected
   addListener(event, handler) {
     const { _subscriptions } = this
     let subscriptionsMap = _subscriptions[event]
@@ -109,6 +282,23 @@ export class FaceTecSDK {
       }
     }
 
-    return eventEmitter.addListener(event, eventHandler)
+    // events could come either separately (as native event with the same name) or within the batch
+    const { _batchListeners } = this
+    const nativeSubscription = eventEmitter.addListener(event, eventHandler)
+    let listeners = _batchListeners[event]
+
+    if (!listeners) {
+      listeners = new Set()
+      _batchListeners[event] = listeners
+    }
+
+    listeners.add(eventHandler)
+
+    return {
+      remove: () => {
+        listeners.delete(eventHandler)
+        nativeSubscription.remove()
+      }
+    }
   }
 }
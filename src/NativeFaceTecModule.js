@@ -0,0 +1,43 @@
+// @flow
+import type { TurboModule } from 'react-native/Libraries/TurboModule/RCTExport'
+import { NativeModules, TurboModuleRegistry } from 'react-native'
+
+// native module interface spec, used by the New Architecture codegen (RN 0.68+)
+// once the app is built with it. older RN versions are using the legacy NativeModules
+export interface Spec extends TurboModule {
+  +getConstants: () => {|
+    FaceTecUxEvent: Object,
+    FaceTecSDKStatus: Object,
+    FaceTecSessionStatus: Object,
+  |};
+  +getSDKStatus: () => number;
+  +initializeSDK: (
+    serverURL: string,
+    jwtAccessToken: string,
+    licenseKey: string,
+    encryptionKey: ?string,
+    licenseText: ?string,
+  ) => Promise<boolean>;
+  +faceVerification: (
+    enrollmentIdentifier: string,
+    v1Identifier: string,
+    chainId: string,
+    maxRetries: number,
+    timeout: number,
+    deadline: number,
+  ) => Promise<string>;
+  +updateAccessToken: (jwtAccessToken: string) => void;
+  +setTheme: (theme: ?Object) => Promise<boolean>;
+  +prefetchSessionToken: () => void;
+  +getConnectionStats: () => Promise<Object>;
+  +getEventStats: () => Promise<Object>;
+  +getCallTimings: () => Promise<Array<Object>>;
+  +getNetworkQuality: (probe: boolean) => Promise<Object>;
+  +addListener: (eventName: string) => void;
+  +removeListeners: (count: number) => void;
+}
+
+// TurboModuleRegistry isn't exported by the older RN versions
+const turboModule = TurboModuleRegistry ? TurboModuleRegistry.get<Spec>('FaceTecModule') : null
+
+export default (turboModule || NativeModules.FaceTecModule: Spec)